@@ -0,0 +1,213 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.excalibur.core.execution.domain.Application;
+import org.excalibur.core.execution.domain.ApplicationDescriptor;
+import org.excalibur.core.execution.domain.Block;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+
+/**
+ * Reads an {@link ApplicationDescriptor} from a JSON stream without binding it as a whole. The job's own fields are read
+ * first, with {@link #readHeader()}. Then {@link #read(Handler)} binds the applications in chunks and the blocks one at a
+ * time, so the memory used by the parsing is bounded by the chunk size rather than by the size of the job.
+ *
+ * <p>
+ * Because the applications are handed out as they are read, the job's fields must come before its
+ * {@code applications} and {@code blocks} arrays.
+ */
+public class ApplicationDescriptorReader implements Closeable
+{
+	public interface Handler
+	{
+		/**
+		 * Receives the next chunk of the job's applications.
+		 */
+		void applications(List<Application> applications);
+
+		/**
+		 * Receives the next block of the job, with its applications.
+		 */
+		void block(Block block);
+	}
+
+	private static final String APPLICATIONS = "applications";
+	private static final String BLOCKS = "blocks";
+
+	private final ObjectMapper mapper;
+	private final JsonParser parser;
+	private final int chunkSize;
+
+	private ApplicationDescriptor header;
+	private String pending;
+
+	public ApplicationDescriptorReader(ObjectMapper mapper, InputStream in) throws IOException
+	{
+		this(mapper, in, getIntegerProperty("org.excalibur.job.ingest.chunk.size", 1000));
+	}
+
+	public ApplicationDescriptorReader(ObjectMapper mapper, InputStream in, int chunkSize) throws IOException
+	{
+		checkArgument(chunkSize > 0, "Chunk size must be greater than zero");
+
+		this.mapper = requireNonNull(mapper);
+		this.parser = mapper.getFactory().createParser(requireNonNull(in));
+		this.chunkSize = chunkSize;
+
+		if (parser.nextToken() != JsonToken.START_OBJECT)
+		{
+			throw new JsonParseException(parser, "A job's description must be a JSON object");
+		}
+	}
+
+	/**
+	 * Reads the fields of the job up to its first {@code applications} or {@code blocks} array.
+	 * @return the job without its applications and blocks
+	 */
+	public ApplicationDescriptor readHeader() throws IOException
+	{
+		if (header == null)
+		{
+			ObjectNode fields = mapper.createObjectNode();
+
+			while (parser.nextToken() == JsonToken.FIELD_NAME)
+			{
+				String name = parser.getCurrentName();
+
+				if (APPLICATIONS.equals(name) || BLOCKS.equals(name))
+				{
+					pending = name;
+					break;
+				}
+
+				parser.nextToken();
+				fields.set(name, mapper.readTree(parser));
+			}
+
+			header = mapper.treeToValue(fields, ApplicationDescriptor.class);
+		}
+
+		return header;
+	}
+
+	/**
+	 * Reads the job's applications and blocks, passing them to the given handler as they are bound.
+	 */
+	public void read(Handler handler) throws IOException
+	{
+		readHeader();
+
+		while (pending != null)
+		{
+			JsonToken token = parser.nextToken();
+
+			if (token == JsonToken.START_ARRAY)
+			{
+				if (APPLICATIONS.equals(pending))
+				{
+					readApplications(handler);
+				}
+				else
+				{
+					readBlocks(handler);
+				}
+			}
+			else if (token != JsonToken.VALUE_NULL)
+			{
+				throw new JsonParseException(parser, format("Field %s must be an array", pending));
+			}
+
+			if (parser.nextToken() == JsonToken.FIELD_NAME)
+			{
+				pending = parser.getCurrentName();
+
+				if (!APPLICATIONS.equals(pending) && !BLOCKS.equals(pending))
+				{
+					throw new JsonParseException(parser,
+							format("Field %s must come before the job's applications and blocks", pending));
+				}
+			}
+			else
+			{
+				pending = null;
+			}
+		}
+	}
+
+	private void readApplications(Handler handler) throws IOException
+	{
+		List<Application> chunk = new ArrayList<>(chunkSize);
+
+		while (parser.nextToken() == JsonToken.START_OBJECT)
+		{
+			chunk.add(mapper.readValue(parser, Application.class));
+
+			if (chunk.size() == chunkSize)
+			{
+				handler.applications(chunk);
+				chunk = new ArrayList<>(chunkSize);
+			}
+		}
+
+		checkEndOfArray();
+
+		if (!chunk.isEmpty())
+		{
+			handler.applications(chunk);
+		}
+	}
+
+	private void readBlocks(Handler handler) throws IOException
+	{
+		while (parser.nextToken() == JsonToken.START_OBJECT)
+		{
+			handler.block(mapper.readValue(parser, Block.class));
+		}
+
+		checkEndOfArray();
+	}
+
+	private void checkEndOfArray() throws JsonParseException
+	{
+		if (parser.getCurrentToken() != JsonToken.END_ARRAY)
+		{
+			throw new JsonParseException(parser, format("The elements of %s must be JSON objects", pending));
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		parser.close();
+	}
+}
@@ -0,0 +1,301 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.ObjIntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+
+import io.airlift.command.CommandResult;
+import io.dohko.job.batch.worker.ShellWorkerPool;
+import job.flow.Step;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.UUID.randomUUID;
+
+/**
+ * Runs several steps in one process, one after the other, and splits the process' output back into the output and exit
+ * code of each step as it is read, so that a step is completed as soon as it ends. Each step still gets its own running, finished or failed status and its own
+ * {@link TaskExecutionResult}.
+ */
+public class BatchedStepExecutor 
+{
+	private static final Logger LOG = LoggerFactory.getLogger(BatchedStepExecutor.class);
+
+	private final List<Step> steps;
+	private final Executor executor;
+	private final ShellWorkerPool workers;
+	private final EventBus eventBus;
+
+	public BatchedStepExecutor(List<Step> steps, Executor executor, ShellWorkerPool workers) 
+	{
+		this.steps = ImmutableList.copyOf(requireNonNull(steps, "steps is null"));
+		this.executor = requireNonNull(executor, "executor is null");
+		this.workers = workers;
+		this.eventBus = new EventBus(format("batch-%s-event-bus", randomUUID()));
+	}
+
+	public <L> BatchedStepExecutor registerListener(L listener) 
+	{
+		if (listener != null) 
+		{
+			eventBus.register(listener);
+		}
+
+		return this;
+	}
+
+	public List<StepExecutionResult> execute() 
+	{
+		return execute((result, index) -> { });
+	}
+
+	/**
+	 * Executes the steps, completing each one as soon as its own output ends rather than when the whole batch ends.
+	 * @param completed called with the result of each step and its index as soon as the step is completed
+	 * @return the results of the steps, in the order of the steps
+	 */
+	public List<StepExecutionResult> execute(ObjIntConsumer<StepExecutionResult> completed) 
+	{
+		final String id = randomUUID().toString();
+		final String marker = "__dohko_batch_" + id.replace("-", "");
+		final List<StepExecutor> executors = new ArrayList<>(steps.size());
+		final StringBuilder script = new StringBuilder();
+
+		for (int i = 0; i < steps.size(); i++) 
+		{
+			Step step = steps.get(i);
+			StringBuilder exports = new StringBuilder();
+			step.environment().forEach((name, value) -> exports.append(format("export %s=%s; ", name, quote(value))));
+
+			script.append(format("printf '\\n%s %d begin %%s\\n' \"$EPOCHREALTIME\"; ", marker, i))
+			      .append(format("( %s eval %s ) </dev/null 2>&1; ", exports, quote(step.script().get())))
+			      .append(format("printf '\\n%s %d end %%d %%s\\n' $? \"$EPOCHREALTIME\"\n", marker, i));
+
+			executors.add(new StepExecutor(step, executor, eventBus).started());
+		}
+
+		LOG.info("Executing [{}] tasks in the batch [{}]", steps.size(), id);
+
+		final long start = System.nanoTime();
+		final StepExecutionResult[] results = new StepExecutionResult[steps.size()];
+		final Demultiplexer demultiplexer = new Demultiplexer(marker, steps.size(), (index, exitCode, output, time) -> 
+		{
+			results[index] = executors.get(index).complete(
+					new CommandResult(randomUUID().toString(), null, exitCode, output, time), time);
+
+			try 
+			{
+				completed.accept(results[index], index);
+			} 
+			catch (RuntimeException exception) 
+			{
+				LOG.error(format("Error on releasing the task [%s]", steps.get(index).getId()), exception);
+			}
+		});
+
+		try 
+		{
+			run(id, script.toString(), demultiplexer::accept);
+		} 
+		catch (IOException exception) 
+		{
+			// the tasks that completed before the failure have already been completed
+			LOG.error(format("Error on executing the batch [%s]", id), exception);
+		}
+		catch (InterruptedException exception) 
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		// the tasks whose end was never printed failed; they get a share of the batch's time
+		final long elapsed = (System.nanoTime() - start) / 1_000_000;
+		demultiplexer.completeRemaining(elapsed / steps.size());
+
+		return ImmutableList.copyOf(results);
+	}
+
+	/**
+	 * Runs the script on a shell worker or, if the pool is disabled, on a new {@code bash} process, passing each line of
+	 * its output to {@code onLine} as it is read.
+	 */
+	private void run(String id, String script, Consumer<String> onLine) throws IOException, InterruptedException 
+	{
+		if (workers != null && workers.isEnabled()) 
+		{
+			workers.execute(id, script, ImmutableMap.of(), pid -> { }, onLine);
+			return;
+		}
+
+		Process process = new ProcessBuilder("bash", "-c", script).redirectErrorStream(true).start();
+		process.getOutputStream().close();
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8))) 
+		{
+			String line;
+
+			while ((line = reader.readLine()) != null) 
+			{
+				onLine.accept(line);
+			}
+
+			process.waitFor();
+		} 
+		finally 
+		{
+			process.destroy();
+		}
+	}
+
+	/**
+	 * Parses bash's {@code EPOCHREALTIME} (seconds with microseconds) in milliseconds. It is empty before bash 5.
+	 */
+	private static long parseTime(String value) 
+	{
+		try 
+		{
+			return Math.round(Double.parseDouble(value.replace(',', '.')) * 1000);
+		} 
+		catch (NumberFormatException exception) 
+		{
+			return -1;
+		}
+	}
+
+	private static String quote(String value) 
+	{
+		return "'" + value.replace("'", "'\\''") + "'";
+	}
+
+	/**
+	 * Splits the output of a batch into the output of its steps as it is read, completing each step at its end marker.
+	 * A step's time is the one bash prints with the markers or, before bash 5, which has no {@code EPOCHREALTIME}, the time
+	 * between reading its markers.
+	 */
+	static final class Demultiplexer 
+	{
+		/**
+		 * Receives a step's exit code, output and elapsed time in milliseconds.
+		 */
+		@FunctionalInterface
+		interface Completion 
+		{
+			void complete(int index, int exitCode, String output, long elapsedTime);
+		}
+
+		private final String marker;
+		private final Completion completion;
+		private final LongSupplier clock;
+		private final boolean[] completed;
+
+		private int current = -1;
+		private StringBuilder text;
+		private long startTime;
+		private long readTime;
+
+		Demultiplexer(String marker, int size, Completion completion) 
+		{
+			this(marker, size, completion, () -> System.nanoTime() / 1_000_000);
+		}
+
+		/**
+		 * @param clock the current time in milliseconds, used when bash does not print the times
+		 */
+		Demultiplexer(String marker, int size, Completion completion, LongSupplier clock) 
+		{
+			this.marker = marker;
+			this.completion = completion;
+			this.clock = clock;
+			this.completed = new boolean[size];
+		}
+
+		void accept(String line) 
+		{
+			if (line.startsWith(marker)) 
+			{
+				String[] fields = line.substring(marker.length()).trim().split(" ");
+				int index = Integer.parseInt(fields[0]);
+
+				if ("begin".equals(fields[1])) 
+				{
+					current = index;
+					text = null;
+					startTime = fields.length > 2 ? parseTime(fields[2]) : -1;
+					readTime = clock.getAsLong();
+				} 
+				else 
+				{
+					long end = fields.length > 3 ? parseTime(fields[3]) : -1;
+					long time = end >= 0 && startTime >= 0 ? end - startTime : clock.getAsLong() - readTime;
+
+					// a step that ran took some time, even if less than the clocks' resolution
+					complete(index, Integer.parseInt(fields[2]), Math.max(1, time));
+					current = -1;
+				}
+			} 
+			else if (current >= 0) 
+			{
+				if (text == null) 
+				{
+					text = new StringBuilder(line);
+				} 
+				else 
+				{
+					text.append('\n').append(line);
+				}
+			}
+		}
+
+		/**
+		 * Completes, with exit code {@code -1}, the steps whose end marker was not read.
+		 */
+		void completeRemaining(long time) 
+		{
+			for (int i = 0; i < completed.length; i++) 
+			{
+				if (!completed[i]) 
+				{
+					complete(i, -1, time);
+				}
+			}
+		}
+
+		private void complete(int index, int exitCode, long time) 
+		{
+			String output = index == current && text != null ? text.toString() : "";
+			text = null;
+			completed[index] = true;
+
+			completion.complete(index, exitCode, output, time);
+		}
+	}
+}
@@ -19,7 +19,7 @@ package io.dohko.job.batch;
 
 import org.excalibur.core.execution.domain.Block;
 
-import io.dohko.job.batch.tree.Tree;
+import io.dohko.job.batch.plan.ExecutionPlan;
 import job.flow.Step;
 
 import static java.util.Objects.*;
@@ -27,12 +27,12 @@ import static java.util.Objects.*;
 public class BlockAdapter 
 {
 	private final Block block;
-	private final Tree<Step> applicationTree;
+	private final ExecutionPlan<Step> applicationPlan;
 	
-	public BlockAdapter(Block block, Tree<Step> applicationTree) 
+	public BlockAdapter(Block block, ExecutionPlan<Step> applicationPlan) 
 	{
 		this.block = requireNonNull(block);
-		this.applicationTree = requireNonNull(applicationTree);
+		this.applicationPlan = requireNonNull(applicationPlan);
 	}
 	
 	/**
@@ -44,10 +44,10 @@ public class BlockAdapter
 	}
 
 	/**
-	 * @return the applicationTree
+	 * @return the applicationPlan
 	 */
-	public Tree<Step> getApplicationTree() 
+	public ExecutionPlan<Step> getApplicationPlan() 
 	{
-		return applicationTree;
+		return applicationPlan;
 	}
 }
@@ -0,0 +1,93 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * How a job with a deadline is doing: when its remaining tasks are expected to finish and whether that is after the
+ * deadline. Times are in milliseconds since the epoch.
+ */
+@Immutable
+public final class JobDeadlineStatus
+{
+	private final String jobId;
+	private final long deadline;
+	private final long estimatedCompletion;
+	private final int remainingTasks;
+
+	public JobDeadlineStatus(String jobId, long deadline, long estimatedCompletion, int remainingTasks)
+	{
+		this.jobId = jobId;
+		this.deadline = deadline;
+		this.estimatedCompletion = estimatedCompletion;
+		this.remainingTasks = remainingTasks;
+	}
+
+	public String getJobId()
+	{
+		return jobId;
+	}
+
+	public long getDeadline()
+	{
+		return deadline;
+	}
+
+	/**
+	 * @return when the job is expected to finish if its remaining critical path starts now
+	 */
+	public long getEstimatedCompletion()
+	{
+		return estimatedCompletion;
+	}
+
+	/**
+	 * @return the time left between the estimated completion and the deadline. It is negative when the job is late
+	 */
+	public long getSlack()
+	{
+		return deadline - estimatedCompletion;
+	}
+
+	public boolean isAtRisk()
+	{
+		return getSlack() < 0;
+	}
+
+	/**
+	 * @return the number of tasks of the job that have not finished
+	 */
+	public int getRemainingTasks()
+	{
+		return remainingTasks;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("job", jobId)
+				.add("deadline", deadline)
+				.add("estimated completion", estimatedCompletion)
+				.add("slack", getSlack())
+				.add("remaining tasks", remainingTasks)
+				.toString();
+	}
+}
@@ -17,13 +17,19 @@
 package io.dohko.job.batch;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FilenameUtils;
@@ -37,56 +43,104 @@ import org.excalibur.core.execution.domain.TaskOutputType;
 import org.excalibur.core.execution.domain.TaskStats;
 import org.excalibur.core.execution.domain.TaskStatus;
 import org.excalibur.core.execution.domain.repository.BlockRepository;
+import org.excalibur.core.execution.domain.repository.JobBlockRepository;
+import org.excalibur.core.execution.domain.repository.JobDeadlineRepository;
+import org.excalibur.core.execution.domain.repository.JobOutboxRepository;
 import org.excalibur.core.execution.domain.repository.JobRepository;
+import org.excalibur.core.execution.domain.repository.JobSubmissionKeyRepository;
 import org.excalibur.core.execution.domain.repository.TaskCpuStatsRepository;
 import org.excalibur.core.execution.domain.repository.TaskMemoryStatsRepository;
+import org.excalibur.core.execution.domain.repository.TaskMetadataRepository;
 import org.excalibur.core.execution.domain.repository.TaskOutputRepository;
 import org.excalibur.core.execution.domain.repository.TaskRepository;
 import org.excalibur.core.execution.domain.repository.TaskStatusRepository;
+import org.excalibur.core.execution.domain.repository.TaskSuspensionRepository;
 import org.excalibur.core.host.repository.PackageRepository;
 import org.excalibur.core.json.databind.ObjectMapperUtil;
 import org.excalibur.core.util.concurrent.DynamicExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.io.Files;
 
 import io.airlift.command.ProcessCpuState;
 import io.airlift.command.ProcessMemoryState;
 import io.airlift.command.ProcessState;
+import io.dohko.job.batch.affinity.TaskPlacement;
+import io.dohko.job.batch.cgroup.TaskCgroups;
+import io.dohko.job.batch.monitor.ProcSampler;
+import io.dohko.job.batch.monitor.ProcessSample;
+import io.dohko.job.batch.monitor.ProcessSampleBatch;
+import io.dohko.job.batch.outbox.OutboxDispatcher;
+import io.dohko.job.batch.plan.ExecutionPlan;
+import io.dohko.job.batch.plan.ExecutionPlanCompiler;
+import io.dohko.job.batch.scheduler.AdaptiveConcurrencyLimit;
+import io.dohko.job.batch.scheduler.PendingTaskCapacity;
+import io.dohko.job.batch.scheduler.Preemption;
+import io.dohko.job.batch.scheduler.ProcessPriority;
+import io.dohko.job.batch.scheduler.QuotaExceededException;
+import io.dohko.job.batch.scheduler.SubmissionTooLargeException;
+import io.dohko.job.batch.scheduler.SchedulerState;
+import io.dohko.job.batch.scheduler.UserQueueState;
 import io.dohko.job.batch.tree.Tree;
-import io.dohko.job.batch.tree.TreeNode;
-import io.dohko.job.batch.tree.TreeTraversalOrderType;
+import io.dohko.job.batch.worker.ShellWorkerPool;
 import io.dohko.job.host.Package;
 import io.dohko.job.host.PackageManagerType;
+import job.flow.ApplicationDirectives;
+import job.flow.BlockValidator;
 import job.flow.Flow;
 import job.flow.Job;
 import job.flow.Step;
+import job.flow.Sweep;
 
 import static java.lang.Math.*;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Strings.nullToEmpty;
 import static com.google.common.hash.Hashing.sha256;
 import static io.airlift.command.Command.newBashCommand;
 import static java.lang.String.format;
 import static java.lang.System.getProperty;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.ZoneOffset.UTC;
+import static java.util.Objects.requireNonNull;
 import static java.util.UUID.randomUUID;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
 import static org.excalibur.core.util.SystemUtils2.getLongProperty;
 import static io.airlift.command.CommandBuilder.*;
 import static org.apache.commons.io.FilenameUtils.*;
 
 import static org.excalibur.core.util.Instants.*;
 import static org.excalibur.core.execution.domain.TaskStatus.*;
+import static org.excalibur.core.execution.domain.TaskStatusType.CANCELLED;
+import static org.excalibur.core.execution.domain.TaskStatusType.FAILED;
+import static org.excalibur.core.execution.domain.TaskStatusType.FINISHED;
 
 @Service
 public class JobService {
+	private static final Logger LOG = LoggerFactory.getLogger(JobService.class);
+
 	private final JobRepository jobRepository;
 
 	private final TaskRepository taskRepository;
@@ -96,13 +150,36 @@ public class JobService {
 	private final TaskOutputRepository taskOutputRepository;
 	private final PackageRepository packageRepository;
 	private final BlockRepository blockRepository;
+	private final JobBlockRepository jobBlockRepository;
+	private final JobOutboxRepository outboxRepository;
+	private final JobSubmissionKeyRepository submissionKeyRepository;
+	private final JobDeadlineRepository deadlineRepository;
+	private final TaskSuspensionRepository suspensionRepository;
+	private final TaskMetadataRepository metadataRepository;
 	private final LocalShellJobLaucher localShellJobLaucher;
- 
+	private final ProcSampler processSampler;
+	private final AdaptiveConcurrencyLimit concurrencyLimit;
+	private final TaskCgroups cgroups;
+	private final BlockValidator blockValidator = new BlockValidator();
+	private final ObjectMapperUtil json = new ObjectMapperUtil();
+	private final OutboxDispatcher outboxDispatcher;
+	private final TransactionTemplate transactions;
+	private final Map<String, PreparedJob> pendingLaunches = new ConcurrentHashMap<>();
+	private final Set<String> deadlineTasks = ConcurrentHashMap.newKeySet();
+	private final Cache<String, String> submissionKeys = CacheBuilder.newBuilder()
+			.maximumSize(getLongProperty("org.excalibur.job.submission.key.cache.size", 100_000L))
+			.expireAfterWrite(getLongProperty("org.excalibur.job.submission.key.ttl.ms", 86_400_000L), MILLISECONDS)
+			.build();
+
 	@Autowired
 	public JobService(JobRepository jobRepository, TaskRepository taskRepository,
 			TaskStatusRepository taskStatusRepository, TaskCpuStatsRepository taskCpuStatsRepository,
 			TaskMemoryStatsRepository taskMemoryStatsRepository, TaskOutputRepository taskOutputRepository,
-			PackageRepository packageRepository, BlockRepository blockRepository) {
+			PackageRepository packageRepository, BlockRepository blockRepository,
+			JobOutboxRepository outboxRepository, JobSubmissionKeyRepository submissionKeyRepository,
+			JobDeadlineRepository deadlineRepository, TaskSuspensionRepository suspensionRepository,
+			TaskMetadataRepository metadataRepository, JobBlockRepository jobBlockRepository,
+			PlatformTransactionManager transactionManager) {
 		this.jobRepository = jobRepository;
 		this.taskRepository = taskRepository;
 		this.taskStatusRepository = taskStatusRepository;
@@ -111,110 +188,524 @@ public class JobService {
 		this.taskOutputRepository = taskOutputRepository;
 		this.packageRepository = packageRepository;
 		this.blockRepository = blockRepository;
-
+		this.jobBlockRepository = jobBlockRepository;
+		this.outboxRepository = outboxRepository;
+		this.submissionKeyRepository = submissionKeyRepository;
+		this.deadlineRepository = deadlineRepository;
+		this.suspensionRepository = suspensionRepository;
+		this.metadataRepository = metadataRepository;
+		this.transactions = new TransactionTemplate(transactionManager);
+
+		cgroups = TaskCgroups.create();
 		localShellJobLaucher = new LocalShellJobLaucher(
-				DynamicExecutors.newListeningDynamicScalingThreadPool("local-shell-job-executors"));
+				DynamicExecutors.newListeningDynamicScalingThreadPool("local-shell-job-executors"), cgroups,
+				ShellWorkerPool.create());
 		localShellJobLaucher.registerListener(this);
+		localShellJobLaucher.setStoredPeakResident(this::storedPeakResidentOf);
+		localShellJobLaucher.scheduler().preemption().setListener(suspension -> suspensionRepository
+				.insert(suspension.getTaskId(), suspension.getSuspendedIn(), suspension.getResumedIn()));
+
+		processSampler = new ProcSampler().registerListener(this).start();
+		concurrencyLimit = new AdaptiveConcurrencyLimit(localShellJobLaucher.scheduler()).start();
+		outboxDispatcher = new OutboxDispatcher(outboxRepository, this::dispatch, this::failDispatch).start();
 	}
 
 	@Transactional
 	public JobStatus create(final ApplicationDescriptor job) {
+		return create(job, (Long) null);
+	}
+
+	/**
+	 * Creates a job that should finish by the given time. Its tasks are started before the ones without a deadline, the
+	 * latest ones to start first.
+	 * @param job the job to create
+	 * @param deadline the time in milliseconds since the epoch by which the job should finish, or {@code null} for none
+	 */
+	@Transactional
+	public JobStatus create(final ApplicationDescriptor job, final Long deadline) {
+		PreparedJob prepared = prepare(job, deadline);
+
+		persist(Collections.singletonList(prepared));
+
+		return prepared.status;
+	}
+
+	/**
+	 * Creates a job once per submission key of its user. A repeated submission returns the status of the job created by
+	 * the first one, without planning or launching it again. The keys are stored with a unique index, which is claimed
+	 * before the job is planned: a concurrent submission with the same key, on this or another node, waits for the first
+	 * one to commit or roll back. The committed keys are also kept in memory for
+	 * {@code org.excalibur.job.submission.key.ttl.ms}.
+	 * @param job the job to create
+	 * @param submissionKey the key chosen by the client for this submission. Without one, the job is always created
+	 * @return the status of the job created for the given key
+	 */
+	@Transactional
+	public JobStatus create(final ApplicationDescriptor job, final String submissionKey) {
+		return create(job, submissionKey, null);
+	}
+
+	/**
+	 * Creates a job with a deadline once per submission key of its user.
+	 * @see #create(ApplicationDescriptor, String)
+	 * @see #create(ApplicationDescriptor, Long)
+	 */
+	@Transactional
+	public JobStatus create(final ApplicationDescriptor job, final String submissionKey, final Long deadline) {
+		if (isNullOrEmpty(submissionKey)) {
+			return create(job, deadline);
+		}
+
+		final String username = requireNonNull(job.getUser(), "job's username is undefined").getUsername();
+		final String cacheKey = format("%s/%s", username, submissionKey);
+		final String cached = submissionKeys.getIfPresent(cacheKey);
+
+		if (cached != null) {
+			return existingJob(cached, username, submissionKey);
+		}
+
 		if (isNullOrEmpty(job.getId())) {
 			job.setId(randomUUID().toString());
 		}
 
-		JobStatus jobStatus = new JobStatus(job.getId(), job.getName());
+		try {
+			// blocks while a concurrent submission with the same key has not committed yet
+			submissionKeyRepository.insert(username, submissionKey, job.getId(), now(UTC).toEpochMilli());
+		} catch (RuntimeException e) {
+			if (!isDuplicateKey(e)) {
+				throw e;
+			}
 
-		jobRepository.insert(job.setCreatedIn(now(UTC).toEpochMilli()));
+			String existing = submissionKeyRepository.findJobId(username, submissionKey);
+			submissionKeys.put(cacheKey, existing);
 
-		checkAndFixBlocksStates(job);
+			return existingJob(existing, username, submissionKey);
+		}
 
-		List<Tree<Step>> applicationsExecutionTrees = createApplicationsExecutionDependencyTrees(job.applications(),
-				jobStatus);
-		List<Tree<BlockAdapter>> blocksExecutionTrees = createBlocksExecutionDependencyTrees(job.blocks(), jobStatus);
+		JobStatus status = create(job, deadline);
 
-		job.getBlocks().forEach(block -> createApplications(block.getApplications()));
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					submissionKeys.put(cacheKey, status.getId());
+				}
+			});
+		} else {
+			submissionKeys.put(cacheKey, status.getId());
+		}
 
-		createApplications(job.applications());
-		createTaskStatuses(jobStatus.statuses());
-		blockRepository.insert(job.getBlocks());
+		return status;
+	}
 
-		localShellJobLaucher.submitJobs(applicationsExecutionTrees);
-		localShellJobLaucher.submitBlocksToExecution(blocksExecutionTrees);
+	private JobStatus existingJob(String jobId, String username, String submissionKey) {
+		LOG.info("Submission {} of user {} was already created as job {}", submissionKey, username, jobId);
 
-		return jobStatus;
+		return getJobTaskStatuses(jobId).or(new JobStatus().setId(jobId));
 	}
 
-	private List<Tree<BlockAdapter>> createBlocksExecutionDependencyTrees(Iterable<Block> blocks, JobStatus jobStatus) {
-		Map<String, Tree<BlockAdapter>> trees = new HashMap<>();
+	/**
+	 * @return <code>true</code> if the given exception was caused by the violation of a unique index
+	 */
+	private static boolean isDuplicateKey(Throwable exception) {
+		return Throwables.getCausalChain(exception).stream().anyMatch(cause -> cause instanceof SQLException
+				&& nullToEmpty(((SQLException) cause).getSQLState()).startsWith("23"));
+	}
 
-		blocks.forEach(block -> {
-			List<Tree<Step>> blockApps = createApplicationsExecutionDependencyTrees(block.applications(), jobStatus);
+	/**
+	 * Creates several jobs, inserting their jobs, tasks, statuses and blocks in shared batches of
+	 * {@code org.excalibur.job.bulk.batch.size} jobs. Each batch is committed on its own transaction. A job that is
+	 * rejected, either by the given precondition or because its description is invalid, does not prevent the others from
+	 * being created; a batch that cannot be stored rejects its own jobs only.
+	 * @param jobs the jobs to create. A {@code null} element is reported as an invalid description
+	 * @param precondition checks a job before it is created, throwing an exception to reject it
+	 * @return one result per job, in the same order
+	 */
+	public List<JobSubmissionResult> create(final List<ApplicationDescriptor> jobs,
+			final Consumer<ApplicationDescriptor> precondition) {
+		final List<JobSubmissionResult> results = new ArrayList<>(jobs.size());
+		create(jobs.iterator(), precondition, results::addAll);
+
+		return results;
+	}
 
-			Preconditions.checkState(!blockApps.isEmpty() && blockApps.size() == 1,
-					"Block tree execution has more than one root!");
+	/**
+	 * Creates the jobs of a stream, pulling only one batch of them at a time, so that the memory taken does not depend on
+	 * the number of jobs.
+	 * @param jobs the jobs to create, read as they are needed. A {@code null} element is reported as an invalid description
+	 * @param precondition checks a job before it is created, throwing an exception to reject it
+	 * @param results receives the results of each batch, in the order of the jobs, once the batch is committed
+	 * @see #create(List, Consumer)
+	 */
+	public void create(final Iterator<ApplicationDescriptor> jobs, final Consumer<ApplicationDescriptor> precondition,
+			final Consumer<List<JobSubmissionResult>> results) {
+		final int batchSize = getIntegerProperty("org.excalibur.job.bulk.batch.size", 100);
+		final List<ApplicationDescriptor> slice = new ArrayList<>(batchSize);
+		int first = 0;
+
+		while (jobs.hasNext()) {
+			slice.clear();
+
+			while (slice.size() < batchSize && jobs.hasNext()) {
+				slice.add(jobs.next());
+			}
 
-			TreeNode<BlockAdapter> node = new TreeNode<BlockAdapter>(new BlockAdapter(block, blockApps.get(0)));
-			if (!block.hasParents()) {
-				trees.put(block.name(), new Tree<BlockAdapter>(node));
-			} else {
-				TreeNode<BlockAdapter> parent = null;
-				Iterator<String> iter = block.getParents().iterator();
-
-				while (parent == null && iter.hasNext()) {
-					String name = iter.next();
-
-					treef: for (Tree<BlockAdapter> tree : trees.values()) {
-						for (TreeNode<BlockAdapter> tn : tree.build(TreeTraversalOrderType.PRE_ORDER)) {
-							if (name.equalsIgnoreCase(tn.getData().getBlock().name())) {
-								parent = tn;
-								break treef;
-							}
-						}
-					}
-				}
+			results.accept(createBatch(slice, first, precondition));
+			first += slice.size();
+		}
+	}
+
+	/**
+	 * Creates the jobs of one batch of a bulk submission in a transaction of their own.
+	 * @param first the position of the batch's first job in the submission
+	 */
+	private List<JobSubmissionResult> createBatch(final List<ApplicationDescriptor> slice, final int first,
+			final Consumer<ApplicationDescriptor> precondition) {
+		final List<JobSubmissionResult> batchResults = new ArrayList<>(slice.size());
+
+		try {
+			transactions.execute(transaction -> {
+				batchResults.clear();
+				persist(prepare(slice, first, precondition, batchResults));
+				return null;
+			});
+		} catch (RuntimeException e) {
+			LOG.warn("Could not store the jobs {} to {} of a bulk submission: {}", first, first + slice.size() - 1,
+					e.getMessage());
 
-				assert parent != null;
-				parent.addChild(new TreeNode<>(new BlockAdapter(block, blockApps.get(0))));
+			batchResults.clear();
+			for (int i = 0; i < slice.size(); i++) {
+				batchResults.add(JobSubmissionResult.rejected(first + i, "The job could not be stored"));
 			}
-		});
+		}
 
-		return ImmutableList.copyOf(trees.values());
+		return batchResults;
 	}
 
-	private void checkAndFixBlocksStates(ApplicationDescriptor job) {
-		job.blocks().forEach(b -> {
-			b.setJobId(job.getId());
+	/**
+	 * Prepares the jobs of a batch, adding one result per job.
+	 * @return the jobs that were accepted
+	 */
+	private List<PreparedJob> prepare(List<ApplicationDescriptor> jobs, int first,
+			Consumer<ApplicationDescriptor> precondition, List<JobSubmissionResult> results) {
+		final List<PreparedJob> batch = new ArrayList<>(jobs.size());
+
+		for (int i = 0; i < jobs.size(); i++) {
+			ApplicationDescriptor job = jobs.get(i);
 
-			if (isNullOrEmpty(b.getId())) {
-				b.setId(randomUUID().toString());
+			try {
+				requireNonNull(job, "Invalid job description");
+				precondition.accept(job);
+
+				PreparedJob prepared = prepare(job, null);
+				batch.add(prepared);
+				results.add(JobSubmissionResult.created(first + i, prepared.status));
+			} catch (RuntimeException e) {
+				LOG.info("Rejected job {} of a bulk submission: {}", first + i, e.getMessage());
+				results.add(JobSubmissionResult.rejected(first + i, e.getMessage()));
 			}
+		}
+
+		return batch;
+	}
+
+	/**
+	 * Assigns the ids of a job and builds its execution trees. Everything that can reject the job runs here, before it is
+	 * persisted.
+	 */
+	private PreparedJob prepare(final ApplicationDescriptor job, final Long deadline) {
+		localShellJobLaucher.scheduler().checkAdmission(ownerOf(job));
+		checkDeadline(deadline);
+
+		if (isNullOrEmpty(job.getId())) {
+			job.setId(randomUUID().toString());
+		}
 
-			if (isNullOrEmpty(b.getName())) {
-				b.setName(b.getId());
+		JobStatus jobStatus = new JobStatus(job.getId(), job.getName());
+
+		checkAndFixBlocksStates(job);
+		blockValidator.check(job);
+
+		ExecutionPlan<Step> applicationsExecutionPlan = createApplicationsExecutionPlan(job.applications(), jobStatus);
+		List<Tree<BlockAdapter>> blocksExecutionTrees = createBlocksExecutionDependencyTrees(job.blocks(), jobStatus);
+
+		admit(roomOf(applicationsExecutionPlan, blocksExecutionTrees));
+
+		return new PreparedJob(job, jobStatus, applicationsExecutionPlan, blocksExecutionTrees, deadline);
+	}
+
+	private static void checkDeadline(Long deadline) {
+		Preconditions.checkArgument(deadline == null || deadline > now(UTC).toEpochMilli(),
+				"job's deadline has already passed");
+	}
+
+	private void persist(List<PreparedJob> jobs) {
+		if (jobs.isEmpty()) {
+			return;
+		}
+
+		final long createdIn = now(UTC).toEpochMilli();
+		final List<Application> applications = new ArrayList<>();
+		final List<TaskStatus> statuses = new ArrayList<>();
+		final List<Block> blocks = new ArrayList<>();
+		final List<String> jobsWithDeadline = new ArrayList<>();
+		final List<Long> deadlines = new ArrayList<>();
+		final List<String> deadlineTaskIds = new ArrayList<>();
+		final List<String> deadlineTaskJobs = new ArrayList<>();
+
+		jobs.forEach(prepared -> {
+			// excalibur-core's JobRepository only inserts one job at a time
+			jobRepository.insert(prepared.job.setCreatedIn(createdIn));
+
+			if (prepared.deadline != null) {
+				jobsWithDeadline.add(prepared.job.getId());
+				deadlines.add(prepared.deadline);
+				taskIdsOf(prepared.applications, prepared.blocks).forEach(taskId -> {
+					deadlineTaskIds.add(taskId);
+					deadlineTaskJobs.add(prepared.job.getId());
+				});
 			}
 
-			List<Application> applications = b.applications();
-			int i = 0;
+			prepared.job.getBlocks().forEach(block -> applications.addAll(block.getApplications()));
+			applications.addAll(prepared.job.applications());
+			statuses.addAll(prepared.status.statuses());
+			blocks.addAll(prepared.job.getBlocks());
+		});
+
+		if (!jobsWithDeadline.isEmpty()) {
+			deadlineRepository.insert(jobsWithDeadline, deadlines);
+			deadlineRepository.insertTasks(deadlineTaskIds, deadlineTaskJobs);
+		}
 
-			do {
-				Application application = applications.get(i);
+		createApplications(applications);
+		createTaskStatuses(statuses);
+		insertBlocks(blocks);
 
-				if (isNullOrEmpty(application.getId())) {
-					application.setId(randomUUID().toString());
+		enqueue(jobs);
+	}
+
+	/**
+	 * Adds the jobs to the outbox. The dispatcher launches them once the current transaction commits, so no task starts
+	 * before its job is visible and the transaction does not wait for the launcher.
+	 */
+	private void enqueue(List<PreparedJob> jobs) {
+		final List<String> ids = jobs.stream().map(prepared -> prepared.job.getId()).collect(toList());
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					outboxDispatcher.wakeUp();
 				}
 
-				if (i - 1 >= 0) {
-					application.addParent(applications.get(i - 1).getName());
+				@Override
+				public void afterCompletion(int status) {
+					if (status != STATUS_COMMITTED) {
+						ids.forEach(pendingLaunches::remove);
+					}
 				}
+			});
+		}
+
+		jobs.forEach(prepared -> pendingLaunches.put(prepared.job.getId(), prepared));
+		outboxRepository.insert(ids, now(UTC).toEpochMilli());
+
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			outboxDispatcher.wakeUp();
+		}
+	}
+
+	/**
+	 * Launches a job of the outbox. The jobs submitted before a restart are no longer in memory, so their top-level
+	 * applications are planned again from the stored tasks, and their blocks from the stored definitions.
+	 */
+	private void dispatch(String jobId) {
+		PreparedJob prepared = pendingLaunches.remove(jobId);
+
+		if (prepared == null) {
+			prepared = recover(jobId);
+		}
+
+		if (prepared != null) {
+			String owner = ownerOf(prepared.job);
+			Long deadline = prepared.deadline;
+			prepared.applications.items().forEach(step -> step.setOwner(owner).setDeadline(deadline));
+			prepared.blocks.forEach(tree -> tree.forEach(node -> node.getData().getApplicationPlan().items()
+					.forEach(step -> step.setOwner(owner).setDeadline(deadline))));
+
+			if (deadline != null) {
+				deadlineTasks.addAll(taskIdsOf(prepared.applications, prepared.blocks));
+			}
+
+			try {
+				localShellJobLaucher.submitJobs(prepared.applications);
+				localShellJobLaucher.submitBlocksToExecution(prepared.blocks);
+			} catch (RuntimeException e) {
+				// the next attempt launches the same job, without admitting its tasks again
+				pendingLaunches.put(jobId, prepared);
+				throw e;
+			}
+		}
+	}
 
-				application.setBlockId(b.getId());
-				application.setJobId(b.getJobId());
+	/**
+	 * Fails the tasks of a job that could not be launched, which releases their capacity.
+	 */
+	private void failDispatch(String jobId, Throwable cause) {
+		pendingLaunches.remove(jobId);
 
-			} while (++i < applications.size());
+		for (Application task : taskRepository.findAllTasksOfJob(jobId)) {
+			createTaskStatus(newTaskStatus(task.getId(), task.getName(), FAILED));
+		}
+	}
+
+	private PreparedJob recover(String jobId) {
+		Optional<ApplicationDescriptor> job = jobRepository.findByUUID(jobId);
 
-			b.setPlainText(new ObjectMapperUtil().toJson(b).orElse(null));
+		if (!job.isPresent()) {
+			LOG.warn("Job {} of the outbox was not found", jobId);
+			return null;
+		}
+
+		List<Application> applications = taskRepository.findAllTasksOfJob(jobId).stream()
+				.filter(task -> isNullOrEmpty(task.getBlockId())).collect(toList());
+
+		// the tasks' pending statuses were stored with the job
+		ExecutionPlan<Step> plan = createApplicationsExecutionPlan(applications, status -> {
 		});
+		List<BlockAdapter> blocks = new ArrayList<>();
+
+		for (String definition : jobBlockRepository.findDefinitionsOfJob(jobId)) {
+			try {
+				blocks.add(newBlockAdapter(json.getMapper().readValue(definition, Block.class), status -> {
+				}));
+			} catch (IOException e) {
+				throw new IllegalStateException(format("The definition of a block of job %s cannot be read", jobId), e);
+			}
+		}
+
+		List<Tree<BlockAdapter>> blockTrees = blocks.isEmpty() ? ImmutableList.of()
+				: createBlocksExecutionDependencyTrees(blocks);
+		localShellJobLaucher.scheduler().capacity().force(roomOf(plan, blockTrees));
+
+		return new PreparedJob(job.get(), new JobStatus(jobId, job.get().getName()), plan, blockTrees,
+				deadlineRepository.findDeadline(jobId));
+	}
+
+	/**
+	 * Stores the blocks and their definitions, from which the launcher rebuilds them if the process restarts before their
+	 * job is dispatched.
+	 */
+	private void insertBlocks(List<Block> blocks) {
+		if (blocks.isEmpty()) {
+			return;
+		}
+
+		blockRepository.insert(blocks);
+		jobBlockRepository.insert(blocks.stream().map(Block::getJobId).collect(toList()),
+				blocks.stream().map(Block::getId).collect(toList()),
+				blocks.stream().map(Block::getPlainText).collect(toList()));
+	}
+
+	/**
+	 * Creates a job whose applications and blocks are read from a stream. The applications are inserted in chunks as they
+	 * are read, and the execution plan is compiled when the stream ends. If the plan is invalid, the transaction rolls
+	 * back the chunks that were already inserted.
+	 * @param job the job's fields, as returned by {@link ApplicationDescriptorReader#readHeader()}
+	 * @param reader the reader of the job's applications and blocks
+	 */
+	@Transactional
+	public JobStatus create(final ApplicationDescriptor job, final ApplicationDescriptorReader reader)
+			throws IOException {
+		return create(job, reader, null);
+	}
+
+	/**
+	 * Creates a job read from a stream that should finish by the given time.
+	 * @see #create(ApplicationDescriptor, ApplicationDescriptorReader)
+	 * @see #create(ApplicationDescriptor, Long)
+	 */
+	@Transactional
+	public JobStatus create(final ApplicationDescriptor job, final ApplicationDescriptorReader reader, final Long deadline)
+			throws IOException {
+		localShellJobLaucher.scheduler().checkAdmission(ownerOf(job));
+		checkDeadline(deadline);
+
+		if (isNullOrEmpty(job.getId())) {
+			job.setId(randomUUID().toString());
+		}
+
+		JobStatus jobStatus = new JobStatus(job.getId(), job.getName());
+		jobRepository.insert(job.setCreatedIn(now(UTC).toEpochMilli()));
+
+		if (deadline != null) {
+			deadlineRepository.insert(job.getId(), deadline);
+		}
+
+		StreamingSubmission submission = new StreamingSubmission(job, jobStatus, deadline);
+		reader.read(submission);
+		submission.submit();
+
+		return jobStatus;
+	}
+
+	private List<Tree<BlockAdapter>> createBlocksExecutionDependencyTrees(List<Block> blocks, JobStatus jobStatus) {
+		List<BlockAdapter> adapters = new ArrayList<>(blocks.size());
+		blocks.forEach(block -> adapters.add(newBlockAdapter(block, jobStatus::addTaskStatus)));
+
+		return createBlocksExecutionDependencyTrees(adapters);
+	}
+
+	private List<Tree<BlockAdapter>> createBlocksExecutionDependencyTrees(List<BlockAdapter> blocks) {
+		return ExecutionPlanCompiler
+				.compile(blocks, b -> b.getBlock().name(), b -> b.getBlock().getParents())
+				.checkValid()
+				.toTrees(blocks::get);
+	}
+
+	private BlockAdapter newBlockAdapter(Block block, Consumer<TaskStatus> statuses) {
+		ExecutionPlan<Step> blockApps = createApplicationsExecutionPlan(block.applications(), statuses);
+
+		Preconditions.checkState(blockApps.roots().length == 1, "Block tree execution has more than one root!");
+
+		return new BlockAdapter(block, blockApps);
+	}
+
+	private void checkAndFixBlocksStates(ApplicationDescriptor job) {
+		job.blocks().forEach(b -> checkAndFixBlockState(job.getId(), b));
+	}
+
+	private void checkAndFixBlockState(String jobId, Block b) {
+		b.setJobId(jobId);
+
+		if (isNullOrEmpty(b.getId())) {
+			b.setId(randomUUID().toString());
+		}
+
+		if (isNullOrEmpty(b.getName())) {
+			b.setName(b.getId());
+		}
+
+		List<Application> applications = b.applications();
+		int i = 0;
+
+		do {
+			Application application = applications.get(i);
+
+			if (isNullOrEmpty(application.getId())) {
+				application.setId(randomUUID().toString());
+			}
+
+			if (i - 1 >= 0) {
+				application.addParent(applications.get(i - 1).getName());
+			}
+
+			application.setBlockId(b.getId());
+			application.setJobId(b.getJobId());
+
+		} while (++i < applications.size());
+
+		b.setPlainText(json.toJson(b).orElse(null));
 	}
 
 	protected Job configurePreconditions(JobStatus status, List<Precondition> preconditions) {
@@ -239,57 +730,91 @@ public class JobService {
 		return job;
 	}
 
-	protected List<Tree<Step>> createApplicationsExecutionDependencyTrees(final Iterable<Application> applications,
+	protected ExecutionPlan<Step> createApplicationsExecutionPlan(final List<Application> applications,
 			final JobStatus jobStatus) {
-		Map<String, Tree<Step>> trees = new HashMap<>();
+		applications.forEach(application -> application.setJobId(jobStatus.getId()));
 
-		applications.forEach(application -> {
-			if (isNullOrEmpty(application.getId())) {
-				application.setId(randomUUID().toString());
-			}
+		return createApplicationsExecutionPlan(applications, jobStatus::addTaskStatus);
+	}
+
+	private ExecutionPlan<Step> createApplicationsExecutionPlan(final List<Application> applications,
+			final Consumer<TaskStatus> statuses) {
+		ExecutionPlan<Application> plan = ExecutionPlanCompiler
+				.compile(applications, Application::getName, Application::parents).checkValid();
+
+		return plan.map(i -> newStep(applications.get(i), statuses));
+	}
 
-			application.setJobId(jobStatus.getId());
-			jobStatus.addTaskStatus(newPendingTaskStatus(application.getId(), application.getName()));
+	private Step newStep(Application application, Consumer<TaskStatus> statuses) {
+		if (isNullOrEmpty(application.getId())) {
+			application.setId(randomUUID().toString());
+		}
 
-			Long timeout = application.getTimeout() == null
-					? getLongProperty("org.excalibur.task.default.timeout", 3600L) : application.getTimeout();
+		statuses.accept(newPendingTaskStatus(application.getId(), application.getName()));
 
-			final Step step = new Step(application.getId(), application.getName(),
-					newCommandBuilder().setId(application.getId()).setCommands("bash", "-c",
-							String.format("runexec --output %s.log --walltimelimit %s -- %s; cat %s.log;  rm -f %s.log",
-									application.getId(), timeout, application.getCommandLine(), application.getId(),
-									application.getId()))
-							.registerListeners(Collections.singletonList(JobService.this)));
+		ApplicationDirectives directives = ApplicationDirectives.parse(application.getCommandLine());
+		java.util.Optional<Sweep> sweep = Sweep.of(directives);
 
-			includeApplicationFilesHandler(application, step);
+		if (sweep.isPresent()) {
+			// the sweep's step only stands for its points, which are created when they are about to run
+			return new Step(application.getId(), application.getName(),
+					newCommandBuilder().setId(application.getId()).setCommands("true"))
+					.setDirectives(directives)
+					.setSweep(sweep.get(), index -> newSweepPoint(application, directives, sweep.get(), index));
+		}
 
-			TreeNode<Step> node = new TreeNode<>(step);
+		return newStep(application.getId(), application.getName(), directives, application);
+	}
 
-			if (!application.hasParents()) {
-				trees.put(step.name(), new Tree<>(node));
-			} else {
-				TreeNode<Step> parent = null;
-				Iterator<String> parents = application.parents().iterator();
-
-				while (parents.hasNext() && parent == null) {
-					String name = parents.next();
-
-					t: for (Tree<Step> tree : trees.values()) {
-						for (TreeNode<Step> n : tree.build(TreeTraversalOrderType.PRE_ORDER)) {
-							if (n.getData().name().equalsIgnoreCase(name)) {
-								parent = n;
-								break t;
-							}
-						}
-					}
-				}
+	private Step newStep(String id, String name, ApplicationDirectives directives, Application application) {
+		Long timeout = application.getTimeout() == null
+				? getLongProperty("org.excalibur.task.default.timeout", 3600L) : application.getTimeout();
 
-				assert parent != null;
-				parent.addChild(node);
-			}
-		});
+		final String script = cgroups.joinCommand(id) + String.format(
+				"runexec --output %s.log --walltimelimit %s -- %s; cat %s.log;  rm -f %s.log",
+				id, timeout, directives.commandLine(), id, id);
 
-		return ImmutableList.copyOf(trees.values());
+		final List<String> commands = new ArrayList<>();
+
+		// a task that may be suspended or killed for its copy runs in its own process group, so that it can be stopped
+		// without this service
+		if (Preemption.isEnabledByProperty() || Speculation.isEnabledByProperty()) {
+			commands.add("setsid");
+		}
+
+		commands.addAll(ProcessPriority.of(directives).launcher());
+		commands.addAll(ImmutableList.of("bash", "-c", script));
+
+		final Step step = new Step(id, name,
+				newCommandBuilder().setId(id).setCommands(commands.toArray(new String[commands.size()]))
+						.registerListeners(Collections.singletonList(JobService.this)))
+				.setDirectives(directives)
+				.setAttempts(attempt -> newStep(format("%s-attempt-%d", id, attempt), name, directives, application));
+
+		includeApplicationFilesHandler(application, step);
+
+		return step;
+	}
+
+	/**
+	 * Creates the step of one point of a sweep application. The point's task and its pending status are only inserted
+	 * now, when the point is about to run.
+	 */
+	private Step newSweepPoint(Application application, ApplicationDirectives directives, Sweep sweep, int index) {
+		Application point = new Application()
+				.setId(format("%s-%d", application.getId(), index))
+				.setName(format("%s-%d", application.getName(), index))
+				.setCommandLine(sweep.apply(directives.without(Sweep.PARAMETER_PREFIX).toCommandLine(), index));
+		point.setJobId(application.getJobId());
+		point.setBlockId(application.getBlockId());
+
+		// the sweep was admitted with the room of its points
+		localShellJobLaucher.scheduler().capacity().transfer(application.getId(), point.getId());
+
+		createApplications(Collections.singletonList(point));
+		createTaskStatus(newPendingTaskStatus(point.getId(), point.getName()));
+
+		return newStep(point.getId(), point.getName(), ApplicationDirectives.parse(point.getCommandLine()), application);
 	}
 
 	private void includeApplicationFilesHandler(Application application, Step step) {
@@ -299,7 +824,7 @@ public class JobService {
 			String dest = FilenameUtils.normalize(destPath.concat(File.separator))
 					.concat(FilenameUtils.getName(f.dest()));
 
-			step.action().addEnviromentVariable(f.name(), dest);
+			step.addEnvironmentVariable(f.name(), dest);
 
 			java.util.Optional<URI> uri = f.getSourceURI();
 
@@ -334,12 +859,21 @@ public class JobService {
 	public void createTaskStatus(final TaskStatus status) {
 		if (status != null) {
 			taskStatusRepository.insert(status);
+
+			if (isTerminal(status)) {
+				localShellJobLaucher.scheduler().capacity().finished(status.getTaskId());
+
+				if (deadlineTasks.remove(status.getTaskId())) {
+					deadlineRepository.taskFinished(status.getTaskId());
+				}
+			}
 		}
 	}
 
 	@Subscribe
 	public void updateExecutionResult(TaskExecutionResult result) {
 		if (result != null) {
+			java.util.Optional<ProcessSample> sample = processSampler.untrack(result.getId());
 			TaskStats stats = result.stats();
 
 			// if (!result.getResult().getProcessStats().isEmpty())
@@ -357,8 +891,21 @@ public class JobService {
 			// long elapsed = finished.get().getDate().getTime() -
 			// running.get().getDate().getTime();
 
-			taskCpuStatsRepository.insert(stats.getCpu());
-			taskMemoryStatsRepository.insert(stats.getMemory());
+			// the stats of the command only cover the shell, whereas the sampler's ones cover the whole process tree. The
+			// last record of a task holds its total CPU time and its peak resident size.
+			if (sample.isPresent()) {
+				ProcessSample last = sample.get();
+
+				taskCpuStatsRepository.insert(last.toCpuState());
+				taskMemoryStatsRepository.insert(last.toMemoryState().setResident(last.getPeakResident() / pow(1000, 2)));
+
+				if (result.getName().isPresent()) {
+					localShellJobLaucher.history().recordPeakResident(result.getName().get(), last.getPeakResident());
+				}
+			} else {
+				taskCpuStatsRepository.insert(stats.getCpu());
+				taskMemoryStatsRepository.insert(stats.getMemory());
+			}
 
 			TaskOutput output = new TaskOutput().setTaskId(result.getId()).setId(randomUUID().toString())
 					.setType(TaskOutputType.SYSOUT)
@@ -375,7 +922,16 @@ public class JobService {
 
 	@Subscribe
 	public void updateProcessState(ProcessState ps) {
+		// when /proc is available the steps are started without airlift's monitor and the process sampler takes over the
+		// periodic stats of the task; a command run through airlift all the same only has its pid kept
+		if (ProcSampler.isSupported()) {
+			processStarted(ps.getId(), ps.getPid());
+			return;
+		}
+
 		taskStatusRepository.updateTaskPid(ps.getId(), ps.getPid());
+		localShellJobLaucher.scheduler().preemption().started(ps.getId(), ps.getPid());
+		localShellJobLaucher.speculation().started(ps.getId(), ps.getPid());
 
 		if (ps.getCpuState() != null) {
 			taskCpuStatsRepository.insert(ps.getCpuState());
@@ -391,6 +947,49 @@ public class JobService {
 		}
 	}
 
+	@Subscribe
+	public void updateProcessStarted(TaskProcessStarted started) {
+		processStarted(started.getTaskId(), started.getPid());
+	}
+
+	/**
+	 * Records the pid of a task that has started, once per task when its processes are sampled from /proc.
+	 */
+	private void processStarted(String taskId, long pid) {
+		if (ProcSampler.isSupported() && !processSampler.trackIfAbsent(taskId, pid, cgroups.groupOf(taskId).orElse(null))) {
+			return;
+		}
+
+		taskStatusRepository.updateTaskPid(taskId, pid);
+		localShellJobLaucher.scheduler().preemption().started(taskId, pid);
+		localShellJobLaucher.speculation().started(taskId, pid);
+	}
+
+	@Subscribe
+	public void updateProcessSamples(ProcessSampleBatch batch) {
+		for (ProcessSample sample : batch.samples()) {
+			taskCpuStatsRepository.insert(sample.toCpuState());
+			taskMemoryStatsRepository.insert(sample.toMemoryState());
+		}
+	}
+
+	@Subscribe
+	public void recordPlacement(TaskPlacement placement) {
+		metadataRepository.insert(placement.getTaskId(), "affinity.cpus", placement.getCpuList());
+
+		if (placement.isConfined()) {
+			metadataRepository.insert(placement.getTaskId(), "numa.node", String.valueOf(placement.getNode()));
+		}
+	}
+
+	@Subscribe
+	public void recordSpeculation(SpeculativeExecution execution) {
+		if (execution.getCopyId().isPresent()) {
+			metadataRepository.insert(execution.getTaskId(), "speculation.copy", execution.getCopyId().get());
+			metadataRepository.insert(execution.getTaskId(), "speculation.winner", execution.getWinnerId());
+		}
+	}
+
 	@Subscribe
 	public void updateJobStatus(JobExecution jobExecution) {
 		// jobRepository.finished(jobExecution.getJob().getName(),
@@ -442,10 +1041,169 @@ public class JobService {
 		return stats;
 	}
 
+	/**
+	 * @return how long the given task was suspended for tasks of a higher priority
+	 */
+	public TaskSuspensions getTaskSuspensions(String taskId) {
+		return new TaskSuspensions(taskId, suspensionRepository.countSuspensionsOfTask(taskId),
+				suspensionRepository.getSuspendedTimeOfTask(taskId));
+	}
+
+	/**
+	 * @return what was recorded about how the given task was run, such as the cores it was pinned to
+	 */
+	public Map<String, String> getTaskMetadata(String taskId) {
+		Map<String, String> metadata = new LinkedHashMap<>();
+		metadataRepository.findNames(taskId).forEach(name -> metadata.put(name, metadataRepository.find(taskId, name)));
+
+		return metadata;
+	}
+
 	public List<Application> getTasksOfJob(String jobId) {
 		return ImmutableList.copyOf(taskRepository.findAllTasksOfJob(jobId));
 	}
 
+	/**
+	 * @return the highest resident size in bytes stored for a task, or zero if there is none
+	 */
+	private long storedPeakResidentOf(String taskId) {
+		return taskMemoryStatsRepository.getStatsOfTask(taskId).stream()
+				.mapToLong(memory -> Math.round(memory.getResident() * pow(1000, 2))).max().orElse(0);
+	}
+
+	/**
+	 * @return the state of the scheduler's queues
+	 */
+	public SchedulerState getSchedulerState() {
+		return localShellJobLaucher.scheduler().state();
+	}
+
+	public UserQueueState getSchedulerQueue(String user) {
+		return localShellJobLaucher.scheduler().queue(user);
+	}
+
+	/**
+	 * Reserves room in the scheduler for the tasks of a submission, freeing it if the submission is rolled back.
+	 * @param tasks the room each task takes, as returned by {@link #roomOf(List, List)}
+	 * @throws QuotaExceededException if there is no room for them
+	 * @throws SubmissionTooLargeException if they would not fit even in an empty scheduler
+	 */
+	private void admit(final Map<String, Integer> tasks) {
+		final PendingTaskCapacity capacity = localShellJobLaucher.scheduler().capacity();
+		capacity.acquire(tasks);
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status != STATUS_COMMITTED) {
+						capacity.release(tasks.keySet());
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the room each of the given steps takes in the scheduler: one task, plus one for each point of a sweep
+	 */
+	private static Map<String, Integer> roomOf(ExecutionPlan<Step> applications, List<Tree<BlockAdapter>> blocks) {
+		final Map<String, Integer> room = new LinkedHashMap<>();
+
+		applications.items().forEach(step -> room.put(step.id(), roomOf(step)));
+		blocks.forEach(tree -> tree.forEach(node -> addRoomOf(node.getData(), room)));
+
+		return room;
+	}
+
+	private static void addRoomOf(BlockAdapter block, Map<String, Integer> room) {
+		block.getApplicationPlan().items().forEach(step -> room.put(step.id(), roomOf(step)));
+	}
+
+	private static int roomOf(Step step) {
+		return 1 + step.sweep().map(Sweep::size).orElse(0);
+	}
+
+	private static List<String> taskIdsOf(ExecutionPlan<Step> applications, List<Tree<BlockAdapter>> blocks) {
+		List<String> ids = new ArrayList<>();
+
+		applications.items().forEach(step -> ids.add(step.id()));
+		blocks.forEach(tree -> tree.forEach(
+				node -> node.getData().getApplicationPlan().items().forEach(step -> ids.add(step.id()))));
+
+		return ids;
+	}
+
+	private static boolean isTerminal(TaskStatus status) {
+		return status.getType() == FINISHED || status.getType() == FAILED || status.getType() == CANCELLED;
+	}
+
+	/**
+	 * Estimates whether a job will finish by its deadline, assuming its remaining critical path starts now. The tasks
+	 * that have not finished are expected to take as long as the previous executions of their name or family. The
+	 * top-level applications and each block are planned on their own, and the blocks are assumed to run one after the
+	 * other.
+	 * @return the deadline status of the job, or absent if the job has no deadline
+	 */
+	public Optional<JobDeadlineStatus> getDeadlineStatus(String jobId) {
+		Long deadline = deadlineRepository.findDeadline(jobId);
+
+		if (deadline == null) {
+			return Optional.absent();
+		}
+
+		// only the planned tasks are listed as unfinished: the points of a sweep are accounted in the sweep's estimate
+		Set<String> unfinished = new HashSet<>(deadlineRepository.findUnfinishedTasks(jobId));
+		List<Application> remaining = taskRepository.findAllTasksOfJob(jobId).stream()
+				.filter(task -> unfinished.contains(task.getId()))
+				.collect(toList());
+
+		Map<String, List<Application>> groups = remaining.stream()
+				.collect(groupingBy(task -> nullToEmpty(task.getBlockId()), LinkedHashMap::new, toList()));
+
+		long applications = criticalPathOf(groups.getOrDefault("", ImmutableList.of()));
+		long blocks = groups.entrySet().stream().filter(group -> !group.getKey().isEmpty())
+				.mapToLong(group -> criticalPathOf(group.getValue())).sum();
+
+		return Optional.of(new JobDeadlineStatus(jobId, deadline, now(UTC).toEpochMilli() + max(applications, blocks),
+				remaining.size()));
+	}
+
+	/**
+	 * @return the estimated time in milliseconds of the longest chain of the given tasks
+	 */
+	private long criticalPathOf(List<Application> tasks) {
+		final Set<String> names = tasks.stream().map(Application::getName).collect(toSet());
+
+		// the parents that already finished no longer hold back their children
+		ExecutionPlan<Application> plan = ExecutionPlanCompiler.compile(tasks, Application::getName,
+				task -> task.hasParents()
+						? task.parents().stream().filter(names::contains).collect(toList())
+						: ImmutableList.<String>of());
+
+		long[] finish = new long[tasks.size()];
+		long longest = 0;
+
+		for (int i : plan.topologicalOrder()) {
+			long start = 0;
+
+			for (int p = 0; p < plan.graph().parentCount(i); p++) {
+				start = max(start, finish[plan.graph().parent(i, p)]);
+			}
+
+			Application task = tasks.get(i);
+			finish[i] = start + localShellJobLaucher.estimatedRuntimeOf(task.getName(),
+					Sweep.of(ApplicationDirectives.parse(task.getCommandLine())));
+			longest = max(longest, finish[i]);
+		}
+
+		return longest;
+	}
+
+	private static String ownerOf(ApplicationDescriptor job) {
+		return job.getUser() != null ? job.getUser().getUsername() : null;
+	}
+
 	public Optional<ApplicationDescriptor> getJob(String user, String jobId) {
 		Optional<ApplicationDescriptor> job = jobRepository.findByUUID(jobId);
 
@@ -459,4 +1217,121 @@ public class JobService {
 	public ImmutableList<TaskOutput> getTaskOutput(String jobId, String taskId) {
 		return ImmutableList.copyOf(this.taskOutputRepository.getAllOutputsOfTask(taskId));
 	}
+
+	/**
+	 * Persists the applications and blocks of a streamed job as they are read, keeping only their steps and parent
+	 * references to compile the execution plan at the end.
+	 */
+	private final class StreamingSubmission implements ApplicationDescriptorReader.Handler {
+		private final ApplicationDescriptor job;
+		private final JobStatus jobStatus;
+		private final List<Step> steps = new ArrayList<>();
+		private final List<List<String>> parents = new ArrayList<>();
+		private final List<BlockAdapter> blocks = new ArrayList<>();
+		private final Long deadline;
+
+		/**
+		 * The room taken so far by the tasks of the job.
+		 */
+		private int room;
+
+		StreamingSubmission(ApplicationDescriptor job, JobStatus jobStatus, Long deadline) {
+			this.job = job;
+			this.jobStatus = jobStatus;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public void applications(List<Application> applications) {
+			List<TaskStatus> statuses = new ArrayList<>(applications.size());
+			List<String> ids = new ArrayList<>(applications.size());
+
+			Map<String, Integer> room = new LinkedHashMap<>();
+
+			applications.forEach(application -> {
+				application.setJobId(jobStatus.getId());
+				Step step = newStep(application, statuses::add);
+				steps.add(step);
+				ids.add(step.id());
+				room.put(step.id(), roomOf(step));
+				parents.add(application.hasParents() ? ImmutableList.copyOf(application.parents()) : ImmutableList.of());
+			});
+
+			admitChunk(room);
+
+			statuses.forEach(jobStatus::addTaskStatus);
+			createApplications(applications);
+			createTaskStatuses(statuses);
+			insertDeadlineTasks(ids);
+		}
+
+		@Override
+		public void block(Block block) {
+			List<TaskStatus> statuses = new ArrayList<>();
+
+			checkAndFixBlockState(jobStatus.getId(), block);
+			BlockAdapter adapter = newBlockAdapter(block, statuses::add);
+			blocks.add(adapter);
+			List<String> ids = block.applications().stream().map(Application::getId).collect(toList());
+			Map<String, Integer> room = new LinkedHashMap<>();
+			addRoomOf(adapter, room);
+			admitChunk(room);
+
+			statuses.forEach(jobStatus::addTaskStatus);
+			createApplications(block.getApplications());
+			createTaskStatuses(statuses);
+			insertBlocks(Collections.singletonList(block));
+			insertDeadlineTasks(ids);
+		}
+
+		/**
+		 * Admits the tasks of a chunk, rejecting the job for good once all of its tasks could never be pending at once.
+		 */
+		private void admitChunk(Map<String, Integer> tasks) {
+			int added = tasks.values().stream().mapToInt(Integer::intValue).sum();
+
+			localShellJobLaucher.scheduler().capacity().checkSize(room + added);
+			admit(tasks);
+			room += added;
+		}
+
+		private void insertDeadlineTasks(List<String> ids) {
+			if (deadline != null && !ids.isEmpty()) {
+				deadlineRepository.insertTasks(ids, Collections.nCopies(ids.size(), jobStatus.getId()));
+			}
+		}
+
+		void submit() {
+			blockValidator.check(blocks.stream().map(BlockAdapter::getBlock).collect(toList()));
+
+			List<Integer> indexes = ContiguousSet.create(Range.closedOpen(0, steps.size()), DiscreteDomain.integers())
+					.asList();
+			ExecutionPlan<Step> applicationsExecutionPlan = ExecutionPlanCompiler
+					.compile(indexes, i -> steps.get(i).name(), parents::get)
+					.checkValid()
+					.map(steps::get);
+
+			List<Tree<BlockAdapter>> blocksExecutionTrees = createBlocksExecutionDependencyTrees(blocks);
+
+			enqueue(Collections.singletonList(
+					new PreparedJob(job, jobStatus, applicationsExecutionPlan, blocksExecutionTrees, deadline)));
+		}
+	}
+
+	private static final class PreparedJob {
+		final ApplicationDescriptor job;
+		final JobStatus status;
+		final ExecutionPlan<Step> applications;
+		final List<Tree<BlockAdapter>> blocks;
+		final Long deadline;
+
+		PreparedJob(ApplicationDescriptor job, JobStatus status, ExecutionPlan<Step> applications,
+				List<Tree<BlockAdapter>> blocks, Long deadline) {
+			this.job = job;
+			this.status = status;
+			this.applications = applications;
+			this.blocks = blocks;
+			this.deadline = deadline;
+		}
+	}
 }
@@ -0,0 +1,91 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.excalibur.core.execution.domain.JobStatus;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * The outcome of one job of a bulk submission: either the status of the created job or the reason it was rejected.
+ */
+@Immutable
+public final class JobSubmissionResult
+{
+	private final int index;
+	private final JobStatus status;
+	private final String error;
+
+	private JobSubmissionResult(int index, JobStatus status, String error)
+	{
+		this.index = index;
+		this.status = status;
+		this.error = error;
+	}
+
+	public static JobSubmissionResult created(int index, JobStatus status)
+	{
+		return new JobSubmissionResult(index, status, null);
+	}
+
+	public static JobSubmissionResult rejected(int index, String error)
+	{
+		return new JobSubmissionResult(index, null, error);
+	}
+
+	/**
+	 * @return the position of the job in the submission
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return the status of the created job, or {@code null} if it was rejected
+	 */
+	public JobStatus getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * @return why the job was rejected, or {@code null} if it was created
+	 */
+	public String getError()
+	{
+		return error;
+	}
+
+	public boolean isCreated()
+	{
+		return status != null;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("index", index)
+				.add("status", status)
+				.add("error", error)
+				.omitNullValues()
+				.toString();
+	}
+}
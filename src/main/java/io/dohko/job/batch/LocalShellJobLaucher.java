@@ -19,7 +19,9 @@ package io.dohko.job.batch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.Collections;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +30,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.ToLongFunction;
 
 import org.excalibur.core.util.concurrent.Futures2;
 import org.excalibur.core.util.concurrent.SerialExecutor;
@@ -37,18 +40,33 @@ import com.google.common.base.Optional;
 import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.math.LongMath;
+import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 
+import io.airlift.command.CommandFailedException;
+import io.dohko.job.batch.affinity.TaskAffinity;
+import io.dohko.job.batch.cgroup.TaskCgroups;
+import io.dohko.job.batch.plan.ExecutionPlan;
+import io.dohko.job.batch.scheduler.FairShareScheduler;
+import io.dohko.job.batch.scheduler.TaskRequest;
+import io.dohko.job.batch.tree.CompactGraph;
 import io.dohko.job.batch.tree.Tree;
+import io.dohko.job.batch.worker.ShellWorkerPool;
 import io.dohko.job.batch.tree.TreeNode;
 import job.flow.Job;
 import job.flow.Step;
+import job.flow.Sweep;
 
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.lang.String.format;
+import static java.math.RoundingMode.CEILING;
 import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
 
 import static org.excalibur.core.util.concurrent.DynamicExecutors.*;
 
@@ -60,14 +78,65 @@ public class LocalShellJobLaucher implements JobLauncher {
 
 	private final ListeningExecutorService executor;
 	private final Executor eventBusExecutor;
+	private final TaskCgroups cgroups;
+	private final ShellWorkerPool workers;
+	private final FairShareScheduler scheduler;
+	private final TaskAffinity affinity = TaskAffinity.create();
+	private final TaskHistory history = new TaskHistory();
+	private final StepBatcher batcher = new StepBatcher(history);
+	private final Speculation speculation = new Speculation(history);
+	private ToLongFunction<String> storedPeakResident = taskId -> 0;
 	private List<Tree<BlockAdapter>> remainingTrees = Collections.synchronizedList(new ArrayList<>());
 
 	public LocalShellJobLaucher(ExecutorService executor) {
+		this(executor, TaskCgroups.create(), ShellWorkerPool.create());
+	}
+
+	public LocalShellJobLaucher(ExecutorService executor, TaskCgroups cgroups, ShellWorkerPool workers) {
+		this(executor, cgroups, workers, new FairShareScheduler());
+	}
+
+	public LocalShellJobLaucher(ExecutorService executor, TaskCgroups cgroups, ShellWorkerPool workers,
+			FairShareScheduler scheduler) {
 		this.executor = MoreExecutors.listeningDecorator(requireNonNull(executor, "executor is null"));
+		this.cgroups = requireNonNull(cgroups, "cgroups is null");
+		this.workers = requireNonNull(workers, "workers is null");
+		this.scheduler = requireNonNull(scheduler, "scheduler is null");
 		eventBusExecutor = new SerialExecutor(Executors.newFixedThreadPool(1));
 		subscribers = new AsyncEventBus("localjoblaucher", eventBusExecutor);
 	}
 
+	/**
+	 * @return the speculation that starts copies of the straggling steps
+	 */
+	public Speculation speculation() {
+		return speculation;
+	}
+
+	/**
+	 * @return the scheduler that decides which of the ready steps start
+	 */
+	public FairShareScheduler scheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * @return the runtime and memory of the steps executed so far
+	 */
+	public TaskHistory history() {
+		return history;
+	}
+
+	/**
+	 * Sets where the peak resident size of a step is looked up when no step with the same name has run since the launcher
+	 * started, such as a step recovered after a restart.
+	 * @param storedPeakResident returns the stored peak resident size in bytes of the task with the given id, or zero
+	 */
+	public LocalShellJobLaucher setStoredPeakResident(ToLongFunction<String> storedPeakResident) {
+		this.storedPeakResident = requireNonNull(storedPeakResident, "storedPeakResident is null");
+		return this;
+	}
+
 	@Override
 	public <T> void registerListener(T listener) {
 		if (listener != null) {
@@ -75,18 +144,28 @@ public class LocalShellJobLaucher implements JobLauncher {
 		}
 	}
 
-	public void submitJobs(List<Tree<Step>> jobs) {
-		jobs.forEach(job -> {
-			submitStep(job);
-		});
+	/**
+	 * Starts the steps of a job's plan that have no parents. The others are started by their index once their first
+	 * declared parent succeeds, so the launcher keeps no object per step besides the step itself.
+	 */
+	public void submitJobs(ExecutionPlan<Step> plan) {
+		estimateCriticalPaths(plan);
+
+		for (List<Integer> group : batcher.partition(Ints.asList(plan.roots()), plan::get)) {
+			if (group.size() == 1) {
+				submitStep(plan, group.get(0));
+			} else {
+				executeBatch(plan, group);
+			}
+		}
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private void submitStep(Tree<Step> job) {
+	private void submitStep(ExecutionPlan<Step> plan, int task) {
 		ListeningExecutorService executor = newListeningDynamicScalingThreadPool("job-executor");
 
 		Futures2.addCallback(executor.submit(() -> {
-			execute(job.getRoot());
+			execute(plan, task);
 		}), new FutureCallback() {
 			@Override
 			public void onSuccess(Object result) {
@@ -100,36 +179,204 @@ public class LocalShellJobLaucher implements JobLauncher {
 		});
 	}
 
-	void execute(TreeNode<Step> task) {
-		final Step step = task.getData();
-		ListeningExecutorService executor = newListeningDynamicScalingThreadPool(
-				format("step-executor-%s", step.getName()));
-		ListenableFuture<StepExecutionResult> handle = executor.submit(new Callable<StepExecutionResult>() {
-			@Override
-			public StepExecutionResult call() throws Exception {
-				return new StepExecutor(step, executor).registerListener(LocalShellJobLaucher.this).execute();
-			}
+	void execute(ExecutionPlan<Step> plan, int task) {
+		final Step step = plan.get(task);
+		ListenableFuture<StepExecutionResult> handle = schedule(step, () -> {
+			ListeningExecutorService executor = newListeningDynamicScalingThreadPool(
+					format("step-executor-%s", step.getName()));
+			ListenableFuture<StepExecutionResult> result = executor.submit(new Callable<StepExecutionResult>() {
+				@Override
+				public StepExecutionResult call() throws Exception {
+					return execute(step, executor);
+				}
+			});
+
+			result.addListener(executor::shutdown, directExecutor());
+			return result;
 		});
 
 		Futures2.addCallback(handle, new FutureCallback<StepExecutionResult>() {
 			@Override
 			public void onSuccess(StepExecutionResult result) {
-				if (result.isSuccessfully()) {
-					for (TreeNode<Step> child : task.children()) {
-						execute(child);
-					}
-				}
+				completed(plan, task, result);
+			}
 
-				executor.shutdown();
+			@Override
+			public void onFailure(Throwable t) {
+				LOG.error(format("Error on executing the task [%s,%s]", step.getId(), step.getName()), t);
+				cancel(plan, task);
+			}
+		});
+	}
+
+	/**
+	 * Executes sibling steps that became ready together, launching the short ones in batches.
+	 */
+	void execute(ExecutionPlan<Step> plan, List<Integer> tasks) {
+		for (List<Integer> group : batcher.partition(tasks, plan::get)) {
+			if (group.size() == 1) {
+				execute(plan, group.get(0));
+			} else {
+				executeBatch(plan, group);
+			}
+		}
+	}
+
+	void executeBatch(ExecutionPlan<Step> plan, List<Integer> tasks) {
+		final List<Step> steps = tasks.stream().map(plan::get).collect(toList());
+
+		// a batch runs as one process, so it takes one slot, needs as much memory as its largest step and is as urgent as
+		// its most urgent one
+		List<TaskRequest> requests = steps.stream().map(this::requestOf).collect(toList());
+		TaskRequest request = TaskRequest.of(steps.get(0).owner())
+				.setMemory(requests.stream().mapToLong(TaskRequest::getMemory).max().orElse(0))
+				.setLatestStart(requests.stream().mapToLong(TaskRequest::getLatestStart).min().orElse(Long.MAX_VALUE))
+				.setPriority(requests.stream().mapToInt(TaskRequest::getPriority).max().orElse(0))
+				.setEstimatedRuntime(requests.stream().allMatch(r -> r.getEstimatedRuntime() > 0)
+						? requests.stream().mapToLong(TaskRequest::getEstimatedRuntime).sum() : 0);
+
+		// each step's children are released as soon as the step's own result is read, not when the whole batch ends
+		final boolean[] released = new boolean[tasks.size()];
+
+		ListenableFuture<List<StepExecutionResult>> handle = scheduler.submit(request, () -> {
+			ListeningExecutorService executor = newListeningDynamicScalingThreadPool(
+					format("batch-executor-%s", steps.get(0).getName()));
+			ListenableFuture<List<StepExecutionResult>> result = executor
+					.submit(() -> new BatchedStepExecutor(steps, executor, workers).registerListener(this).execute((r, i) -> {
+						released[i] = true;
+						completed(plan, tasks.get(i), r);
+					}));
+
+			result.addListener(executor::shutdown, directExecutor());
+			return result;
+		});
+
+		Futures2.addCallback(handle, new FutureCallback<List<StepExecutionResult>>() {
+			@Override
+			public void onSuccess(List<StepExecutionResult> results) {
 			}
 
 			@Override
 			public void onFailure(Throwable t) {
-				executor.shutdown();
+				LOG.error("Error on executing a batch of tasks", t);
+
+				for (int i = 0; i < tasks.size(); i++) {
+					if (!released[i]) {
+						cancel(plan, tasks.get(i));
+					}
+				}
 			}
 		});
 	}
 
+	/**
+	 * Records the runtime of a successful task and either launches its children or, if it failed, cancels them.
+	 */
+	private void completed(ExecutionPlan<Step> plan, int task, StepExecutionResult result) {
+		history.record(result);
+
+		if (result.isSuccessfully()) {
+			List<Integer> children = new ArrayList<>();
+			plan.forEachTreeChild(task, children::add);
+			execute(plan, children);
+		} else {
+			plan.forEachTreeChild(task, child -> cancel(plan, child));
+		}
+	}
+
+	/**
+	 * Queues a step in the scheduler. A sweep step is started right away: it only waits for its points, which are
+	 * scheduled one by one.
+	 */
+	private <T> ListenableFuture<T> schedule(Step step, Callable<ListenableFuture<T>> start) {
+		if (!step.sweep().isPresent()) {
+			return scheduler.submit(requestOf(step), start);
+		}
+
+		try {
+			return start.call();
+		} catch (Exception e) {
+			return Futures.immediateFailedFuture(e);
+		}
+	}
+
+	/**
+	 * Executes a step, or the points of a sweep step.
+	 */
+	private StepExecutionResult execute(Step step, ExecutorService executor) {
+		if (step.sweep().isPresent()) {
+			return new SweepExecutor(step, executor, s -> newStepExecutor(s, executor), history, scheduler)
+					.setPointRequest(requestOf(step)).execute();
+		}
+
+		return newStepExecutor(step, executor).execute();
+	}
+
+	private TaskRequest requestOf(Step step) {
+		// the runtime of a sweep's step is the one of each of its points
+		TaskRequest request = TaskRequest.of(step.owner()).setMemory(peakResidentOf(step))
+				.setPriority(Math.max(0, step.directives().priority().orElse(0))).setTaskId(step.id())
+				.setEstimatedRuntime(history.estimatedRuntime(step).orElse(0L));
+
+		if (step.directives().isGang()) {
+			request.setCores(Math.max(1, step.directives().cores().orElse(1)));
+		}
+		step.deadline().ifPresent(deadline -> request.setLatestStart(deadline - step.criticalPath()));
+
+		return request;
+	}
+
+	/**
+	 * Estimates, for the steps of a job with a deadline, the time of the longest chain of steps that depend on each one,
+	 * walking the plan in reverse topological order. Steps that have never run are estimated to take no time.
+	 */
+	private void estimateCriticalPaths(ExecutionPlan<Step> plan) {
+		if (plan.size() == 0 || !plan.get(0).deadline().isPresent()) {
+			return;
+		}
+
+		final int[] order = plan.topologicalOrder();
+		final CompactGraph graph = plan.graph();
+
+		for (int i = order.length - 1; i >= 0; i--) {
+			int node = order[i];
+			long longest = 0;
+
+			for (int c = 0; c < graph.childCount(node); c++) {
+				longest = Math.max(longest, plan.get(graph.child(node, c)).criticalPath());
+			}
+
+			plan.get(node).setCriticalPath(estimatedRuntimeOf(plan.get(node)) + longest);
+		}
+	}
+
+	private long estimatedRuntimeOf(Step step) {
+		return estimatedRuntimeOf(step.name(), step.sweep());
+	}
+
+	/**
+	 * @return the estimated runtime in milliseconds of a step, or zero if no step with the same name or family has run
+	 */
+	public long estimatedRuntimeOf(String name, java.util.Optional<Sweep> sweep) {
+		long runtime = history.estimatedRuntime(name).orElse(0L);
+
+		// the points of a sweep run a window at a time
+		return sweep.map(s -> runtime * LongMath.divide(s.size(), SweepExecutor.defaultWindow(), CEILING)).orElse(runtime);
+	}
+
+	/**
+	 * @return the expected peak resident size in bytes of the given step, or zero if it is unknown
+	 */
+	private long peakResidentOf(Step step) {
+		return history.estimatedPeakResident(step).orElseGet(() -> storedPeakResident.applyAsLong(step.id()));
+	}
+
+	private StepExecutor newStepExecutor(Step step, Executor executor) {
+		return new StepExecutor(step, executor).registerListener(this).setCgroups(cgroups).setWorkers(workers)
+				.setPreemption(scheduler.preemption()).setAffinity(affinity)
+				.setSpeculation(speculation, (copy, start) -> scheduler.submit(requestOf(copy), start));
+	}
+
 	public void run(final Iterable<Job> jobs) {
 		// TODO include one callback to update job status when all tasks have
 		// been finished
@@ -183,10 +430,12 @@ public class LocalShellJobLaucher implements JobLauncher {
 	public void cancel() {
 		futures.values().forEach(f -> f.cancel(true));
 		executor.shutdownNow();
+		workers.close();
 	}
 
 	public void submitBlocksToExecution(List<Tree<BlockAdapter>> trees) {
 		synchronized (remainingTrees) {
+			trees.forEach(tree -> tree.forEach(node -> estimateCriticalPaths(node.getData().getApplicationPlan())));
 			boolean isEmptyBefore=remainingTrees.isEmpty();
 			remainingTrees.addAll(trees);
 			if (isEmptyBefore){
@@ -235,33 +484,73 @@ public class LocalShellJobLaucher implements JobLauncher {
 
 	void handleBlock(BlockAdapter block, ListeningExecutorService executor) {
 		for (int i = 0; i < block.getBlock().getRepeat(); i++) {
-			handle(block.getApplicationTree().root());
+			handle(block.getApplicationPlan(), block.getApplicationPlan().roots()[0]);
 		}
 	}
 
-	StepExecutionResult handle(TreeNode<Step> node) {
-		StepExecutionResult result = new StepExecutor(node.getData(), executor).registerListener(this).execute();
+	/**
+	 * Executes the steps of a plan depth-first, starting from the given one, one at a time, waiting on the caller's thread for each one to be scheduled
+	 * and to finish. The children of a failed step are cancelled. If a step could not be scheduled or run, it and every
+	 * step not yet started are cancelled, so that none of them stays pending. The traversal keeps its own stack, as the
+	 * applications of a block form a chain as long as the block.
+	 * @return the result of the given step
+	 */
+	StepExecutionResult handle(ExecutionPlan<Step> plan, int task) {
+		final Deque<Integer> pending = new ArrayDeque<>();
+		StepExecutionResult first = null;
+		pending.push(task);
+
+		while (!pending.isEmpty()) {
+			final int current = pending.pop();
+			final Step step = plan.get(current);
+			StepExecutionResult result;
+
+			try {
+				result = Futures.getUnchecked(schedule(step, () -> executor.submit(() -> execute(step, executor))));
+			} catch (RuntimeException e) {
+				LOG.error(format("Error on executing the task [%s,%s]", step.getId(), step.getName()), e);
+
+				cancel(plan, current);
+				pending.forEach(p -> cancel(plan, p));
+				pending.clear();
+
+				return first != null ? first : new StepExecutionResult(step)
+						.setException(new CommandFailedException(step.getAction().build(), -1, e, ""));
+			}
 
-		if (result.isSuccessfully()) {
-			for (TreeNode<Step> child : node.children()) {
-				handle(child);
-				
+			history.record(result);
+
+			if (first == null) {
+				first = result;
 			}
-		}else {
-			for (TreeNode<Step> child : node.children()) {
-				cancel(child);
-				
+
+			if (result.isSuccessfully()) {
+				// pushed in reverse, so that the first child runs first
+				List<Integer> children = new ArrayList<>();
+				plan.forEachTreeChild(current, children::add);
+
+				for (int i = children.size() - 1; i >= 0; i--) {
+					pending.push(children.get(i));
+				}
+			} else {
+				plan.forEachTreeChild(current, child -> cancel(plan, child));
 			}
-			
 		}
 
-		return result;
+		return first;
 	}
-	void cancel(TreeNode<Step> node){
-		StepExecutionResult result = new StepExecutor(node.getData(), executor).registerListener(this).cancel();
-		for (TreeNode<Step> child : node.children()) {
-			cancel(child);
-			
+
+	/**
+	 * Cancels a step and the ones attached below it in the plan.
+	 */
+	void cancel(ExecutionPlan<Step> plan, int task) {
+		final Deque<Integer> pending = new ArrayDeque<>();
+		pending.push(task);
+
+		while (!pending.isEmpty()) {
+			int current = pending.pop();
+			newStepExecutor(plan.get(current), executor).cancel();
+			plan.forEachTreeChild(current, pending::push);
 		}
 	}
 }
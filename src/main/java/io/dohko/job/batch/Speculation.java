@@ -0,0 +1,295 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import io.airlift.command.CommandFailedException;
+import io.dohko.job.batch.monitor.ProcessGroups;
+import job.flow.Step;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+import static org.excalibur.core.util.SystemUtils2.getLongProperty;
+import static org.excalibur.core.util.concurrent.DynamicExecutors.newListeningDynamicScalingThreadPool;
+
+/**
+ * Starts a copy of a task that runs for longer than its siblings, the steps of the same name or family such as the
+ * points of a sweep or the iterations of a block, and keeps the result of the first attempt to succeed. The other
+ * attempt's process group is killed; the tasks are started with {@code setsid} while speculation is enabled. A task
+ * straggles once it runs for longer than the {@code org.excalibur.task.speculation.percentile} (95 by default) of its
+ * siblings' latest runtimes plus {@code org.excalibur.task.speculation.margin.percent} (20%) of it, and no less than
+ * {@code org.excalibur.task.speculation.min.runtime.ms} (10 s). It needs the runtimes of at least
+ * {@code org.excalibur.task.speculation.min.samples} (5) siblings, and at most
+ * {@code org.excalibur.task.speculation.max.copies} (2) copies run at the same time. Sweeps, gang steps and steps that
+ * fetch files first are never copied.
+ * <p>
+ * It is enabled by the system property {@code org.excalibur.task.speculation.enabled}.
+ */
+@ThreadSafe
+public class Speculation
+{
+	private static final Logger LOG = LoggerFactory.getLogger(Speculation.class);
+
+	private final TaskHistory history;
+	private final ProcessGroups groups;
+	private final boolean enabled;
+	private final int percentile;
+	private final int margin;
+	private final long minimumRuntime;
+	private final int minimumSamples;
+	private final int maximumCopies;
+	private final AtomicInteger copies = new AtomicInteger();
+	private final ListeningExecutorService executor;
+
+	/**
+	 * The tasks of the attempts that are running, and the processes of the ones that have started.
+	 */
+	private final Set<String> attempts = new HashSet<>();
+	private final Map<String, Long> processes = new HashMap<>();
+
+	public Speculation(TaskHistory history)
+	{
+		this(history, new ProcessGroups(), isEnabledByProperty(), getIntegerProperty("org.excalibur.task.speculation.percentile", 95),
+				getIntegerProperty("org.excalibur.task.speculation.margin.percent", 20),
+				getLongProperty("org.excalibur.task.speculation.min.runtime.ms", 10_000L),
+				getIntegerProperty("org.excalibur.task.speculation.min.samples", 5),
+				getIntegerProperty("org.excalibur.task.speculation.max.copies", 2));
+	}
+
+	Speculation(TaskHistory history, ProcessGroups groups, boolean enabled, int percentile, int margin, long minimumRuntime,
+			int minimumSamples, int maximumCopies)
+	{
+		this.history = requireNonNull(history, "history is null");
+		this.groups = requireNonNull(groups, "groups is null");
+		this.enabled = enabled;
+		this.percentile = percentile;
+		this.margin = margin;
+		this.minimumRuntime = minimumRuntime;
+		this.minimumSamples = minimumSamples;
+		this.maximumCopies = maximumCopies;
+		this.executor = enabled ? newListeningDynamicScalingThreadPool("speculative-attempts") : null;
+	}
+
+	/**
+	 * @return <code>true</code> if speculation was enabled by {@code org.excalibur.task.speculation.enabled}, and thus the
+	 *         tasks must be started in their own process group
+	 */
+	public static boolean isEnabledByProperty()
+	{
+		return Boolean.getBoolean("org.excalibur.task.speculation.enabled");
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * @return the time in milliseconds after which a copy of the given step is started, or empty if it is never copied
+	 */
+	public Optional<Long> thresholdOf(Step step)
+	{
+		if (!enabled || step.sweep().isPresent() || !step.taskLets().isEmpty() || step.directives().isGang())
+		{
+			return Optional.empty();
+		}
+
+		return history.runtimePercentile(step, percentile, minimumSamples)
+				.map(runtime -> Math.max(minimumRuntime, runtime + runtime * margin / 100));
+	}
+
+	/**
+	 * Records the process of a running attempt, which leads the attempt's process group.
+	 */
+	public synchronized void started(String taskId, long pid)
+	{
+		if (taskId != null && attempts.contains(taskId))
+		{
+			processes.put(taskId, pid);
+		}
+	}
+
+	/**
+	 * Runs a step and, if it is still running after the given time, a copy of it. The step runs in the slot it already
+	 * holds, whereas the copy is queued like any other task and counts against the same limits.
+	 * @param step the step to run
+	 * @param threshold the time in milliseconds after which the step straggles
+	 * @param runner runs an attempt at the step without publishing its status
+	 * @param scheduler queues the copy, calling the given start when it gets a slot
+	 * @return the outcome of the run, with the result of the first attempt to succeed or, if all of them failed, of the last
+	 *         one to fail
+	 */
+	public SpeculativeExecution run(Step step, long threshold, Function<Step, StepExecutionResult> runner,
+			BiFunction<Step, Callable<ListenableFuture<StepExecutionResult>>, ListenableFuture<StepExecutionResult>> scheduler)
+	{
+		BlockingQueue<ListenableFuture<StepExecutionResult>> completed = new LinkedBlockingQueue<>();
+		Map<ListenableFuture<StepExecutionResult>, Step> running = new HashMap<>();
+		Step copy = null;
+
+		try
+		{
+			ListenableFuture<StepExecutionResult> original = submit(step, () -> executor.submit(() -> runner.apply(step)), completed);
+			running.put(original, step);
+
+			try
+			{
+				original.get(threshold, MILLISECONDS);
+			}
+			catch (ExecutionException failed)
+			{
+				// the failure is taken from the completed attempts below
+			}
+			catch (TimeoutException straggling)
+			{
+				if (copies.incrementAndGet() <= maximumCopies)
+				{
+					copy = step.attempt(2).orElse(null);
+				}
+
+				if (copy == null)
+				{
+					copies.decrementAndGet();
+				}
+				else
+				{
+					LOG.info("Task [{},{}] has been running for more than {} ms. Starting its copy [{}]", step.id(), step.name(),
+							threshold, copy.id());
+
+					Step attempt = copy;
+					running.put(submit(copy, () -> scheduler.apply(attempt, () -> executor.submit(() -> runner.apply(attempt))),
+							completed), copy);
+				}
+			}
+
+			StepExecutionResult result = null;
+
+			while (!running.isEmpty() && (result == null || !result.isSuccessfully()))
+			{
+				ListenableFuture<StepExecutionResult> attempt = completed.take();
+				Step attemptStep = running.remove(attempt);
+				result = resultOf(attemptStep, attempt);
+			}
+
+			running.forEach(this::kill);
+
+			if (copy != null)
+			{
+				LOG.info("Attempt [{}] of task [{},{}] won", result.step().id(), step.id(), step.name());
+			}
+
+			return new SpeculativeExecution(step.id(), copy != null ? copy.id() : null, result);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			running.forEach(this::kill);
+
+			return new SpeculativeExecution(step.id(), copy != null ? copy.id() : null, new StepExecutionResult(step)
+					.setException(new CommandFailedException(step.getAction().build(), -1, e, "")));
+		}
+		finally
+		{
+			if (copy != null)
+			{
+				copies.decrementAndGet();
+			}
+
+			synchronized (this)
+			{
+				attempts.remove(step.id());
+				processes.remove(step.id());
+
+				if (copy != null)
+				{
+					attempts.remove(copy.id());
+					processes.remove(copy.id());
+				}
+			}
+		}
+	}
+
+	private ListenableFuture<StepExecutionResult> submit(Step attempt, Supplier<ListenableFuture<StepExecutionResult>> start,
+			BlockingQueue<ListenableFuture<StepExecutionResult>> completed)
+	{
+		synchronized (this)
+		{
+			attempts.add(attempt.id());
+		}
+
+		ListenableFuture<StepExecutionResult> result = start.get();
+		result.addListener(() -> completed.add(result), directExecutor());
+
+		return result;
+	}
+
+	private StepExecutionResult resultOf(Step attempt, ListenableFuture<StepExecutionResult> result) throws InterruptedException
+	{
+		try
+		{
+			return result.get();
+		}
+		catch (ExecutionException e)
+		{
+			LOG.error(format("Error on executing the attempt [%s] of task [%s]", attempt.id(), attempt.name()), e.getCause());
+			return new StepExecutionResult(attempt).setException(new CommandFailedException(attempt.getAction().build(), -1,
+					e.getCause(), ""));
+		}
+	}
+
+	private void kill(ListenableFuture<StepExecutionResult> result, Step attempt)
+	{
+		Long pid;
+
+		synchronized (this)
+		{
+			pid = processes.get(attempt.id());
+		}
+
+		// a copy that is still waiting for a slot has no process yet, and cancelling it is enough
+		if (pid != null && !groups.kill(pid))
+		{
+			LOG.warn("Could not kill the process group of the attempt [{}] of task [{}]", attempt.id(), attempt.name());
+		}
+
+		result.cancel(true);
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import java.util.Optional;
+
+import com.google.common.base.MoreObjects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The outcome of running a task with {@link Speculation}: the copy started when the task straggled, if any, and the
+ * attempt that won. It is published when a copy was started.
+ */
+public class SpeculativeExecution 
+{
+	private final String taskId;
+	private final String copyId;
+	private final StepExecutionResult result;
+
+	public SpeculativeExecution(String taskId, String copyId, StepExecutionResult result) 
+	{
+		this.taskId = requireNonNull(taskId, "taskId is null");
+		this.copyId = copyId;
+		this.result = requireNonNull(result, "result is null");
+	}
+
+	/**
+	 * @return the id of the task
+	 */
+	public String getTaskId() 
+	{
+		return taskId;
+	}
+
+	/**
+	 * @return the id of the copy of the task, if one was started
+	 */
+	public Optional<String> getCopyId() 
+	{
+		return Optional.ofNullable(copyId);
+	}
+
+	/**
+	 * @return the id of the attempt that won: the task's or its copy's
+	 */
+	public String getWinnerId() 
+	{
+		return result.step().id();
+	}
+
+	/**
+	 * @return the result of the attempt that won
+	 */
+	public StepExecutionResult getResult() 
+	{
+		return result;
+	}
+
+	@Override
+	public String toString() 
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("task", taskId)
+				.add("copy", copyId)
+				.add("winner", getWinnerId())
+				.omitNullValues()
+				.toString();
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import job.flow.Step;
+
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+import static org.excalibur.core.util.SystemUtils2.getLongProperty;
+
+/**
+ * Groups sibling steps that are ready at the same time and whose historical runtime is below
+ * {@code org.excalibur.task.batch.threshold.ms} into batches of at most {@code org.excalibur.task.batch.size} steps, so
+ * that they are launched as one process. Batching is disabled when the threshold is zero, which is the default.
+ */
+public class StepBatcher 
+{
+	private final TaskHistory history;
+	private final long threshold;
+	private final int maxSize;
+
+	public StepBatcher(TaskHistory history) 
+	{
+		this(history, getLongProperty("org.excalibur.task.batch.threshold.ms", 0L),
+				getIntegerProperty("org.excalibur.task.batch.size", 64));
+	}
+
+	public StepBatcher(TaskHistory history, long threshold, int maxSize) 
+	{
+		this.history = history;
+		this.threshold = threshold;
+		this.maxSize = maxSize;
+	}
+
+	public boolean isEnabled() 
+	{
+		return threshold > 0 && maxSize > 1;
+	}
+
+	/**
+	 * A step can be batched if it is a {@code bash -c} script without tasklets that has previously run in less than the
+	 * threshold and does not need several cores at the same time.
+	 */
+	public boolean isBatchable(Step step) 
+	{
+		if (!isEnabled() || step.sweep().isPresent() || !step.taskLets().isEmpty() || !step.script().isPresent()
+				|| step.directives().isGang())
+		{
+			return false;
+		}
+
+		Optional<Long> runtime = history.estimatedRuntime(step);
+		return runtime.isPresent() && runtime.get() < threshold;
+	}
+
+	/**
+	 * Splits the given items in the groups to launch together. Items that cannot be batched are returned alone, and in the
+	 * given order.
+	 */
+	public <T> List<List<T>> partition(List<T> items, Function<T, Step> stepOf) 
+	{
+		List<List<T>> groups = new ArrayList<>();
+		List<T> batch = new ArrayList<>();
+
+		for (T item : items) 
+		{
+			if (isBatchable(stepOf.apply(item))) 
+			{
+				batch.add(item);
+
+				if (batch.size() == maxSize) 
+				{
+					groups.add(batch);
+					batch = new ArrayList<>();
+				}
+			} 
+			else 
+			{
+				List<T> single = new ArrayList<>(1);
+				single.add(item);
+				groups.add(single);
+			}
+		}
+
+		if (!batch.isEmpty()) 
+		{
+			groups.add(batch);
+		}
+
+		return groups;
+	}
+}
@@ -26,6 +26,7 @@ public class StepExecutionResult
 	private final Step step;
 	private TaskExecutionResult taskExecutionResult;
 	private CommandFailedException exception;
+	private long elapsedTime;
 
 	public StepExecutionResult(Step step) 
 	{
@@ -54,6 +55,20 @@ public class StepExecutionResult
 		return this;
 	}
 
+	/**
+	 * @return the time in milliseconds the step took to run
+	 */
+	public long getElapsedTime() 
+	{
+		return elapsedTime;
+	}
+
+	public StepExecutionResult setElapsedTime(long elapsedTime) 
+	{
+		this.elapsedTime = elapsedTime;
+		return this;
+	}
+
 	/**
 	 * @return the result
 	 */
@@ -16,18 +16,30 @@
  */
 package io.dohko.job.batch;
 
+import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.excalibur.core.execution.domain.TaskStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import io.airlift.command.CommandFailedException;
 import io.airlift.command.CommandTimeoutException;
 import io.airlift.command.CommandResult;
+import io.dohko.job.batch.affinity.TaskAffinity;
+import io.dohko.job.batch.affinity.TaskPlacement;
+import io.dohko.job.batch.cgroup.TaskCgroups;
+import io.dohko.job.batch.scheduler.Preemption;
+import io.dohko.job.batch.worker.ShellWorkerPool;
 import job.flow.Step;
 
 import static java.lang.String.format;
@@ -45,6 +57,12 @@ public class StepExecutor {
 	private final Step step;
 	private final Executor executor;
 	private final EventBus eventBus;
+	private TaskCgroups cgroups;
+	private ShellWorkerPool workers;
+	private Preemption preemption;
+	private TaskAffinity affinity;
+	private Speculation speculation;
+	private BiFunction<Step, Callable<ListenableFuture<StepExecutionResult>>, ListenableFuture<StepExecutionResult>> copyScheduler;
 	// private final AtomicBoolean isExecuting = new AtomicBoolean(false);
 
 	public StepExecutor(Step task, Executor executor) {
@@ -67,54 +85,241 @@ public class StepExecutor {
 		return this;
 	}
 
+	/**
+	 * Runs the step in its own cgroup when the given {@link TaskCgroups} are enabled.
+	 */
+	public StepExecutor setCgroups(TaskCgroups cgroups) {
+		this.cgroups = cgroups;
+		return this;
+	}
+
+	/**
+	 * Runs the step on a pre-forked shell worker when the given pool is enabled.
+	 */
+	public StepExecutor setWorkers(ShellWorkerPool workers) {
+		this.workers = workers;
+		return this;
+	}
+
+	/**
+	 * Leaves out of the step's elapsed time the time it spent suspended by the given {@link Preemption}.
+	 */
+	public StepExecutor setPreemption(Preemption preemption) {
+		this.preemption = preemption;
+		return this;
+	}
+
+	/**
+	 * Pins the step to its own cores when the given {@link TaskAffinity} is enabled and has enough free cores.
+	 */
+	public StepExecutor setAffinity(TaskAffinity affinity) {
+		this.affinity = affinity;
+		return this;
+	}
+
+	/**
+	 * Starts a copy of the step when it straggles, as decided by the given {@link Speculation}.
+	 * @param scheduler queues the copy like any other task, calling the given start when the copy gets a slot
+	 */
+	public StepExecutor setSpeculation(Speculation speculation,
+			BiFunction<Step, Callable<ListenableFuture<StepExecutionResult>>, ListenableFuture<StepExecutionResult>> scheduler) {
+		this.speculation = speculation;
+		this.copyScheduler = scheduler;
+		return this;
+	}
+
 	public StepExecutionResult execute() {
+		Optional<Long> threshold = speculation != null ? speculation.thresholdOf(step) : Optional.empty();
+
+		if (threshold.isPresent()) {
+			return executeSpeculatively(threshold.get());
+		}
+
 		StepExecutionResult result = new StepExecutionResult(step);
 
+		if (cgroups != null) {
+			cgroups.create(step.id(), step.directives().cpus(), step.directives().memory());
+		}
+
+		if (affinity != null) {
+			Optional<TaskPlacement> placement = affinity.assign(step.id(), step.directives().cores().orElse(1));
+			step.setLauncher(placement.map(affinity::launcher).orElse(ImmutableList.of()));
+			placement.ifPresent(eventBus::post);
+		}
+
+		final long start = System.nanoTime();
+
 		try {
-			eventBus.post(runningTaskStatus(step.id(), step.name()));
+			started();
+			complete(result, step.execute(executor, workers,
+					pid -> eventBus.post(new TaskProcessStarted(step.getId(), pid))));
+		} catch (CommandTimeoutException cfe) {
+			timedOut();
+		} catch (CommandFailedException cfe) {
+			failed(result, cfe);
+		} finally {
+			long suspended = preemption != null ? preemption.suspendedTime(step.id()) : 0;
+			result.setElapsedTime((System.nanoTime() - start) / 1_000_000 - suspended);
 
-			LOG.info("Executing the task [{},{}]", step.getId(), step.getName());
+			if (cgroups != null) {
+				cgroups.remove(step.id());
+			}
 
-			result.setResult(new TaskExecutionResult(step.getId(), step.execute(executor)));
-			Integer exitCode = isTimeout(result.getOutput()) ? 9 : Integer.parseInt(getExitCode(result.getOutput()));
-			if (isError(result.getOutput())||isTimeout(result.getOutput())) {
-				
-				throw new CommandFailedException(step.getAction().build(), exitCode, null,
-						result.getOutput());
+			if (affinity != null) {
+				affinity.release(step.id());
 			}
+		}
 
-			LOG.info("Finished task [{},{}] with exitcode [{}]", step.getId(), step.getName(),
-					exitCode);
+		return result;
+	}
 
-			LOG.info("Task [{},{}]'s output is [{}]", step.getId(), step.getName(), result.getOutput());
+	/**
+	 * Runs the step, and a copy of it if it straggles, and completes the step with the result of the attempt that won. The
+	 * attempts run on executors of their own, whose status is not published. They do not run on the shell workers: the
+	 * attempt that loses is killed with its process group, and a worker's group outlives the task it runs.
+	 */
+	private StepExecutionResult executeSpeculatively(long threshold) {
+		StepExecutionResult result = new StepExecutionResult(step);
+		final long start = System.nanoTime();
 
-			eventBus.post(newTaskStatus(step.id(), step.name(), FINISHED));
-			eventBus.post(result.getResult());
-		} catch (CommandTimeoutException cfe) {
+		started();
+		SpeculativeExecution execution = speculation.run(step, threshold, attempt -> attemptExecutor(attempt).execute(),
+				copyScheduler);
+		StepExecutionResult winner = execution.getResult();
 
-			LOG.info("Task [{},{}] timeout", step.getId(), step.getName());
-			eventBus.post(newTaskStatus(step.id(), step.name(), FAILED));
+		if (execution.getCopyId().isPresent()) {
+			eventBus.post(execution);
+		}
 
+		try {
+			if (winner.isSuccessfully()) {
+				complete(result, winner.getResult().getResult());
+			} else if (winner.getException() != null) {
+				failed(result, winner.getException());
+			} else {
+				timedOut();
+			}
+		} catch (CommandFailedException cfe) {
+			failed(result, cfe);
 		}
 
-		catch (CommandFailedException cfe) {
-			
-			LOG.info("Task [{},{}] failed with exitcode [{}]", step.getId(), step.getName(), cfe.getExitCode());
-			result.setException(cfe);
+		return result.setElapsedTime((System.nanoTime() - start) / 1_000_000);
+	}
+
+	private StepExecutor attemptExecutor(Step attempt) {
+		return new StepExecutor(attempt, executor, new EventBus(format("attempt-%s-event-bus", attempt.name())))
+				.registerListener(new AttemptEvents(eventBus)).setCgroups(cgroups).setPreemption(preemption)
+				.setAffinity(affinity);
+	}
 
-			LOG.info(format("The reason is %s", cfe.getOutput()), cfe);
+	/**
+	 * Relays the events of an attempt but its status and its result, which are the ones of the step.
+	 */
+	private static final class AttemptEvents {
+		private final EventBus eventBus;
 
-			eventBus.post(newTaskStatus(step.id(), step.name(), FAILED));
-			eventBus.post(new TaskExecutionResult(step.getId(),
-					new CommandResult(randomUUID().toString(),
-							cfe.getPid() != null ? Long.valueOf(cfe.getPid().intValue()) : null, cfe.getExitCode(),
-							cfe.getOutput(), 0L)));
+		AttemptEvents(EventBus eventBus) {
+			this.eventBus = eventBus;
+		}
+
+		@Subscribe
+		public void relay(Object event) {
+			if (!(event instanceof TaskStatus) && !(event instanceof TaskExecutionResult)) {
+				eventBus.post(event);
+			}
+		}
+	}
+
+	/**
+	 * Publishes that the step is running. It is called by {@link #execute()} and by the launchers that run the step's
+	 * command themselves and then call {@link #complete(CommandResult, long)}.
+	 */
+	public StepExecutor started() {
+		eventBus.post(runningTaskStatus(step.id(), step.name()));
+
+		LOG.info("Executing the task [{},{}]", step.getId(), step.getName());
+
+		return this;
+	}
+
+	/**
+	 * Completes the step with the result of a command that was not run by this executor, such as a batch of steps.
+	 * @param commandResult the result of the step's command
+	 * @param elapsedTime the time in milliseconds the step took to run
+	 */
+	public StepExecutionResult complete(CommandResult commandResult, long elapsedTime) {
+		StepExecutionResult result = new StepExecutionResult(step).setElapsedTime(elapsedTime);
+
+		try {
+			complete(result, commandResult);
+		} catch (CommandFailedException cfe) {
+			failed(result, cfe);
 		}
 
 		return result;
 	}
 
-	
+	/**
+	 * Completes a step that was carried out by other steps, such as the points of a sweep.
+	 * @param successful whether the step succeeded
+	 * @param output a summary of the step's execution
+	 * @param elapsedTime the time in milliseconds the step took to run
+	 */
+	public StepExecutionResult complete(boolean successful, String output, long elapsedTime) {
+		StepExecutionResult result = new StepExecutionResult(step).setElapsedTime(elapsedTime);
+
+		if (successful) {
+			result.setResult(new TaskExecutionResult(step.getId(), step.getName(),
+					new CommandResult(step.getId(), null, 0, output, elapsedTime)));
+
+			LOG.info("Finished task [{},{}]: {}", step.getId(), step.getName(), output);
+
+			eventBus.post(newTaskStatus(step.id(), step.name(), FINISHED));
+			eventBus.post(result.getResult());
+		} else {
+			failed(result, new CommandFailedException(step.getAction().build(), 1, null, output));
+		}
+
+		return result;
+	}
+
+	private void complete(StepExecutionResult result, CommandResult commandResult) throws CommandFailedException {
+		result.setResult(new TaskExecutionResult(step.getId(), step.getName(), commandResult));
+		String code = getExitCode(result.getOutput());
+		Integer exitCode = isTimeout(result.getOutput()) ? 9 : code != null ? Integer.parseInt(code) : result.getExitCode();
+		if (isError(result.getOutput())||isTimeout(result.getOutput())) {
+			
+			throw new CommandFailedException(step.getAction().build(), exitCode, null,
+					result.getOutput());
+		}
+
+		LOG.info("Finished task [{},{}] with exitcode [{}]", step.getId(), step.getName(),
+				exitCode);
+
+		LOG.info("Task [{},{}]'s output is [{}]", step.getId(), step.getName(), result.getOutput());
+
+		eventBus.post(newTaskStatus(step.id(), step.name(), FINISHED));
+		eventBus.post(result.getResult());
+	}
+
+	private void timedOut() {
+		LOG.info("Task [{},{}] timeout", step.getId(), step.getName());
+		eventBus.post(newTaskStatus(step.id(), step.name(), FAILED));
+	}
+
+	private void failed(StepExecutionResult result, CommandFailedException cfe) {
+		LOG.info("Task [{},{}] failed with exitcode [{}]", step.getId(), step.getName(), cfe.getExitCode());
+		result.setException(cfe);
+
+		LOG.info(format("The reason is %s", cfe.getOutput()), cfe);
+
+		eventBus.post(newTaskStatus(step.id(), step.name(), FAILED));
+		eventBus.post(new TaskExecutionResult(step.getId(), step.getName(),
+				new CommandResult(randomUUID().toString(),
+						cfe.getPid() != null ? Long.valueOf(cfe.getPid().intValue()) : null, cfe.getExitCode(),
+						cfe.getOutput(), 0L)));
+	}
+
 	private boolean isTimeout(String output) {
 		final String timeoutRegex = "walltimelimit *(\\d+\\.?\\d*)";
 		final Pattern timeoutPattern = Pattern.compile(timeoutRegex);
@@ -0,0 +1,172 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.dohko.job.batch.scheduler.FairShareScheduler;
+import io.dohko.job.batch.scheduler.TaskRequest;
+import job.flow.Step;
+import job.flow.Sweep;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+
+/**
+ * Runs the points of a sweep step. A point is only materialized, which creates its task, when there is room for it in the
+ * sweep's window of running points ({@code org.excalibur.task.sweep.window}), so a sweep costs memory in proportion to
+ * its window rather than to its number of points. The points of the window wait for their turn in the
+ * {@link FairShareScheduler} like any other task of the sweep's user. After the first failed point no new point is
+ * started, and the sweep fails once the running ones finish.
+ */
+public class SweepExecutor
+{
+	private static final Logger LOG = LoggerFactory.getLogger(SweepExecutor.class);
+
+	private final Step step;
+	private final Sweep sweep;
+	private final ListeningExecutorService executor;
+	private final Function<Step, StepExecutor> executors;
+	private final TaskHistory history;
+	private final FairShareScheduler scheduler;
+	private final int window;
+	private final BlockingQueue<Future<StepExecutionResult>> completed = new LinkedBlockingQueue<>();
+	private TaskRequest pointRequest;
+
+	public SweepExecutor(Step step, ExecutorService executor, Function<Step, StepExecutor> executors, TaskHistory history,
+			FairShareScheduler scheduler)
+	{
+		this(step, executor, executors, history, scheduler, defaultWindow());
+	}
+
+	/**
+	 * @return the number of points of a sweep that can run at the same time
+	 */
+	public static int defaultWindow()
+	{
+		return getIntegerProperty("org.excalibur.task.sweep.window", Runtime.getRuntime().availableProcessors());
+	}
+
+	public SweepExecutor(Step step, ExecutorService executor, Function<Step, StepExecutor> executors, TaskHistory history,
+			FairShareScheduler scheduler, int window)
+	{
+		checkArgument(window > 0, "The window of a sweep must be greater than zero");
+
+		this.step = requireNonNull(step, "step is null");
+		this.sweep = step.sweep().orElseThrow(() -> new IllegalArgumentException(format("Step %s is not a sweep", step.name())));
+		this.executor = MoreExecutors.listeningDecorator(requireNonNull(executor, "executor is null"));
+		this.executors = requireNonNull(executors, "executors is null");
+		this.history = requireNonNull(history, "history is null");
+		this.scheduler = requireNonNull(scheduler, "scheduler is null");
+		this.pointRequest = TaskRequest.of(step.owner()).setMemory(history.estimatedPeakResident(step).orElse(0L));
+		this.window = window;
+	}
+
+	/**
+	 * Sets how the points are described to the scheduler. By default they belong to the sweep's user and need as much
+	 * memory as the points of the sweep's family that have already run.
+	 */
+	public SweepExecutor setPointRequest(TaskRequest pointRequest)
+	{
+		this.pointRequest = requireNonNull(pointRequest, "pointRequest is null");
+		return this;
+	}
+
+	public StepExecutionResult execute()
+	{
+		final StepExecutor sweepExecutor = executors.apply(step).started();
+		final long start = System.nanoTime();
+
+		int next = 0;
+		int running = 0;
+		int failed = 0;
+
+		try
+		{
+			for (; next < sweep.size() && running < window; next++, running++)
+			{
+				submit(next);
+			}
+
+			while (running > 0)
+			{
+				StepExecutionResult result = resultOf(completed.take());
+				running--;
+
+				if (result == null || !result.isSuccessfully())
+				{
+					failed++;
+				}
+				else if (failed == 0 && next < sweep.size())
+				{
+					submit(next++);
+					running++;
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			failed++;
+		}
+
+		long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+		return sweepExecutor.complete(failed == 0,
+				format("%d of %d points started, %d failed", next, sweep.size(), failed), elapsed);
+	}
+
+	private StepExecutionResult resultOf(Future<StepExecutionResult> point) throws InterruptedException
+	{
+		try
+		{
+			StepExecutionResult result = point.get();
+			history.record(result);
+
+			return result;
+		}
+		catch (ExecutionException e)
+		{
+			LOG.error(format("Error on executing a point of sweep [%s,%s]", step.getId(), step.getName()), e.getCause());
+			return null;
+		}
+	}
+
+	private void submit(int index)
+	{
+		Step point = step.point(index);
+		ListenableFuture<StepExecutionResult> result = scheduler.submit(pointRequest.forTask(point.id()),
+				() -> executor.submit(() -> executors.apply(point).execute()));
+
+		result.addListener(() -> completed.add(result), directExecutor());
+	}
+}
@@ -35,11 +35,18 @@ import io.airlift.command.ProcessMemoryState;
 public class TaskExecutionResult 
 {
 	private final String id;
+	private final String name;
 	private final CommandResult result;
 	
 	public TaskExecutionResult(String id, CommandResult result)
+	{
+		this(id, null, result);
+	}
+	
+	public TaskExecutionResult(String id, String name, CommandResult result)
 	{
 		this.id = Objects.requireNonNull(id, "task's id is null");
+		this.name = name;
 		this.result = Objects.requireNonNull(result, "task's result is null");
 	}
 	
@@ -51,6 +58,14 @@ public class TaskExecutionResult
 		return id;
 	}
 	
+	/**
+	 * @return the name of the task, if it is known
+	 */
+	public Optional<String> getName()
+	{
+		return Optional.fromNullable(name);
+	}
+	
 	/**
 	 * @return the result
 	 */
@@ -0,0 +1,238 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import job.flow.Step;
+
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+import static org.excalibur.core.util.SystemUtils2.getLongProperty;
+
+/**
+ * Keeps the runtime and the peak resident size of the steps that have been executed, so that the launcher can estimate
+ * how long a step will take and how much memory it will need.
+ * Steps are grouped by name and by family: the name without a trailing index, so that {@code sweep-1} and
+ * {@code sweep-2} share their history. The number of names kept is bounded by {@code org.excalibur.task.history.size},
+ * and the latest runtimes kept for each name, which give the spread of its runtime, by
+ * {@code org.excalibur.task.history.samples}.
+ */
+@ThreadSafe
+public class TaskHistory
+{
+	private static final Pattern TRAILING_INDEX = Pattern.compile("[-_.:]?\\d+$");
+
+	/**
+	 * Weight of the latest execution in the moving average of the runtime.
+	 */
+	private static final double ALPHA = 0.3;
+
+	private static final int SAMPLES = Math.max(1, getIntegerProperty("org.excalibur.task.history.samples", 50));
+
+	private final Cache<String, Entry> entries;
+
+	public TaskHistory()
+	{
+		this(getLongProperty("org.excalibur.task.history.size", 100_000L));
+	}
+
+	public TaskHistory(long maximumSize)
+	{
+		this.entries = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+	}
+
+	/**
+	 * Records the runtime of a step that succeeded. Failed and cancelled runs are ignored, as they say nothing of how long
+	 * the step takes.
+	 */
+	public void record(StepExecutionResult result)
+	{
+		if (result.isSuccessfully())
+		{
+			record(result.step(), result.getElapsedTime());
+		}
+	}
+
+	/**
+	 * Records the runtime of a step. Runtimes of zero or less, which a step that ran cannot have, are ignored.
+	 * @param elapsedTime the time in milliseconds the step took to run
+	 */
+	public void record(Step step, long elapsedTime)
+	{
+		if (step.sweep().isPresent() || elapsedTime <= 0)
+		{
+			// a sweep's runtime is the sum of its points' ones, which are recorded by themselves
+			return;
+		}
+
+		entry(step.name()).record(elapsedTime);
+
+		String family = familyOf(step.name());
+
+		if (!family.equals(step.name()))
+		{
+			entry(family).record(elapsedTime);
+		}
+	}
+
+	/**
+	 * @return the estimated runtime of the given step in milliseconds, if a step with the same name or family has already
+	 *         been executed
+	 */
+	public Optional<Long> estimatedRuntime(Step step)
+	{
+		return estimatedRuntime(step.name());
+	}
+
+	/**
+	 * @return the estimated runtime in milliseconds of the step with the given name
+	 * @see #estimatedRuntime(Step)
+	 */
+	public Optional<Long> estimatedRuntime(String name)
+	{
+		Entry entry = entries.getIfPresent(name);
+
+		if (entry == null || !entry.hasRuntime())
+		{
+			entry = entries.getIfPresent(familyOf(name));
+		}
+
+		return entry != null && entry.hasRuntime() ? Optional.of(entry.average()) : Optional.empty();
+	}
+
+	/**
+	 * @param percentile the percentile, between 0 and 100
+	 * @param minimum the least number of runtimes the percentile must be computed from
+	 * @return the given percentile of the latest runtimes in milliseconds of the steps with the same name or, failing that,
+	 *         the same family, if at least {@code minimum} of them were recorded
+	 */
+	public Optional<Long> runtimePercentile(Step step, double percentile, int minimum)
+	{
+		Entry entry = entries.getIfPresent(step.name());
+
+		if (entry == null || entry.samples() < minimum)
+		{
+			entry = entries.getIfPresent(familyOf(step.name()));
+		}
+
+		return entry != null && entry.samples() >= Math.max(1, minimum) ? Optional.of(entry.percentile(percentile))
+				: Optional.empty();
+	}
+
+	/**
+	 * Records the highest resident size reached by the processes of a step.
+	 * @param name the step's name
+	 * @param bytes the peak resident size in bytes
+	 */
+	public void recordPeakResident(String name, long bytes)
+	{
+		entry(name).recordPeakResident(bytes);
+
+		String family = familyOf(name);
+
+		if (!family.equals(name))
+		{
+			entry(family).recordPeakResident(bytes);
+		}
+	}
+
+	/**
+	 * @return the highest resident size in bytes reached by a step with the same name or, failing that, the same family
+	 */
+	public Optional<Long> estimatedPeakResident(Step step)
+	{
+		Entry entry = entries.getIfPresent(step.name());
+
+		if (entry == null || entry.peakResident() == 0)
+		{
+			entry = entries.getIfPresent(familyOf(step.name()));
+		}
+
+		return entry != null && entry.peakResident() > 0 ? Optional.of(entry.peakResident()) : Optional.empty();
+	}
+
+	static String familyOf(String name)
+	{
+		String family = TRAILING_INDEX.matcher(name).replaceFirst("");
+		return family.isEmpty() ? name : family;
+	}
+
+	private Entry entry(String key)
+	{
+		return entries.asMap().computeIfAbsent(key, k -> new Entry());
+	}
+
+	private static final class Entry
+	{
+		private long executions;
+		private double average;
+		private long peakResident;
+		private long[] runtimes = new long[0];
+
+		synchronized void record(long elapsedTime)
+		{
+			if (runtimes.length < SAMPLES && executions == runtimes.length)
+			{
+				runtimes = Arrays.copyOf(runtimes, Math.min(SAMPLES, Math.max(4, runtimes.length * 2)));
+			}
+
+			runtimes[(int) (executions % runtimes.length)] = elapsedTime;
+			average = executions++ == 0 ? elapsedTime : ALPHA * elapsedTime + (1 - ALPHA) * average;
+		}
+
+		synchronized int samples()
+		{
+			return (int) Math.min(executions, runtimes.length);
+		}
+
+		synchronized long percentile(double percentile)
+		{
+			long[] sorted = Arrays.copyOf(runtimes, samples());
+			Arrays.sort(sorted);
+
+			int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+			return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+		}
+
+		synchronized void recordPeakResident(long bytes)
+		{
+			peakResident = Math.max(peakResident, bytes);
+		}
+
+		synchronized long peakResident()
+		{
+			return peakResident;
+		}
+
+		synchronized boolean hasRuntime()
+		{
+			return executions > 0;
+		}
+
+		synchronized long average()
+		{
+			return Math.round(average);
+		}
+	}
+}
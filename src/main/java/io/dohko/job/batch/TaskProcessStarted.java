@@ -0,0 +1,63 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Published when the process of a task starts without going through a {@link io.airlift.command.Command}, which
+ * publishes its own process state.
+ */
+@Immutable
+public class TaskProcessStarted 
+{
+	private final String taskId;
+	private final long pid;
+
+	public TaskProcessStarted(String taskId, long pid) 
+	{
+		this.taskId = taskId;
+		this.pid = pid;
+	}
+
+	/**
+	 * @return the taskId
+	 */
+	public String getTaskId() 
+	{
+		return taskId;
+	}
+
+	/**
+	 * @return the pid
+	 */
+	public long getPid() 
+	{
+		return pid;
+	}
+
+	@Override
+	public String toString() 
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("task", taskId)
+				.add("pid", pid)
+				.toString();
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * How long a task was suspended to give its slot to tasks of a higher priority. This time is not part of the task's run
+ * time.
+ */
+@Immutable
+public final class TaskSuspensions
+{
+	private final String taskId;
+	private final int suspensions;
+	private final long suspendedTime;
+
+	public TaskSuspensions(String taskId, int suspensions, long suspendedTime)
+	{
+		this.taskId = taskId;
+		this.suspensions = suspensions;
+		this.suspendedTime = suspendedTime;
+	}
+
+	public String getTaskId()
+	{
+		return taskId;
+	}
+
+	/**
+	 * @return the number of times the task was suspended and resumed
+	 */
+	public int getSuspensions()
+	{
+		return suspensions;
+	}
+
+	/**
+	 * @return the total time in milliseconds the task was suspended
+	 */
+	public long getSuspendedTime()
+	{
+		return suspendedTime;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("task", taskId)
+				.add("suspensions", suspensions)
+				.add("suspended time", suspendedTime)
+				.toString();
+	}
+}
@@ -0,0 +1,277 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.affinity;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import static java.lang.System.getenv;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Pins each task to its own set of cores. It keeps a map of the host's cores by NUMA node, read from
+ * {@code /sys/devices/system/node}, and gives a task as many free cores as it {@link job.flow.ApplicationDirectives#cores()
+ * declares}, one by default. The task's command is run through {@code taskset -c}. With
+ * {@code org.excalibur.task.affinity.numa}, a task that fits in one node is confined to it, its memory included, through
+ * {@code numactl}; the node with the fewest free cores that fits is chosen, leaving the larger gaps for larger tasks.
+ * <p>
+ * It is enabled by the system property {@code org.excalibur.task.affinity.enabled}. A task runs unpinned when there are
+ * not enough free cores for it, such as when the scheduler runs more tasks than there are cores.
+ */
+@ThreadSafe
+public final class TaskAffinity
+{
+	private static final Logger LOG = LoggerFactory.getLogger(TaskAffinity.class);
+
+	private static final Path NODES = Paths.get("/sys/devices/system/node");
+
+	private static final TaskAffinity DISABLED = new TaskAffinity(Collections.emptyMap(), false);
+
+	/**
+	 * The free cores of each node.
+	 */
+	private final Map<Integer, List<Integer>> free = new TreeMap<>();
+	private final Map<Integer, Integer> nodeOfCpu = new HashMap<>();
+	private final Map<String, TaskPlacement> placements = new HashMap<>();
+	private final boolean numa;
+	private final boolean enabled;
+
+	TaskAffinity(Map<Integer, List<Integer>> nodes, boolean numa)
+	{
+		nodes.forEach((node, cpus) -> {
+			free.put(node, new ArrayList<>(cpus));
+			cpus.forEach(cpu -> nodeOfCpu.put(cpu, node));
+		});
+		this.numa = numa;
+		this.enabled = !nodes.isEmpty();
+	}
+
+	/**
+	 * Reads the host's cores if affinity was enabled and {@code taskset} is available.
+	 */
+	public static TaskAffinity create()
+	{
+		if (!Boolean.getBoolean("org.excalibur.task.affinity.enabled"))
+		{
+			return DISABLED;
+		}
+
+		if (!isExecutable("taskset"))
+		{
+			LOG.warn("taskset is not available. Tasks will run without CPU affinity");
+			return DISABLED;
+		}
+
+		boolean numa = Boolean.getBoolean("org.excalibur.task.affinity.numa");
+
+		if (numa && !isExecutable("numactl"))
+		{
+			LOG.warn("numactl is not available. Tasks will be pinned to cores without being confined to a NUMA node");
+			numa = false;
+		}
+
+		Map<Integer, List<Integer>> nodes = readNodes();
+		LOG.info("Pinning the tasks to the cores of the NUMA nodes {}", nodes);
+
+		return new TaskAffinity(nodes, numa);
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Reserves free cores for a task.
+	 * @param taskId the task's id
+	 * @param cores the number of cores the task needs
+	 * @return the task's placement, or empty if it must run unpinned
+	 */
+	public synchronized Optional<TaskPlacement> assign(String taskId, int cores)
+	{
+		if (!enabled || placements.containsKey(taskId))
+		{
+			return Optional.ofNullable(placements.get(taskId));
+		}
+
+		Integer fittest = null;
+
+		for (Map.Entry<Integer, List<Integer>> node : free.entrySet())
+		{
+			if (node.getValue().size() >= cores && (fittest == null || node.getValue().size() < free.get(fittest).size()))
+			{
+				fittest = node.getKey();
+			}
+		}
+
+		List<Integer> cpus = new ArrayList<>(cores);
+
+		if (fittest != null)
+		{
+			take(free.get(fittest), cores, cpus);
+		}
+		else if (free.values().stream().mapToInt(List::size).sum() >= cores)
+		{
+			// the task spans several nodes
+			free.values().forEach(node -> take(node, cores - cpus.size(), cpus));
+		}
+		else
+		{
+			return Optional.empty();
+		}
+
+		Collections.sort(cpus);
+		TaskPlacement placement = new TaskPlacement(taskId, cpus, numa && fittest != null ? fittest : -1);
+		placements.put(taskId, placement);
+
+		return Optional.of(placement);
+	}
+
+	/**
+	 * @return the command that runs a command with the given placement
+	 */
+	public ImmutableList<String> launcher(TaskPlacement placement)
+	{
+		return placement.isConfined()
+				? ImmutableList.of("numactl", "--physcpubind=" + placement.getCpuList(), "--membind=" + placement.getNode())
+				: ImmutableList.of("taskset", "-c", placement.getCpuList());
+	}
+
+	/**
+	 * Frees the cores of a task.
+	 */
+	public synchronized void release(String taskId)
+	{
+		TaskPlacement placement = placements.remove(taskId);
+
+		if (placement != null)
+		{
+			for (int cpu : placement.getCpus())
+			{
+				free.get(nodeOfCpu.get(cpu)).add(cpu);
+			}
+
+			free.values().forEach(Collections::sort);
+		}
+	}
+
+	private static void take(List<Integer> from, int count, List<Integer> to)
+	{
+		while (count-- > 0 && !from.isEmpty())
+		{
+			to.add(from.remove(0));
+		}
+	}
+
+	/**
+	 * @return the cores of each NUMA node, or all the cores in node 0 if the host does not expose its nodes
+	 */
+	static Map<Integer, List<Integer>> readNodes()
+	{
+		Map<Integer, List<Integer>> nodes = new TreeMap<>();
+
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(NODES, "node[0-9]*"))
+		{
+			for (Path entry : entries)
+			{
+				List<Integer> cpus = parseCpuList(new String(Files.readAllBytes(entry.resolve("cpulist")), US_ASCII));
+
+				if (!cpus.isEmpty())
+				{
+					nodes.put(Integer.valueOf(entry.getFileName().toString().substring(4)), cpus);
+				}
+			}
+		}
+		catch (IOException | RuntimeException exception)
+		{
+			nodes.clear();
+		}
+
+		if (nodes.isEmpty())
+		{
+			List<Integer> cpus = new ArrayList<>();
+
+			for (int cpu = 0; cpu < Runtime.getRuntime().availableProcessors(); cpu++)
+			{
+				cpus.add(cpu);
+			}
+
+			nodes.put(0, cpus);
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * Parses a CPU list such as {@code 0-3,8-11}.
+	 */
+	static List<Integer> parseCpuList(String list)
+	{
+		List<Integer> cpus = new ArrayList<>();
+
+		for (String range : Splitter.on(',').trimResults().omitEmptyStrings().split(list))
+		{
+			int dash = range.indexOf('-');
+			int first = Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+			int last = dash < 0 ? first : Integer.parseInt(range.substring(dash + 1));
+
+			for (int cpu = first; cpu <= last; cpu++)
+			{
+				cpus.add(cpu);
+			}
+		}
+
+		return cpus;
+	}
+
+	private static boolean isExecutable(String command)
+	{
+		String path = getenv("PATH");
+
+		if (path != null)
+		{
+			for (String directory : path.split(File.pathSeparator))
+			{
+				if (Files.isExecutable(Paths.get(directory, command)))
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+}
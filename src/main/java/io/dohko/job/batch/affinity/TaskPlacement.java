@@ -0,0 +1,103 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.affinity;
+
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The cores a task was pinned to and, if it was confined to one, its NUMA node.
+ */
+@Immutable
+public final class TaskPlacement
+{
+	private final String taskId;
+	private final ImmutableList<Integer> cpus;
+	private final int node;
+
+	public TaskPlacement(String taskId, List<Integer> cpus, int node)
+	{
+		this.taskId = taskId;
+		this.cpus = ImmutableList.copyOf(cpus);
+		this.node = node;
+	}
+
+	public String getTaskId()
+	{
+		return taskId;
+	}
+
+	public ImmutableList<Integer> getCpus()
+	{
+		return cpus;
+	}
+
+	/**
+	 * @return the NUMA node the task's CPUs and memory were confined to, or {@code -1} if it was not confined
+	 */
+	public int getNode()
+	{
+		return node;
+	}
+
+	public boolean isConfined()
+	{
+		return node >= 0;
+	}
+
+	/**
+	 * @return the CPUs in the list format of {@code taskset} and {@code numactl}, such as {@code 0-3,8}
+	 */
+	public String getCpuList()
+	{
+		StringBuilder list = new StringBuilder();
+
+		for (int i = 0; i < cpus.size(); i++)
+		{
+			int first = cpus.get(i);
+
+			while (i + 1 < cpus.size() && cpus.get(i + 1) == cpus.get(i) + 1)
+			{
+				i++;
+			}
+
+			list.append(list.length() > 0 ? "," : "").append(first);
+
+			if (cpus.get(i) != first)
+			{
+				list.append('-').append(cpus.get(i));
+			}
+		}
+
+		return list.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("task", taskId)
+				.add("cpus", getCpuList())
+				.add("node", isConfined() ? node : null)
+				.omitNullValues()
+				.toString();
+	}
+}
@@ -0,0 +1,307 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.cgroup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.lang.String.format;
+import static java.lang.System.getProperty;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Runs each task in its own cgroup v2 group, below a group created for the tasks of this service. The group of a task
+ * limits its CPU ({@code cpu.max}) and memory ({@code memory.max}) and accounts all the processes the task starts.
+ * <p>
+ * It is enabled by the system property {@code org.excalibur.task.cgroup.enabled}. The groups are created below the group
+ * defined by {@code org.excalibur.task.cgroup.parent} (relative to the cgroup2 mount point) or, if it is undefined, below
+ * the group of this JVM. The parent must have been delegated to the user running the service and must be allowed to
+ * enable the cpu and memory controllers for its children; otherwise the tasks run without cgroups and their process trees
+ * are sampled instead.
+ * <p>
+ * A non-root group can only enable controllers for its children when it has no processes of its own. When the parent is
+ * the group of this JVM, its processes are first moved into the leaf child {@code service}. An explicit parent must not
+ * contain any process.
+ */
+public final class TaskCgroups
+{
+	private static final Logger LOG = LoggerFactory.getLogger(TaskCgroups.class);
+
+	private static final long CPU_PERIOD_USEC = 100_000;
+	private static final String TASKS_GROUP = "dohko-tasks";
+	private static final String SERVICE_GROUP = "service";
+
+	private static final TaskCgroups DISABLED = new TaskCgroups(null);
+
+	private final Path tasks;
+
+	private TaskCgroups(Path tasks)
+	{
+		this.tasks = tasks;
+	}
+
+	/**
+	 * Sets up the group of the tasks if cgroups were enabled and delegated to this service.
+	 */
+	public static TaskCgroups create()
+	{
+		if (!Boolean.getBoolean("org.excalibur.task.cgroup.enabled"))
+		{
+			return DISABLED;
+		}
+
+		Optional<Path> tasks = setUp(Paths.get(getProperty("org.excalibur.cgroup.mount", "/sys/fs/cgroup")));
+
+		if (tasks.isPresent())
+		{
+			LOG.info("Running the tasks in cgroups below [{}]", tasks.get());
+			return new TaskCgroups(tasks.get());
+		}
+
+		return DISABLED;
+	}
+
+	public boolean isEnabled()
+	{
+		return tasks != null;
+	}
+
+	/**
+	 * @return the group of the given task, if it exists
+	 */
+	public Optional<Path> groupOf(String taskId)
+	{
+		if (!isEnabled() || taskId == null)
+		{
+			return Optional.empty();
+		}
+
+		Path group = tasks.resolve(taskId);
+		return Files.isDirectory(group) ? Optional.of(group) : Optional.empty();
+	}
+
+	/**
+	 * Returns the shell statement that moves the shell running a task into the task's group. It fails silently when the
+	 * group does not exist, in which case the task runs in the service's group.
+	 */
+	public String joinCommand(String taskId)
+	{
+		return isEnabled() ? format("{ echo $BASHPID > %s/cgroup.procs; } 2>/dev/null; ", tasks.resolve(taskId)) : "";
+	}
+
+	/**
+	 * Creates the group of a task. Undeclared limits fall back to {@code org.excalibur.task.cgroup.default.cpus} and
+	 * {@code org.excalibur.task.cgroup.default.memory}; if they are also undefined the resource is not limited.
+	 * @param cpus the number of CPUs the task may use. It might be fractional
+	 * @param memory the maximum memory of the task in bytes
+	 * @return <code>true</code> if the group was created
+	 */
+	public boolean create(String taskId, Optional<Double> cpus, Optional<Long> memory)
+	{
+		if (!isEnabled())
+		{
+			return false;
+		}
+
+		Path group = tasks.resolve(taskId);
+
+		try
+		{
+			Files.createDirectories(group);
+
+			Optional<Double> cpuLimit = cpus.isPresent() ? cpus : property("org.excalibur.task.cgroup.default.cpus").map(Double::valueOf);
+			Optional<Long> memoryLimit = memory.isPresent() ? memory : property("org.excalibur.task.cgroup.default.memory").map(Long::valueOf);
+
+			write(group.resolve("cpu.max"), cpuMax(cpuLimit));
+			write(group.resolve("memory.max"), memoryLimit.map(String::valueOf).orElse("max"));
+
+			return true;
+		}
+		catch (IOException exception)
+		{
+			LOG.warn("Could not create the cgroup of task [{}]: {}", taskId, exception.getMessage());
+			remove(taskId);
+			return false;
+		}
+	}
+
+	/**
+	 * Kills the processes that are still in the task's group and removes it.
+	 */
+	public void remove(String taskId)
+	{
+		Optional<Path> group = groupOf(taskId);
+
+		if (!group.isPresent())
+		{
+			return;
+		}
+
+		try
+		{
+			write(group.get().resolve("cgroup.kill"), "1");
+		}
+		catch (IOException exception)
+		{
+			// cgroup.kill is only available since Linux 5.14
+		}
+
+		for (int attempt = 0; attempt < 10; attempt++)
+		{
+			try
+			{
+				Files.deleteIfExists(group.get());
+				return;
+			}
+			catch (IOException exception)
+			{
+				// the group is busy while its killed processes exit
+				try
+				{
+					Thread.sleep(10);
+				}
+				catch (InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+
+		LOG.warn("Could not remove the cgroup of task [{}]", taskId);
+	}
+
+	private static Optional<Path> setUp(Path mount)
+	{
+		if (!Files.isReadable(mount.resolve("cgroup.controllers")))
+		{
+			LOG.warn("cgroup v2 is not mounted on [{}]. Tasks will run without cgroups", mount);
+			return Optional.empty();
+		}
+
+		try
+		{
+			String parentName = getProperty("org.excalibur.task.cgroup.parent");
+			Path parent = mount.resolve(trimLeadingSlash(parentName != null ? parentName : ownGroup()));
+			String controllers = new String(Files.readAllBytes(parent.resolve("cgroup.controllers")), US_ASCII);
+
+			if (!controllers.matches("(?s).*\\bcpu\\b.*") || !controllers.matches("(?s).*\\bmemory\\b.*"))
+			{
+				LOG.warn("The cpu and memory controllers are not available in [{}]. Tasks will run without cgroups", parent);
+				return Optional.empty();
+			}
+
+			if (parentName == null && !parent.equals(mount))
+			{
+				moveProcesses(parent, parent.resolve(SERVICE_GROUP));
+			}
+
+			Path tasks = parent.resolve(TASKS_GROUP);
+			Files.createDirectories(tasks);
+
+			write(parent.resolve("cgroup.subtree_control"), "+cpu +memory");
+			write(tasks.resolve("cgroup.subtree_control"), "+cpu +memory");
+
+			return Optional.of(tasks);
+		}
+		catch (IOException | RuntimeException exception)
+		{
+			LOG.warn("cgroup delegation is not available ({}). Tasks will run without cgroups", exception.getMessage());
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Moves the processes of a group into the given leaf child so that the group can enable controllers for its children.
+	 */
+	private static void moveProcesses(Path group, Path leaf) throws IOException
+	{
+		Files.createDirectories(leaf);
+
+		for (String pid : Files.readAllLines(group.resolve("cgroup.procs"), US_ASCII))
+		{
+			if (pid.isEmpty())
+			{
+				continue;
+			}
+
+			try
+			{
+				write(leaf.resolve("cgroup.procs"), pid);
+			}
+			catch (IOException exception)
+			{
+				// the process exited in the meantime
+				if (Files.exists(Paths.get("/proc", pid)))
+				{
+					throw exception;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the cgroup v2 path of this JVM as listed in {@code /proc/self/cgroup}
+	 */
+	private static String ownGroup() throws IOException
+	{
+		List<String> lines = Files.readAllLines(Paths.get("/proc/self/cgroup"), US_ASCII);
+
+		for (String line : lines)
+		{
+			if (line.startsWith("0::"))
+			{
+				return line.substring(3);
+			}
+		}
+
+		throw new IOException("this process does not belong to a cgroup v2 group");
+	}
+
+	private static String cpuMax(Optional<Double> cpus)
+	{
+		if (!cpus.isPresent())
+		{
+			return format("max %d", CPU_PERIOD_USEC);
+		}
+
+		return format("%d %d", Math.max(1000L, (long) (cpus.get() * CPU_PERIOD_USEC)), CPU_PERIOD_USEC);
+	}
+
+	private static Optional<String> property(String name)
+	{
+		return Optional.ofNullable(getProperty(name));
+	}
+
+	private static String trimLeadingSlash(String path)
+	{
+		return path.startsWith("/") ? path.substring(1) : path;
+	}
+
+	private static void write(Path file, String value) throws IOException
+	{
+		Files.write(file, value.getBytes(US_ASCII), WRITE);
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.monitor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Reads the memory of the host from {@code /proc/meminfo}.
+ */
+@ThreadSafe
+public class HostMemory
+{
+	private static final Path MEMINFO = Paths.get("/proc/meminfo");
+	private static final byte[][] KEYS = ProcReader.keys("MemTotal:", "MemAvailable:");
+	private static final int TOTAL = 0;
+	private static final int AVAILABLE = 1;
+
+	private final ProcReader reader = new ProcReader(4096);
+	private final long[] fields = new long[KEYS.length];
+
+	/**
+	 * @return <code>true</code> if this host exposes its memory through {@code /proc/meminfo}
+	 */
+	public static boolean isSupported()
+	{
+		return Files.isReadable(MEMINFO);
+	}
+
+	/**
+	 * @return the memory in bytes that can be given to new processes without swapping, as estimated by the kernel, or
+	 *         {@code -1} if it could not be read
+	 */
+	public synchronized long available()
+	{
+		return reader.readKeyedValues(MEMINFO, KEYS, fields) ? fields[AVAILABLE] * 1024 : -1;
+	}
+
+	/**
+	 * @return the memory of the host in bytes, or {@code -1} if it could not be read
+	 */
+	public synchronized long total()
+	{
+		return reader.readKeyedValues(MEMINFO, KEYS, fields) ? fields[TOTAL] * 1024 : -1;
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.monitor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Reads how loaded the host is: the share of time some task stalled waiting for CPU, memory or IO, from the pressure
+ * stall information of {@code /proc/pressure} (Linux 4.20 and later), and the one-minute load average per CPU. The stall
+ * shares are measured between two calls to {@link #read()}, so the first call only sets the baseline.
+ */
+@NotThreadSafe
+public class HostPressure
+{
+	private static final Path CPU = Paths.get("/proc/pressure/cpu");
+	private static final Path MEMORY = Paths.get("/proc/pressure/memory");
+	private static final Path IO = Paths.get("/proc/pressure/io");
+	private static final Path LOADAVG = Paths.get("/proc/loadavg");
+
+	private final ProcReader reader = new ProcReader(512);
+	private final int processors = Runtime.getRuntime().availableProcessors();
+
+	private final long[] totals = { -1, -1, -1 };
+	private final double[] stalls = new double[3];
+	private long lastRead;
+	private double load;
+
+	/**
+	 * @return <code>true</code> if this host exposes pressure stall information
+	 */
+	public static boolean isSupported()
+	{
+		return Files.isReadable(CPU);
+	}
+
+	/**
+	 * Updates the stall shares since the previous call and the load average.
+	 */
+	public HostPressure read()
+	{
+		long now = System.nanoTime();
+		long elapsed = (now - lastRead) / 1000;
+
+		update(0, CPU, elapsed);
+		update(1, MEMORY, elapsed);
+		update(2, IO, elapsed);
+
+		long hundredths = reader.readHundredths(LOADAVG);
+		load = hundredths < 0 ? 0 : hundredths / 100.0 / processors;
+		lastRead = now;
+
+		return this;
+	}
+
+	private void update(int resource, Path path, long elapsedMicros)
+	{
+		long total = reader.readPressureTotal(path);
+
+		stalls[resource] = total >= 0 && totals[resource] >= 0 && elapsedMicros > 0
+				? Math.min(1, (total - totals[resource]) / (double) elapsedMicros)
+				: 0;
+		totals[resource] = total;
+	}
+
+	/**
+	 * @return the share of time, between 0 and 1, some task waited for a CPU
+	 */
+	public double getCpu()
+	{
+		return stalls[0];
+	}
+
+	/**
+	 * @return the share of time, between 0 and 1, some task waited for memory
+	 */
+	public double getMemory()
+	{
+		return stalls[1];
+	}
+
+	/**
+	 * @return the share of time, between 0 and 1, some task waited for IO
+	 */
+	public double getIo()
+	{
+		return stalls[2];
+	}
+
+	/**
+	 * @return the one-minute load average divided by the number of CPUs
+	 */
+	public double getLoad()
+	{
+		return load;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("cpu", stalls[0])
+				.add("memory", stalls[1])
+				.add("io", stalls[2])
+				.add("load", load)
+				.toString();
+	}
+}
@@ -0,0 +1,347 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.monitor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads the {@code stat}, {@code statm} and {@code io} files of a process into caller-supplied arrays. The same buffer is
+ * reused for every read and the numbers are parsed directly from its bytes, so a read does not allocate besides the file
+ * channel itself.
+ */
+@NotThreadSafe
+final class ProcReader
+{
+	/**
+	 * Number of fields of {@code /proc/[pid]/stat} that are kept, indexed as in proc(5) (1-based).
+	 */
+	static final int STAT_FIELDS = 25;
+	static final int STAT_PPID = 4;
+	static final int STAT_PGRP = 5;
+	static final int STAT_UTIME = 14;
+	static final int STAT_STIME = 15;
+	static final int STAT_CUTIME = 16;
+	static final int STAT_CSTIME = 17;
+	static final int STAT_VSIZE = 23;
+	static final int STAT_RSS = 24;
+
+	static final int STATM_SIZE = 0;
+	static final int STATM_RESIDENT = 1;
+	static final int STATM_SHARED = 2;
+
+	static final int IO_READ_BYTES = 0;
+	static final int IO_WRITE_BYTES = 1;
+
+	private static final byte[][] IO_KEYS = keys("read_bytes:", "write_bytes:");
+	private static final byte[] PRESSURE_TOTAL = "total=".getBytes(US_ASCII);
+
+	private final ByteBuffer buffer;
+	private final byte[] bytes;
+
+	ProcReader()
+	{
+		this(8192);
+	}
+
+	ProcReader(int capacity)
+	{
+		this.buffer = ByteBuffer.allocate(capacity);
+		this.bytes = buffer.array();
+	}
+
+	/**
+	 * Parses {@code /proc/[pid]/stat}. Fields 3 to {@link #STAT_FIELDS} - 1 are stored at their proc(5) position; the
+	 * state (field 3) is stored as its character code.
+	 * @return <code>false</code> if the process no longer exists
+	 */
+	boolean readStat(Path path, long[] fields)
+	{
+		int length = read(path);
+
+		if (length <= 0)
+		{
+			return false;
+		}
+
+		// the command name may contain spaces and parentheses, so the fields start after the last ')'
+		int i = length - 1;
+
+		while (i >= 0 && bytes[i] != ')')
+		{
+			i--;
+		}
+
+		if (i < 0)
+		{
+			return false;
+		}
+
+		i += 2;
+
+		if (i < length)
+		{
+			fields[3] = bytes[i];
+			i += 2;
+		}
+
+		for (int field = 4; field < STAT_FIELDS && i < length; field++)
+		{
+			long value = 0;
+			boolean negative = bytes[i] == '-';
+
+			if (negative)
+			{
+				i++;
+			}
+
+			while (i < length && bytes[i] >= '0' && bytes[i] <= '9')
+			{
+				value = value * 10 + (bytes[i++] - '0');
+			}
+
+			fields[field] = negative ? -value : value;
+			i++;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Parses the first three fields (size, resident, shared) of {@code /proc/[pid]/statm}, in pages.
+	 * @return <code>false</code> if the process no longer exists
+	 */
+	boolean readStatm(Path path, long[] fields)
+	{
+		int length = read(path);
+		int i = 0;
+
+		for (int field = 0; field < 3; field++)
+		{
+			if (i >= length)
+			{
+				return false;
+			}
+
+			long value = 0;
+
+			while (i < length && bytes[i] >= '0' && bytes[i] <= '9')
+			{
+				value = value * 10 + (bytes[i++] - '0');
+			}
+
+			fields[field] = value;
+			i++;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Parses the {@code read_bytes} and {@code write_bytes} counters of {@code /proc/[pid]/io}. The file is only readable by
+	 * the owner of the process; in that case both counters are left as zero.
+	 * @return <code>false</code> if the file could not be read
+	 */
+	boolean readIo(Path path, long[] fields)
+	{
+		return readKeyedValues(path, IO_KEYS, fields);
+	}
+
+	/**
+	 * Parses a file made of {@code key value} lines, such as {@code /proc/[pid]/io} or cgroup's {@code cpu.stat}. The value
+	 * of {@code keys[i]} is stored in {@code fields[i]}; missing keys are left as zero.
+	 * @return <code>false</code> if the file could not be read
+	 */
+	boolean readKeyedValues(Path path, byte[][] keys, long[] fields)
+	{
+		for (int k = 0; k < keys.length; k++)
+		{
+			fields[k] = 0;
+		}
+
+		int length = read(path);
+
+		if (length <= 0)
+		{
+			return false;
+		}
+
+		int start = 0;
+
+		while (start < length)
+		{
+			for (int k = 0; k < keys.length; k++)
+			{
+				if (startsWith(start, length, keys[k]))
+				{
+					fields[k] = parseLong(start + keys[k].length, length);
+					break;
+				}
+			}
+
+			while (start < length && bytes[start] != '\n')
+			{
+				start++;
+			}
+
+			start++;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Parses a file holding a single number, such as cgroup's {@code memory.current}.
+	 * @return the number or {@code -1} if the file could not be read
+	 */
+	long readLong(Path path)
+	{
+		int length = read(path);
+		return length <= 0 ? -1 : parseLong(0, length);
+	}
+
+	/**
+	 * Parses the {@code total} stall time, in microseconds, of the {@code some} line of a pressure file such as
+	 * {@code /proc/pressure/cpu}.
+	 * @return the stall time or {@code -1} if the file could not be read
+	 */
+	long readPressureTotal(Path path)
+	{
+		int length = read(path);
+
+		for (int i = 0; i + PRESSURE_TOTAL.length <= length && bytes[i] != '\n'; i++)
+		{
+			if (startsWith(i, length, PRESSURE_TOTAL))
+			{
+				return parseLong(i + PRESSURE_TOTAL.length, length);
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Parses the first number of a file, such as the one-minute load of {@code /proc/loadavg}, in hundredths.
+	 * @return the number times one hundred or {@code -1} if the file could not be read
+	 */
+	long readHundredths(Path path)
+	{
+		int length = read(path);
+
+		if (length <= 0)
+		{
+			return -1;
+		}
+
+		int i = 0;
+		long value = 0;
+
+		while (i < length && bytes[i] >= '0' && bytes[i] <= '9')
+		{
+			value = value * 10 + (bytes[i++] - '0');
+		}
+
+		value *= 100;
+
+		if (i < length && bytes[i] == '.')
+		{
+			i++;
+
+			for (long unit = 10; unit > 0 && i < length && bytes[i] >= '0' && bytes[i] <= '9'; unit /= 10)
+			{
+				value += (bytes[i++] - '0') * unit;
+			}
+		}
+
+		return value;
+	}
+
+	static byte[][] keys(String... keys)
+	{
+		byte[][] result = new byte[keys.length][];
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			result[i] = keys[i].getBytes(US_ASCII);
+		}
+
+		return result;
+	}
+
+	private boolean startsWith(int offset, int length, byte[] prefix)
+	{
+		if (offset + prefix.length > length)
+		{
+			return false;
+		}
+
+		for (int i = 0; i < prefix.length; i++)
+		{
+			if (bytes[offset + i] != prefix[i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private long parseLong(int offset, int length)
+	{
+		int i = offset;
+
+		while (i < length && (bytes[i] == ' ' || bytes[i] == '\t'))
+		{
+			i++;
+		}
+
+		long value = 0;
+
+		while (i < length && bytes[i] >= '0' && bytes[i] <= '9')
+		{
+			value = value * 10 + (bytes[i++] - '0');
+		}
+
+		return value;
+	}
+
+	private int read(Path path)
+	{
+		buffer.clear();
+
+		try (FileChannel channel = FileChannel.open(path, READ))
+		{
+			while (buffer.hasRemaining() && channel.read(buffer) > 0)
+			{
+				// files under /proc report a size of zero and are read until the end
+			}
+		}
+		catch (IOException | SecurityException exception)
+		{
+			return -1;
+		}
+
+		return buffer.position();
+	}
+}
@@ -0,0 +1,393 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.monitor;
+
+import java.io.Closeable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.AsyncEventBus;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.excalibur.core.util.SystemUtils2.getLongProperty;
+
+import static io.dohko.job.batch.monitor.ProcReader.*;
+
+/**
+ * Samples the {@code /proc} entries of all running tasks from a single thread at a fixed interval, and publishes the
+ * readings of each tick as one {@link ProcessSampleBatch}. No thread or monitor is created per process: a tick scans
+ * {@code /proc} once and then sums, for each task, the stats of its whole process tree, since commands run under
+ * {@code bash -c} and the recorded pid is the one of the shell.
+ */
+public class ProcSampler implements Closeable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ProcSampler.class);
+
+	private static final Path PROC = Paths.get("/proc");
+	private static final byte[][] CPU_STAT_KEYS = keys("user_usec ", "system_usec ");
+	private static final int CPU_USER_USEC = 0;
+	private static final int CPU_SYSTEM_USEC = 1;
+
+	private static final boolean SUPPORTED = Files.isReadable(PROC.resolve("self").resolve("stat"));
+
+	private final Map<String, TrackedProcess> tracked = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService sampler;
+	private final EventBus subscribers;
+	private final long intervalMillis;
+	private final long clockTicks;
+	private final long pageSize;
+
+	// the following are only touched by the sampler's thread
+	private final ProcReader reader = new ProcReader();
+	private final ProcessTable processes = new ProcessTable(PROC, reader);
+	private final TreeAccumulator tree = new TreeAccumulator();
+	private final long[] cpu = new long[2];
+
+	public ProcSampler()
+	{
+		this(getLongProperty("org.excalibur.proc.sampler.interval.ms", 1000L));
+	}
+
+	public ProcSampler(long intervalMillis)
+	{
+		this.intervalMillis = intervalMillis;
+		this.clockTicks = getLongProperty("org.excalibur.proc.clock.ticks", 100L);
+		this.pageSize = getLongProperty("org.excalibur.proc.page.size", 4096L);
+
+		this.sampler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("proc-sampler").setDaemon(true).build());
+		this.subscribers = new AsyncEventBus("proc-sampler", Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setNameFormat("proc-sampler-publisher").setDaemon(true).build()));
+	}
+
+	/**
+	 * Returns <code>true</code> if this host exposes process information through {@code /proc}.
+	 */
+	public static boolean isSupported()
+	{
+		return SUPPORTED;
+	}
+
+	public ProcSampler start()
+	{
+		if (isSupported())
+		{
+			sampler.scheduleWithFixedDelay(this::sample, intervalMillis, intervalMillis, MILLISECONDS);
+			LOG.info("Sampling the processes of the tasks every [{}] ms", intervalMillis);
+		}
+		else
+		{
+			LOG.warn("/proc is not available. Process sampling is disabled");
+		}
+
+		return this;
+	}
+
+	public <T> ProcSampler registerListener(T listener)
+	{
+		if (listener != null)
+		{
+			subscribers.register(listener);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Starts sampling the process tree of the given task. A task is tracked until {@link #untrack(String)} is called or its
+	 * process exits.
+	 */
+	public void track(String taskId, long pid)
+	{
+		track(taskId, pid, null);
+	}
+
+	/**
+	 * Starts sampling the given task. When {@code cgroup} is not <code>null</code> the task is accounted through the
+	 * cgroup's {@code cpu.stat}, {@code memory.current} and {@code memory.peak} files instead of its process tree.
+	 * @param cgroup the directory of the task's cgroup v2 group. It might be <code>null</code>
+	 */
+	public void track(String taskId, long pid, Path cgroup)
+	{
+		requireNonNull(taskId, "task's id is null");
+		tracked.put(taskId, new TrackedProcess(taskId, pid, cgroup));
+	}
+
+	/**
+	 * Starts sampling the given task unless it is already tracked.
+	 * @return <code>true</code> if the task was not tracked
+	 * @see #track(String, long, Path)
+	 */
+	public boolean trackIfAbsent(String taskId, long pid, Path cgroup)
+	{
+		requireNonNull(taskId, "task's id is null");
+		return tracked.putIfAbsent(taskId, new TrackedProcess(taskId, pid, cgroup)) == null;
+	}
+
+	/**
+	 * Stops sampling the given task.
+	 * @return the last sample of the task
+	 */
+	public Optional<ProcessSample> untrack(String taskId)
+	{
+		TrackedProcess process = taskId != null ? tracked.remove(taskId) : null;
+		return process != null ? Optional.ofNullable(process.last) : Optional.empty();
+	}
+
+	public Optional<ProcessSample> lastSample(String taskId)
+	{
+		TrackedProcess process = taskId != null ? tracked.get(taskId) : null;
+		return process != null ? Optional.ofNullable(process.last) : Optional.empty();
+	}
+
+	public boolean isTracking(String taskId)
+	{
+		return taskId != null && tracked.containsKey(taskId);
+	}
+
+	void sample()
+	{
+		if (tracked.isEmpty())
+		{
+			return;
+		}
+
+		final long now = System.currentTimeMillis();
+		final List<ProcessSample> samples = new ArrayList<>(tracked.size());
+		boolean scanned = false;
+
+		try
+		{
+			for (TrackedProcess process : tracked.values())
+			{
+				ProcessSample sample;
+
+				if (process.cgroup != null)
+				{
+					sample = sampleCgroup(process, now);
+				}
+				else
+				{
+					if (!scanned)
+					{
+						processes.scan();
+						scanned = true;
+					}
+
+					sample = sampleProcessTree(process, now);
+				}
+
+				if (sample != null)
+				{
+					process.last = sample;
+					samples.add(sample);
+				}
+				else
+				{
+					tracked.remove(process.taskId, process);
+				}
+			}
+
+			if (scanned)
+			{
+				tree.prune();
+			}
+
+			if (!samples.isEmpty())
+			{
+				subscribers.post(new ProcessSampleBatch(now, samples));
+			}
+		}
+		catch (RuntimeException exception)
+		{
+			// an exception would cancel the periodic sampling
+			LOG.error("Error on sampling the running processes", exception);
+		}
+	}
+
+	/**
+	 * Sums the stats of the task's process and all of its descendants. The CPU time of each process includes the time of
+	 * its children that have already exited, so the CPU time of the tree keeps growing as its processes come and go.
+	 */
+	private ProcessSample sampleProcessTree(TrackedProcess process, long now)
+	{
+		tree.reset();
+
+		int count = processes.walk((int) process.pid, tree);
+
+		if (count == 0)
+		{
+			return null;
+		}
+
+		long resident = tree.rssPages * pageSize;
+		process.peakResident = Math.max(process.peakResident, resident);
+
+		return new ProcessSample(process.taskId, process.pid, now,
+				ticksToMillis(tree.userTicks),
+				ticksToMillis(tree.systemTicks),
+				tree.vsize,
+				resident,
+				tree.sharedPages * pageSize,
+				tree.readBytes,
+				tree.writeBytes,
+				process.peakResident,
+				count);
+	}
+
+	/**
+	 * Reads the accounting of the task's cgroup, which includes every process the task has ever started.
+	 */
+	private ProcessSample sampleCgroup(TrackedProcess process, long now)
+	{
+		long current = reader.readLong(process.cgroup.resolve("memory.current"));
+
+		if (current < 0 || !reader.readKeyedValues(process.cgroup.resolve("cpu.stat"), CPU_STAT_KEYS, cpu))
+		{
+			return null;
+		}
+
+		long peak = reader.readLong(process.cgroup.resolve("memory.peak"));
+		process.peakResident = Math.max(process.peakResident, Math.max(peak, current));
+
+		return new ProcessSample(process.taskId, process.pid, now,
+				cpu[CPU_USER_USEC] / 1000,
+				cpu[CPU_SYSTEM_USEC] / 1000,
+				current,
+				current,
+				0,
+				0,
+				0,
+				process.peakResident,
+				1);
+	}
+
+	private long ticksToMillis(long ticks)
+	{
+		return ticks * 1000 / clockTicks;
+	}
+
+	@Override
+	public void close()
+	{
+		sampler.shutdownNow();
+		tracked.clear();
+	}
+
+	private static final class TrackedProcess
+	{
+		final String taskId;
+		final long pid;
+		final Path cgroup;
+
+		volatile long peakResident;
+		volatile ProcessSample last;
+
+		TrackedProcess(String taskId, long pid, Path cgroup)
+		{
+			this.taskId = taskId;
+			this.pid = pid;
+			this.cgroup = cgroup;
+		}
+	}
+
+	/**
+	 * Sums the stats of the processes of a tree. It reads {@code statm} and {@code io} only for the processes that belong
+	 * to a task. The paths of these files are resolved once per process and kept while the process is visited.
+	 */
+	private final class TreeAccumulator implements ProcessTable.ProcessVisitor
+	{
+		private final long[] statm = new long[3];
+		private final long[] io = new long[2];
+		private final Map<Integer, ProcessFiles> files = new HashMap<>();
+		private long tick;
+
+		long userTicks;
+		long systemTicks;
+		long vsize;
+		long rssPages;
+		long sharedPages;
+		long readBytes;
+		long writeBytes;
+
+		void reset()
+		{
+			userTicks = systemTicks = vsize = rssPages = sharedPages = readBytes = writeBytes = 0;
+		}
+
+		@Override
+		public void visit(int pid, long user, long system, long virtual, long resident)
+		{
+			userTicks += user;
+			systemTicks += system;
+			vsize += virtual;
+			rssPages += resident;
+
+			ProcessFiles process = files.computeIfAbsent(pid, ProcessFiles::new);
+			process.tick = tick;
+
+			if (reader.readStatm(process.statm, statm))
+			{
+				sharedPages += statm[STATM_SHARED];
+			}
+
+			if (reader.readIo(process.io, io))
+			{
+				readBytes += io[IO_READ_BYTES];
+				writeBytes += io[IO_WRITE_BYTES];
+			}
+		}
+
+		/**
+		 * Forgets the files of the processes that were not visited since the last call.
+		 */
+		void prune()
+		{
+			files.values().removeIf(process -> process.tick != tick);
+			tick++;
+		}
+	}
+
+	private static final class ProcessFiles
+	{
+		final Path statm;
+		final Path io;
+		long tick;
+
+		ProcessFiles(int pid)
+		{
+			Path dir = PROC.resolve(Integer.toString(pid));
+			this.statm = dir.resolve("statm");
+			this.io = dir.resolve("io");
+		}
+	}
+}
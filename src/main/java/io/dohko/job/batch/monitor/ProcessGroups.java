@@ -0,0 +1,100 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.monitor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.dohko.job.batch.monitor.ProcReader.STAT_FIELDS;
+import static io.dohko.job.batch.monitor.ProcReader.STAT_PGRP;
+import static java.lang.String.format;
+
+/**
+ * Stops, continues and kills the process groups of the tasks. A group is signalled only if the given process leads it, so that a
+ * task started in the group of this JVM, or of a shell worker, is never stopped together with them.
+ */
+@ThreadSafe
+public class ProcessGroups
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ProcessGroups.class);
+
+	private static final Path PROC = Paths.get("/proc");
+
+	private final ProcReader reader = new ProcReader(1024);
+	private final long[] stat = new long[STAT_FIELDS];
+
+	/**
+	 * @return <code>true</code> if the given process is running and leads its own process group
+	 */
+	public synchronized boolean isGroupLeader(long pid)
+	{
+		return reader.readStat(PROC.resolve(String.valueOf(pid)).resolve("stat"), stat) && stat[STAT_PGRP] == pid;
+	}
+
+	/**
+	 * Sends {@code SIGSTOP} to the group led by the given process.
+	 * @return <code>true</code> if the group was stopped
+	 */
+	public boolean stop(long pid)
+	{
+		return isGroupLeader(pid) && signal("STOP", pid);
+	}
+
+	/**
+	 * Sends {@code SIGCONT} to the group led by the given process.
+	 * @return <code>true</code> if the group was continued
+	 */
+	public boolean resume(long pid)
+	{
+		return isGroupLeader(pid) && signal("CONT", pid);
+	}
+
+	/**
+	 * Sends {@code SIGKILL} to the group led by the given process.
+	 * @return <code>true</code> if the group was killed
+	 */
+	public boolean kill(long pid)
+	{
+		return isGroupLeader(pid) && signal("KILL", pid);
+	}
+
+	private static boolean signal(String signal, long group)
+	{
+		try
+		{
+			Process kill = new ProcessBuilder("kill", "-" + signal, "--", "-" + group).redirectErrorStream(true).start();
+			return kill.waitFor(5, TimeUnit.SECONDS) && kill.exitValue() == 0;
+		}
+		catch (IOException exception)
+		{
+			LOG.warn(format("Could not send SIG%s to process group [%d]", signal, group), exception);
+			return false;
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.monitor;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+import io.airlift.command.ProcessCpuState;
+import io.airlift.command.ProcessMemoryState;
+
+import static java.lang.Math.pow;
+
+/**
+ * A point-in-time reading of a task's processes. The values are the sum over the task's process tree (or its cgroup).
+ * CPU times are in milliseconds and sizes in bytes.
+ */
+@Immutable
+public class ProcessSample
+{
+	private final String taskId;
+	private final long pid;
+	private final long timestamp;
+	private final long userTime;
+	private final long systemTime;
+	private final long size;
+	private final long resident;
+	private final long share;
+	private final long readBytes;
+	private final long writeBytes;
+	private final long peakResident;
+	private final int processes;
+
+	public ProcessSample(String taskId, long pid, long timestamp, long userTime, long systemTime, long size, long resident,
+			long share, long readBytes, long writeBytes)
+	{
+		this(taskId, pid, timestamp, userTime, systemTime, size, resident, share, readBytes, writeBytes, resident, 1);
+	}
+
+	public ProcessSample(String taskId, long pid, long timestamp, long userTime, long systemTime, long size, long resident,
+			long share, long readBytes, long writeBytes, long peakResident, int processes)
+	{
+		this.taskId = taskId;
+		this.pid = pid;
+		this.timestamp = timestamp;
+		this.userTime = userTime;
+		this.systemTime = systemTime;
+		this.size = size;
+		this.resident = resident;
+		this.share = share;
+		this.readBytes = readBytes;
+		this.writeBytes = writeBytes;
+		this.peakResident = Math.max(peakResident, resident);
+		this.processes = processes;
+	}
+
+	/**
+	 * @return the taskId
+	 */
+	public String getTaskId()
+	{
+		return taskId;
+	}
+
+	/**
+	 * @return the pid
+	 */
+	public long getPid()
+	{
+		return pid;
+	}
+
+	/**
+	 * @return the timestamp
+	 */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	/**
+	 * @return the userTime
+	 */
+	public long getUserTime()
+	{
+		return userTime;
+	}
+
+	/**
+	 * @return the systemTime
+	 */
+	public long getSystemTime()
+	{
+		return systemTime;
+	}
+
+	public long getTotalTime()
+	{
+		return userTime + systemTime;
+	}
+
+	/**
+	 * @return the size
+	 */
+	public long getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the resident
+	 */
+	public long getResident()
+	{
+		return resident;
+	}
+
+	/**
+	 * @return the share
+	 */
+	public long getShare()
+	{
+		return share;
+	}
+
+	/**
+	 * @return the readBytes
+	 */
+	public long getReadBytes()
+	{
+		return readBytes;
+	}
+
+	/**
+	 * @return the writeBytes
+	 */
+	public long getWriteBytes()
+	{
+		return writeBytes;
+	}
+
+	/**
+	 * @return the highest resident size observed for the task up to this sample
+	 */
+	public long getPeakResident()
+	{
+		return peakResident;
+	}
+
+	/**
+	 * @return the number of processes accounted in this sample
+	 */
+	public int getProcesses()
+	{
+		return processes;
+	}
+
+	public ProcessCpuState toCpuState()
+	{
+		return new ProcessCpuState()
+				.setId(taskId)
+				.setPid(pid)
+				.setUser(userTime)
+				.setSys(systemTime)
+				.setTotal(getTotalTime());
+	}
+
+	/**
+	 * Returns the memory state in MB, as it was stored by the per-command monitoring.
+	 * @return the memory state of this sample in MB
+	 */
+	public ProcessMemoryState toMemoryState()
+	{
+		return new ProcessMemoryState()
+				.setId(taskId)
+				.setPid(pid)
+				.setSize(size / pow(1000, 2))
+				.setResident(resident / pow(1000, 2))
+				.setShare(share / pow(1000, 2));
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("task", taskId)
+				.add("pid", pid)
+				.add("user", userTime)
+				.add("sys", systemTime)
+				.add("processes", processes)
+				.add("rss", resident)
+				.add("peak rss", peakResident)
+				.add("read", readBytes)
+				.add("write", writeBytes)
+				.toString();
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.monitor;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The samples taken by one tick of the {@link ProcSampler}.
+ */
+@Immutable
+public class ProcessSampleBatch
+{
+	private final long timestamp;
+	private final ImmutableList<ProcessSample> samples;
+
+	public ProcessSampleBatch(long timestamp, Iterable<ProcessSample> samples)
+	{
+		this.timestamp = timestamp;
+		this.samples = ImmutableList.copyOf(samples);
+	}
+
+	/**
+	 * @return the timestamp
+	 */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	/**
+	 * @return the samples
+	 */
+	public ImmutableList<ProcessSample> samples()
+	{
+		return samples;
+	}
+
+	public boolean isEmpty()
+	{
+		return samples.isEmpty();
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("timestamp", timestamp)
+				.add("nr. samples", samples.size())
+				.toString();
+	}
+}
@@ -0,0 +1,242 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.monitor;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static io.dohko.job.batch.monitor.ProcReader.*;
+
+/**
+ * A snapshot of the processes of the host, taken from {@code /proc/[pid]/stat}, that can be walked from any process to
+ * its descendants. The snapshot is kept in primitive arrays that are reused between scans; the parent/child relation is
+ * resolved by sorting {@code (ppid, index)} pairs so that the children of a process are a contiguous range.
+ */
+@NotThreadSafe
+final class ProcessTable
+{
+	private final Path proc;
+	private final ProcReader reader;
+	private final long[] stat = new long[STAT_FIELDS];
+
+	private int size;
+	private int[] pids = new int[1024];
+	private long[] userTicks = new long[1024];
+	private long[] systemTicks = new long[1024];
+	private long[] vsize = new long[1024];
+	private long[] rssPages = new long[1024];
+
+	/**
+	 * {@code (pid << 32) | index}, sorted.
+	 */
+	private long[] byPid = new long[1024];
+
+	/**
+	 * {@code (ppid << 32) | index}, sorted.
+	 */
+	private long[] byParent = new long[1024];
+
+	private int[] stack = new int[256];
+
+	/**
+	 * The {@code stat} file of each process seen in the last scan, and of the ones seen so far in the current scan.
+	 */
+	private Map<Integer, Path> statPaths = new HashMap<>();
+	private Map<Integer, Path> seenPaths = new HashMap<>();
+
+	ProcessTable(Path proc, ProcReader reader)
+	{
+		this.proc = proc;
+		this.reader = reader;
+	}
+
+	/**
+	 * Reads the {@code stat} file of every process of the host. The path of a process' {@code stat} file is resolved once,
+	 * when the process is first seen, and kept for as long as the process is running.
+	 */
+	void scan()
+	{
+		size = 0;
+
+		String[] entries = proc.toFile().list();
+
+		if (entries != null)
+		{
+			for (String entry : entries)
+			{
+				int pid = parsePid(entry);
+
+				if (pid <= 0)
+				{
+					continue;
+				}
+
+				Path path = statPaths.remove(pid);
+				path = path != null ? path : proc.resolve(entry).resolve("stat");
+				seenPaths.put(pid, path);
+
+				if (reader.readStat(path, stat))
+				{
+					add(pid, (int) stat[STAT_PPID], stat[STAT_UTIME] + stat[STAT_CUTIME], stat[STAT_STIME] + stat[STAT_CSTIME],
+							stat[STAT_VSIZE], stat[STAT_RSS]);
+				}
+			}
+		}
+
+		// the paths left are the ones of the processes that have exited
+		Map<Integer, Path> exited = statPaths;
+		exited.clear();
+		statPaths = seenPaths;
+		seenPaths = exited;
+
+		for (int i = 0; i < size; i++)
+		{
+			byPid[i] = ((long) pids[i] << 32) | i;
+		}
+
+		Arrays.sort(byPid, 0, size);
+		Arrays.sort(byParent, 0, size);
+	}
+
+	/**
+	 * Walks the process tree rooted at {@code pid}, calling {@code visitor} for the root and each of its descendants.
+	 * @return the number of processes visited; zero if {@code pid} is not running
+	 */
+	int walk(int pid, ProcessVisitor visitor)
+	{
+		int root = indexOf(pid);
+
+		if (root < 0)
+		{
+			return 0;
+		}
+
+		int visited = 0;
+		int top = 0;
+		stack[top++] = root;
+
+		while (top > 0)
+		{
+			int index = stack[--top];
+			visitor.visit(pids[index], userTicks[index], systemTicks[index], vsize[index], rssPages[index]);
+			visited++;
+
+			for (int c = firstChild(pids[index]); c >= 0 && c < size && (int) (byParent[c] >>> 32) == pids[index]; c++)
+			{
+				if (top == stack.length)
+				{
+					stack = Arrays.copyOf(stack, top * 2);
+				}
+
+				stack[top++] = (int) byParent[c];
+			}
+		}
+
+		return visited;
+	}
+
+	private int indexOf(int pid)
+	{
+		int position = lowerBound(byPid, (long) pid << 32);
+		return position < size && (int) (byPid[position] >>> 32) == pid ? (int) byPid[position] : -1;
+	}
+
+	private int firstChild(int pid)
+	{
+		return lowerBound(byParent, (long) pid << 32);
+	}
+
+	private int lowerBound(long[] keys, long key)
+	{
+		int low = 0;
+		int high = size;
+
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+
+			if (keys[mid] < key)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	private void add(int pid, int ppid, long user, long system, long virtual, long resident)
+	{
+		if (size == pids.length)
+		{
+			int capacity = size * 2;
+			pids = Arrays.copyOf(pids, capacity);
+			userTicks = Arrays.copyOf(userTicks, capacity);
+			systemTicks = Arrays.copyOf(systemTicks, capacity);
+			vsize = Arrays.copyOf(vsize, capacity);
+			rssPages = Arrays.copyOf(rssPages, capacity);
+			byPid = Arrays.copyOf(byPid, capacity);
+			byParent = Arrays.copyOf(byParent, capacity);
+		}
+
+		pids[size] = pid;
+		userTicks[size] = user;
+		systemTicks[size] = system;
+		vsize[size] = virtual;
+		rssPages[size] = resident;
+		byParent[size] = ((long) ppid << 32) | size;
+		size++;
+	}
+
+	private static int parsePid(String name)
+	{
+		int pid = 0;
+
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+
+			if (c < '0' || c > '9')
+			{
+				return -1;
+			}
+
+			pid = pid * 10 + (c - '0');
+		}
+
+		return pid;
+	}
+
+	interface ProcessVisitor
+	{
+		/**
+		 * @param pid the process id
+		 * @param userTicks the user time of the process and of its waited-for children, in clock ticks
+		 * @param systemTicks the system time of the process and of its waited-for children, in clock ticks
+		 * @param vsize the virtual memory size in bytes
+		 * @param rssPages the resident set size in pages
+		 */
+		void visit(int pid, long userTicks, long systemTicks, long vsize, long rssPages);
+	}
+}
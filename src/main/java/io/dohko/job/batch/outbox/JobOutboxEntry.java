@@ -0,0 +1,89 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.outbox;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A committed job that has not been handed to the launcher yet.
+ */
+@Immutable
+public class JobOutboxEntry
+{
+	private final long id;
+	private final String jobId;
+	private final long createdIn;
+	private final int attempts;
+
+	public JobOutboxEntry(long id, String jobId, long createdIn)
+	{
+		this(id, jobId, createdIn, 0);
+	}
+
+	public JobOutboxEntry(long id, String jobId, long createdIn, int attempts)
+	{
+		this.id = id;
+		this.jobId = jobId;
+		this.createdIn = createdIn;
+		this.attempts = attempts;
+	}
+
+	/**
+	 * @return the id
+	 */
+	public long getId()
+	{
+		return id;
+	}
+
+	/**
+	 * @return the jobId
+	 */
+	public String getJobId()
+	{
+		return jobId;
+	}
+
+	/**
+	 * @return the time the job was committed, in milliseconds since the epoch
+	 */
+	public long getCreatedIn()
+	{
+		return createdIn;
+	}
+
+	/**
+	 * @return the number of times launching the job has failed
+	 */
+	public int getAttempts()
+	{
+		return attempts;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("id", id)
+				.add("job", jobId)
+				.add("created", createdIn)
+				.add("attempts", attempts)
+				.toString();
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.outbox;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.excalibur.core.execution.domain.repository.JobOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+import static org.excalibur.core.util.SystemUtils2.getLongProperty;
+
+/**
+ * Hands committed jobs to the launcher. Submissions only write their job and an outbox entry; this dispatcher reads the
+ * pending entries in batches of {@code org.excalibur.job.outbox.batch.size}, every
+ * {@code org.excalibur.job.outbox.poll.interval.ms} or as soon as {@link #wakeUp()} is called, and marks them as
+ * dispatched once their jobs are launched. A job is launched at least once: if the process stops between launching a job
+ * and marking its entry, the job is launched again on restart. An entry whose job fails to launch stays pending and is
+ * tried again after a backoff that starts at {@code org.excalibur.job.outbox.retry.backoff.ms} and doubles on every
+ * attempt, up to {@code org.excalibur.job.outbox.retry.max.backoff.ms}. After {@code org.excalibur.job.outbox.max.attempts}
+ * failures the job is handed to the failure handler and its entry is marked as dispatched.
+ */
+@ThreadSafe
+public class OutboxDispatcher implements Closeable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+	private final JobOutboxRepository repository;
+	private final Consumer<String> launcher;
+	private final BiConsumer<String, Throwable> failure;
+	private final int batchSize;
+	private final long interval;
+	private final int maxAttempts;
+	private final long backoff;
+	private final long maxBackoff;
+	private final ScheduledExecutorService scheduler;
+	private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+	/**
+	 * @param repository the outbox
+	 * @param launcher launches the job with the given id
+	 * @param failure called with the id of a job that could not be launched after all the attempts, and the last error
+	 */
+	public OutboxDispatcher(JobOutboxRepository repository, Consumer<String> launcher, BiConsumer<String, Throwable> failure)
+	{
+		this.repository = requireNonNull(repository, "repository is null");
+		this.launcher = requireNonNull(launcher, "launcher is null");
+		this.failure = requireNonNull(failure, "failure is null");
+		this.batchSize = getIntegerProperty("org.excalibur.job.outbox.batch.size", 100);
+		this.interval = getLongProperty("org.excalibur.job.outbox.poll.interval.ms", 1000L);
+		this.maxAttempts = Math.max(1, getIntegerProperty("org.excalibur.job.outbox.max.attempts", 5));
+		this.backoff = getLongProperty("org.excalibur.job.outbox.retry.backoff.ms", 1000L);
+		this.maxBackoff = getLongProperty("org.excalibur.job.outbox.retry.max.backoff.ms", 60_000L);
+		this.scheduler = newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("job-outbox-dispatcher").setDaemon(true).build());
+	}
+
+	public OutboxDispatcher start()
+	{
+		scheduler.scheduleWithFixedDelay(this::drain, 0, interval, MILLISECONDS);
+		return this;
+	}
+
+	/**
+	 * Dispatches the pending entries without waiting for the next poll. Wake-ups that arrive while one is pending are
+	 * coalesced.
+	 */
+	public void wakeUp()
+	{
+		if (wakeUpPending.compareAndSet(false, true))
+		{
+			scheduler.execute(() ->
+			{
+				wakeUpPending.set(false);
+				drain();
+			});
+		}
+	}
+
+	/**
+	 * Runs on the dispatcher's thread only, so two drains never overlap.
+	 */
+	private void drain()
+	{
+		try
+		{
+			List<JobOutboxEntry> entries;
+
+			do
+			{
+				entries = repository.findPending(batchSize, System.currentTimeMillis());
+				List<Long> dispatched = new ArrayList<>(entries.size());
+
+				for (JobOutboxEntry entry : entries)
+				{
+					try
+					{
+						launcher.accept(entry.getJobId());
+						dispatched.add(entry.getId());
+					}
+					catch (RuntimeException e)
+					{
+						if (failed(entry, e))
+						{
+							dispatched.add(entry.getId());
+						}
+					}
+				}
+
+				if (!dispatched.isEmpty())
+				{
+					repository.markDispatched(dispatched, System.currentTimeMillis());
+				}
+			}
+			while (entries.size() == batchSize);
+		}
+		catch (RuntimeException e)
+		{
+			// keeps the periodic drain alive; the entries are read again on the next one
+			LOG.error("Error on dispatching the job outbox", e);
+		}
+	}
+
+	/**
+	 * Schedules the next attempt at a job that failed to launch or, after the last attempt, hands it to the failure handler.
+	 * @return <code>true</code> if the job will not be tried again
+	 */
+	private boolean failed(JobOutboxEntry entry, RuntimeException error)
+	{
+		int attempts = entry.getAttempts() + 1;
+
+		if (attempts < maxAttempts)
+		{
+			long delay = Math.min(maxBackoff, backoff << Math.min(attempts - 1, 30));
+			LOG.warn(format("Error on launching job %s (attempt %d of %d). Retrying in %d ms", entry.getJobId(), attempts,
+					maxAttempts, delay), error);
+			repository.retryLater(entry.getId(), System.currentTimeMillis() + delay);
+
+			return false;
+		}
+
+		LOG.error(format("Error on launching job %s after %d attempts. Giving up", entry.getJobId(), attempts), error);
+
+		try
+		{
+			failure.accept(entry.getJobId(), error);
+		}
+		catch (RuntimeException e)
+		{
+			LOG.error(format("Error on failing job %s", entry.getJobId()), e);
+		}
+
+		return true;
+	}
+
+	@Override
+	public void close()
+	{
+		scheduler.shutdownNow();
+	}
+}
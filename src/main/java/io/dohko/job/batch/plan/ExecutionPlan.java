@@ -0,0 +1,228 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+import com.google.common.collect.ImmutableList;
+
+import io.dohko.job.batch.tree.CompactGraph;
+import io.dohko.job.batch.tree.Tree;
+import io.dohko.job.batch.tree.TreeNode;
+
+/**
+ * The compiled dependencies of a job's applications or blocks. Items are identified by their position in the compiled
+ * list.
+ *
+ * @see ExecutionPlanCompiler
+ */
+public final class ExecutionPlan<T>
+{
+	private final ImmutableList<T> items;
+	private final CompactGraph graph;
+	private final int[] level;
+	private final int[] order;
+	private final ImmutableList<String> errors;
+
+	ExecutionPlan(List<T> items, CompactGraph graph, int[] level, int[] order, List<String> errors)
+	{
+		this.items = ImmutableList.copyOf(items);
+		this.graph = graph;
+		this.level = level;
+		this.order = order;
+		this.errors = ImmutableList.copyOf(errors);
+	}
+
+	public int size()
+	{
+		return items.size();
+	}
+
+	public T get(int index)
+	{
+		return items.get(index);
+	}
+
+	public boolean isValid()
+	{
+		return errors.isEmpty();
+	}
+
+	/**
+	 * @return the errors found while compiling the plan
+	 */
+	public ImmutableList<String> errors()
+	{
+		return errors;
+	}
+
+	/**
+	 * @throws InvalidExecutionPlanException if the plan has errors
+	 */
+	public ExecutionPlan<T> checkValid()
+	{
+		if (!isValid())
+		{
+			throw new InvalidExecutionPlanException(errors);
+		}
+
+		return this;
+	}
+
+	/**
+	 * @return the topological level of the item: zero for items without parents, otherwise one more than the level of its
+	 *         deepest parent
+	 */
+	public int level(int index)
+	{
+		return level[index];
+	}
+
+	/**
+	 * @return the first declared parent of the item, or {@code -1} if it has none
+	 */
+	public int primaryParent(int index)
+	{
+		return graph.isRoot(index) ? -1 : graph.parent(index, 0);
+	}
+
+	/**
+	 * @return the index of the items without parents, in the order they were declared
+	 */
+	public int[] roots()
+	{
+		int count = 0;
+
+		for (int i = 0; i < items.size(); i++)
+		{
+			if (graph.isRoot(i))
+			{
+				count++;
+			}
+		}
+
+		final int[] roots = new int[count];
+
+		for (int i = 0, r = 0; r < count; i++)
+		{
+			if (graph.isRoot(i))
+			{
+				roots[r++] = i;
+			}
+		}
+
+		return roots;
+	}
+
+	/**
+	 * Calls the action with the items attached to the given one in the execution trees, that is, the items whose first
+	 * declared parent it is, in the order they were declared. The launcher starts them once the item succeeds.
+	 */
+	public void forEachTreeChild(int index, IntConsumer action)
+	{
+		int previous = -1;
+
+		for (int i = 0, count = graph.childCount(index); i < count; i++)
+		{
+			int child = graph.child(index, i);
+
+			// the compiler adds the edges child by child, so a parent named twice yields adjacent edges
+			if (child != previous && graph.parent(child, 0) == index)
+			{
+				action.accept(child);
+			}
+
+			previous = child;
+		}
+	}
+
+	/**
+	 * @return a plan with the same dependencies whose items are the ones returned for each index, such as the steps that run
+	 *         the compiled applications
+	 */
+	public <N> ExecutionPlan<N> map(IntFunction<N> item)
+	{
+		final List<N> mapped = new ArrayList<>(items.size());
+
+		for (int i = 0; i < items.size(); i++)
+		{
+			mapped.add(item.apply(i));
+		}
+
+		return new ExecutionPlan<>(mapped, graph, level, order, errors);
+	}
+
+	/**
+	 * @return the items, indexed by their position
+	 */
+	public ImmutableList<T> items()
+	{
+		return items;
+	}
+
+	/**
+	 * @return the dependencies of the items, indexed by their position
+	 */
+	public CompactGraph graph()
+	{
+		return graph;
+	}
+
+	/**
+	 * @return the index of the items in topological order
+	 */
+	public int[] topologicalOrder()
+	{
+		return order.clone();
+	}
+
+	/**
+	 * Builds the execution trees of the plan, such as the ones of a job's blocks. Each item is attached to its first
+	 * declared parent, as in {@link #forEachTreeChild(int, IntConsumer)}; items without parents are the roots.
+	 * @param nodeData returns the data of the tree node of the item at the given index
+	 * @return the trees, in the order their roots were declared
+	 */
+	public <N> List<Tree<N>> toTrees(IntFunction<N> nodeData)
+	{
+		checkValid();
+
+		final List<TreeNode<N>> nodes = new ArrayList<>(items.size());
+		final List<Tree<N>> trees = new ArrayList<>();
+
+		for (int i = 0; i < items.size(); i++)
+		{
+			nodes.add(new TreeNode<>(nodeData.apply(i)));
+		}
+
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			if (graph.isRoot(i))
+			{
+				trees.add(new Tree<>(nodes.get(i)));
+			}
+			else
+			{
+				nodes.get(graph.parent(i, 0)).addChild(nodes.get(i));
+			}
+		}
+
+		return trees;
+	}
+}
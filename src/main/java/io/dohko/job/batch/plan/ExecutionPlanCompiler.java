@@ -0,0 +1,157 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.plan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import io.dohko.job.batch.tree.CompactGraph;
+import io.dohko.job.batch.tree.StronglyConnectedComponents;
+
+import static java.lang.String.format;
+
+/**
+ * Compiles the applications (or blocks) of a job into an {@link ExecutionPlan}. The items are indexed by name in one pass,
+ * and then all parent references are resolved, cycles are detected and topological levels are computed with Kahn's
+ * algorithm, in O(n + e) for n items and e parent references. Names are case insensitive, as the parent references have
+ * always been.
+ */
+public final class ExecutionPlanCompiler
+{
+	private ExecutionPlanCompiler()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @param items the items to compile
+	 * @param nameOf returns the name of an item
+	 * @param parentsOf returns the names of the parents of an item
+	 * @return the plan of the items. It might have errors
+	 */
+	public static <T> ExecutionPlan<T> compile(List<T> items, Function<T, String> nameOf,
+			Function<T, ? extends Iterable<String>> parentsOf)
+	{
+		final int n = items.size();
+		final List<String> errors = new ArrayList<>();
+		final Map<String, Integer> index = new HashMap<>(Math.max(16, n * 4 / 3 + 1));
+
+		for (int i = 0; i < n; i++)
+		{
+			// the first item with a name wins, as it did when the parents were looked up by scanning the trees
+			index.putIfAbsent(key(nameOf.apply(items.get(i))), i);
+		}
+
+		final CompactGraph.Builder edges = CompactGraph.builder(n);
+
+		for (int i = 0; i < n; i++)
+		{
+			T item = items.get(i);
+			Iterable<String> names = parentsOf.apply(item);
+
+			if (names != null)
+			{
+				for (String name : names)
+				{
+					Integer parent = index.get(key(name));
+
+					if (parent == null)
+					{
+						errors.add(format("Unknown parent %s of %s", name, nameOf.apply(item)));
+					}
+					else
+					{
+						edges.addEdge(parent, i);
+					}
+				}
+			}
+		}
+
+		final CompactGraph graph = edges.build();
+		final int[] level = new int[n];
+		final int[] order = topologicalOrder(graph, level);
+
+		if (order.length < n)
+		{
+			// Kahn leaves out the dependents of a cycle as well, so report only the cycles themselves
+			for (int[] cycle : StronglyConnectedComponents.cycles(graph))
+			{
+				List<String> names = new ArrayList<>(cycle.length);
+
+				for (int i : cycle)
+				{
+					names.add(nameOf.apply(items.get(i)));
+				}
+
+				errors.add(format("Cyclic dependency among %s", names));
+			}
+		}
+
+		return new ExecutionPlan<>(items, graph, level, order, errors);
+	}
+
+	/**
+	 * Kahn's algorithm over the graph. The nodes that are part of (or depend on) a cycle are left out of the returned
+	 * order.
+	 */
+	private static int[] topologicalOrder(CompactGraph graph, int[] level)
+	{
+		final int n = graph.size();
+		final int[] pending = new int[n];
+		final int[] order = new int[n];
+		final CompactGraph.Cursor children = new CompactGraph.Cursor();
+		int head = 0;
+		int tail = 0;
+
+		for (int i = 0; i < n; i++)
+		{
+			pending[i] = graph.parentCount(i);
+
+			if (pending[i] == 0)
+			{
+				order[tail++] = i;
+			}
+		}
+
+		while (head < tail)
+		{
+			int node = order[head++];
+
+			for (graph.children(node, children); children.hasNext();)
+			{
+				int child = children.next();
+				level[child] = Math.max(level[child], level[node] + 1);
+
+				if (--pending[child] == 0)
+				{
+					order[tail++] = child;
+				}
+			}
+		}
+
+		return tail == n ? order : Arrays.copyOf(order, tail);
+	}
+
+	private static String key(String name)
+	{
+		return name == null ? "" : name.toLowerCase();
+	}
+}
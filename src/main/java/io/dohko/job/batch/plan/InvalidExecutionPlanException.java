@@ -0,0 +1,47 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.plan;
+
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Thrown when the applications or blocks of a job do not form a valid execution plan, for instance because of an unknown
+ * parent or a dependency cycle. It carries all the errors that were found.
+ */
+public class InvalidExecutionPlanException extends IllegalArgumentException
+{
+	private static final long serialVersionUID = 5398120316581163522L;
+
+	private final ImmutableList<String> errors;
+
+	public InvalidExecutionPlanException(List<String> errors)
+	{
+		super(Joiner.on("; ").join(errors));
+		this.errors = ImmutableList.copyOf(errors);
+	}
+
+	/**
+	 * @return the errors
+	 */
+	public ImmutableList<String> getErrors()
+	{
+		return errors;
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.dohko.job.batch.monitor.HostPressure;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+import static org.excalibur.core.util.SystemUtils2.getLongProperty;
+
+/**
+ * Adjusts the number of tasks the {@link FairShareScheduler} runs at the same time to the health of the host, with an
+ * additive-increase, multiplicative-decrease rule. Every {@code org.excalibur.scheduler.adaptive.interval.ms}:
+ * <ul>
+ * <li>if the CPU, memory or IO stall share goes over {@code org.excalibur.scheduler.pressure.{cpu,memory,io}.max.percent}
+ * or the load average per CPU over {@code org.excalibur.scheduler.load.max.percent}, the limit is multiplied by
+ * {@code org.excalibur.scheduler.adaptive.decrease.percent};</li>
+ * <li>otherwise, if all the slots are taken, tasks are waiting and the number of tasks finished in the interval has not
+ * dropped, the limit grows by one.</li>
+ * </ul>
+ * The limit stays between {@code org.excalibur.scheduler.max.running.min} and {@code org.excalibur.scheduler.max.running.max}.
+ * It is enabled by the system property {@code org.excalibur.scheduler.adaptive.enabled}. Without pressure stall
+ * information, only the load average is considered.
+ */
+@ThreadSafe
+public class AdaptiveConcurrencyLimit implements Closeable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(AdaptiveConcurrencyLimit.class);
+
+	private final FairShareScheduler scheduler;
+	private final HostPressure pressure;
+	private final long interval;
+	private final int minimum;
+	private final int maximum;
+	private final double maxCpu;
+	private final double maxMemory;
+	private final double maxIo;
+	private final double maxLoad;
+	private final double decrease;
+	private final ScheduledExecutorService executor;
+
+	private long lastCompleted;
+	private long lastThroughput;
+
+	public AdaptiveConcurrencyLimit(FairShareScheduler scheduler)
+	{
+		this(scheduler, new HostPressure());
+	}
+
+	public AdaptiveConcurrencyLimit(FairShareScheduler scheduler, HostPressure pressure)
+	{
+		this.scheduler = requireNonNull(scheduler, "scheduler is null");
+		this.pressure = requireNonNull(pressure, "pressure is null");
+		this.interval = getLongProperty("org.excalibur.scheduler.adaptive.interval.ms", 5000L);
+		this.minimum = max(1, getIntegerProperty("org.excalibur.scheduler.max.running.min", 1));
+		this.maximum = max(minimum, getIntegerProperty("org.excalibur.scheduler.max.running.max",
+				Runtime.getRuntime().availableProcessors() * 4));
+		this.maxCpu = percent("org.excalibur.scheduler.pressure.cpu.max.percent", 50);
+		this.maxMemory = percent("org.excalibur.scheduler.pressure.memory.max.percent", 10);
+		this.maxIo = percent("org.excalibur.scheduler.pressure.io.max.percent", 30);
+		this.maxLoad = percent("org.excalibur.scheduler.load.max.percent", 150);
+		this.decrease = percent("org.excalibur.scheduler.adaptive.decrease.percent", 75);
+		this.executor = newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("scheduler-concurrency-limit").setDaemon(true).build());
+	}
+
+	private static double percent(String property, int defaultValue)
+	{
+		return getIntegerProperty(property, defaultValue) / 100.0;
+	}
+
+	public static boolean isEnabled()
+	{
+		return Boolean.getBoolean("org.excalibur.scheduler.adaptive.enabled");
+	}
+
+	public AdaptiveConcurrencyLimit start()
+	{
+		if (isEnabled())
+		{
+			pressure.read();
+			lastCompleted = scheduler.getCompleted();
+			executor.scheduleWithFixedDelay(this::adjust, interval, interval, MILLISECONDS);
+
+			LOG.info("Adjusting the number of running tasks between [{}] and [{}] every [{}] ms. Pressure stall information is {}",
+					minimum, maximum, interval, HostPressure.isSupported() ? "available" : "not available");
+		}
+
+		return this;
+	}
+
+	/**
+	 * Runs on the executor's thread only.
+	 */
+	private void adjust()
+	{
+		try
+		{
+			pressure.read();
+
+			long completed = scheduler.getCompleted();
+			long throughput = completed - lastCompleted;
+			int limit = scheduler.getMaxRunning();
+			int next = limit;
+
+			if (isOverloaded())
+			{
+				next = max(minimum, min(limit - 1, (int) (limit * decrease)));
+			}
+			else if (scheduler.getRunning() >= limit && scheduler.getQueued() > 0 && throughput >= lastThroughput)
+			{
+				next = min(maximum, limit + 1);
+			}
+
+			if (next != limit)
+			{
+				scheduler.setMaxRunning(next);
+				LOG.info("Changed the number of running tasks from [{}] to [{}]: {}, {} tasks finished", limit, next,
+						pressure, throughput);
+			}
+
+			lastCompleted = completed;
+			lastThroughput = throughput;
+		}
+		catch (RuntimeException e)
+		{
+			LOG.error("Error on adjusting the number of running tasks", e);
+		}
+	}
+
+	private boolean isOverloaded()
+	{
+		return pressure.getCpu() > maxCpu || pressure.getMemory() > maxMemory || pressure.getIo() > maxIo
+				|| pressure.getLoad() > maxLoad;
+	}
+
+	@Override
+	public void close()
+	{
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,779 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+import static java.lang.System.currentTimeMillis;
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+import static org.excalibur.core.util.SystemUtils2.getLongProperty;
+
+/**
+ * Decides which ready task starts next. Tasks with a higher priority come first, and then tasks with a deadline, earliest
+ * latest start first, so that a job with a completion target is not held back by best-effort work. The other tasks wait in
+ * a FIFO queue per user, and the
+ * {@code org.excalibur.scheduler.max.running}
+ * slots are shared among the users with waiting tasks in proportion to their weights, using stride scheduling: every time
+ * a user's task starts, with or without a deadline, the user's pass advances by the inverse of its weight, and the next
+ * slot goes to the user with the lowest pass. A user that has no task waiting does not build up credit, so one that comes back does not take all the
+ * slots at once. A user whose running tasks reach its {@link UserQuota#getMaxRunning() quota}, or whose next task does
+ * not fit in the host's memory according to the {@link MemoryAdmission}, is skipped, without holding back the others.
+ * A task that does not fit is tried again whenever a slot is freed, and is started anyway when nothing else is running.
+ * <p>
+ * When all the slots are taken and the next task has a higher priority than some running ones, the {@link Preemption}
+ * suspends the running task of the lowest priority and its slot goes to the waiting one. A suspended task gets a slot
+ * back before any waiting task of the same or a lower priority.
+ * <p>
+ * A task that needs several {@link TaskRequest#getCores() cores} at the same time takes as many slots, and only starts
+ * when all of them are free. The first such task that does not fit holds a {@link Reservation} until it starts or is
+ * cancelled, and keeps its place in its queue. The tasks behind it, in its user's queue or in the others, urgent or not,
+ * only start if they do not delay it (EASY backfill); up to {@code org.excalibur.scheduler.backfill.depth} tasks behind
+ * the head of a queue are tried.
+ */
+@ThreadSafe
+public class FairShareScheduler
+{
+	/**
+	 * The user of the tasks that do not belong to anyone, such as the ones of jobs without a user.
+	 */
+	public static final String ANONYMOUS = "anonymous";
+
+	private static final Logger LOG = LoggerFactory.getLogger(FairShareScheduler.class);
+
+	/**
+	 * Orders the tasks by decreasing priority, then by latest start, and then in the order they were submitted.
+	 */
+	private static final Comparator<Entry<?>> URGENCY = Comparator
+			.<Entry<?>> comparingInt(entry -> -entry.request.getPriority())
+			.thenComparingLong(entry -> entry.request.getLatestStart())
+			.thenComparingLong(entry -> entry.sequence);
+
+	private final Function<String, UserQuota> quotas;
+	private final PendingTaskCapacity capacity;
+	private final MemoryAdmission memory;
+	private final Preemption preemption;
+	private final long backfillWindow = getLongProperty("org.excalibur.scheduler.gang.backfill.ms", 60_000L);
+	private final int backfillDepth = getIntegerProperty("org.excalibur.scheduler.backfill.depth", 1_000);
+
+	private final Map<String, UserQueue> queues = new LinkedHashMap<>();
+	private final List<Entry<?>> active = new ArrayList<>();
+	private final List<Entry<?>> suspended = new ArrayList<>();
+
+	/**
+	 * The task that needs several slots and keeps them until it starts or is cancelled, if there is one.
+	 */
+	private Reservation reservation;
+	private int maxRunning;
+	private int running;
+	private long completed;
+	private long sequence;
+	private double virtualTime;
+
+	public FairShareScheduler()
+	{
+		this(getIntegerProperty("org.excalibur.scheduler.max.running", Runtime.getRuntime().availableProcessors()),
+				UserQuota::of, new PendingTaskCapacity(), new MemoryAdmission(), new Preemption());
+	}
+
+	/**
+	 * @param maxRunning the number of tasks that can run at the same time
+	 * @param quotas returns the quota of a user. It is called once per user
+	 * @param capacity bounds the tasks admitted and not yet finished
+	 * @param memory holds back the tasks that do not fit in the host's memory
+	 * @param preemption suspends running tasks for tasks of a higher priority
+	 */
+	public FairShareScheduler(int maxRunning, Function<String, UserQuota> quotas, PendingTaskCapacity capacity,
+			MemoryAdmission memory, Preemption preemption)
+	{
+		checkArgument(maxRunning > 0, "The maximum number of running tasks must be greater than zero");
+
+		this.maxRunning = maxRunning;
+		this.quotas = requireNonNull(quotas, "quotas is null");
+		this.capacity = requireNonNull(capacity, "capacity is null");
+		this.memory = requireNonNull(memory, "memory is null");
+		this.preemption = requireNonNull(preemption, "preemption is null");
+	}
+
+	/**
+	 * @return the bound on the tasks admitted and not yet finished
+	 */
+	public PendingTaskCapacity capacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @return the suspension of the tasks of a lower priority
+	 */
+	public Preemption preemption()
+	{
+		return preemption;
+	}
+
+	/**
+	 * Queues a task of the given user. The task is started, by calling {@code start} on the thread that frees or finds the
+	 * slot, when its user's turn comes; it holds the slot until the future returned by {@code start} completes. Cancelling
+	 * the returned future cancels the task, which is not started if it is still waiting.
+	 * @param user the user the task belongs to
+	 * @param start starts the task and returns its completion
+	 * @return the result of the task
+	 */
+	public <T> ListenableFuture<T> submit(String user, Callable<ListenableFuture<T>> start)
+	{
+		return submit(TaskRequest.of(user), start);
+	}
+
+	/**
+	 * Queues a task described by the given request.
+	 * @see #submit(String, Callable)
+	 */
+	public <T> ListenableFuture<T> submit(TaskRequest request, Callable<ListenableFuture<T>> start)
+	{
+		Entry<T> entry = new Entry<>(requireNonNull(request, "request is null"), requireNonNull(start, "start is null"));
+
+		synchronized (this)
+		{
+			entry.sequence = sequence++;
+			queueOf(request.getUser()).add(entry);
+		}
+
+		entry.result.addListener(() ->
+		{
+			if (entry.result.isCancelled())
+			{
+				cancelled(entry);
+			}
+		}, directExecutor());
+
+		dispatch();
+
+		return entry.result;
+	}
+
+	/**
+	 * Rejects new work of a user whose queue is full. The tasks of the jobs already admitted are always queued, so the
+	 * queue can go past the limit while they become ready.
+	 * @throws QuotaExceededException if the user's queued tasks have reached its quota
+	 */
+	public synchronized void checkAdmission(String user)
+	{
+		UserQueue queue = queueOf(user);
+
+		if (queue.size() >= queue.quota.getMaxQueued())
+		{
+			throw new QuotaExceededException(format("User %s has %d tasks waiting, the maximum allowed",
+					queue.user, queue.size()));
+		}
+	}
+
+	public synchronized int getMaxRunning()
+	{
+		return maxRunning;
+	}
+
+	/**
+	 * Changes the number of tasks that can run at the same time. When it shrinks, the running tasks go on and no task
+	 * starts until they fall below the new limit.
+	 */
+	public void setMaxRunning(int maxRunning)
+	{
+		checkArgument(maxRunning > 0, "The maximum number of running tasks must be greater than zero");
+
+		synchronized (this)
+		{
+			this.maxRunning = maxRunning;
+		}
+
+		dispatch();
+	}
+
+	/**
+	 * @return the number of slots taken by the running tasks
+	 */
+	public synchronized int getRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * @return the number of ready tasks waiting for a slot, over all users
+	 */
+	public synchronized int getQueued()
+	{
+		return queues.values().stream().mapToInt(UserQueue::size).sum();
+	}
+
+	/**
+	 * @return the number of tasks that have released their slot since the scheduler was created
+	 */
+	public synchronized long getCompleted()
+	{
+		return completed;
+	}
+
+	/**
+	 * @return the slots and the capacity of this scheduler and the queues of the users that have submitted tasks
+	 */
+	public synchronized SchedulerState state()
+	{
+		return new SchedulerState(maxRunning, running, suspended.size(), capacity.getCapacity(), capacity.getPending(),
+				capacity.getDrainRate(), queues.values().stream().map(UserQueue::state).collect(toList()));
+	}
+
+	/**
+	 * @return the state of the given user's queue
+	 */
+	public synchronized UserQueueState queue(String user)
+	{
+		return queueOf(user).state();
+	}
+
+	private UserQueue queueOf(String user)
+	{
+		String key = user != null && !user.isEmpty() ? user : ANONYMOUS;
+		return queues.computeIfAbsent(key, name -> new UserQueue(name, quotas.apply(name)));
+	}
+
+	/**
+	 * Starts or resumes as many tasks as there are free slots, suspending running tasks for the waiting ones of a higher
+	 * priority. The tasks are started and resumed out of the lock, as starting one may queue others.
+	 */
+	private void dispatch()
+	{
+		List<Entry<?>> granted = new ArrayList<>();
+		List<Entry<?>> resumed = new ArrayList<>();
+
+		synchronized (this)
+		{
+			Set<UserQueue> heldBack = new HashSet<>();
+
+			if (reservation != null)
+			{
+				reservation.update();
+			}
+
+			while (true)
+			{
+				UserQueue next = next(heldBack);
+				Entry<?> head = next != null ? next.peek() : null;
+				Entry<?> paused = suspended.stream().min(URGENCY).orElse(null);
+
+				if (paused != null && (head == null || URGENCY.compare(paused, head) <= 0)
+						&& (reservation == null || URGENCY.compare(paused, reservation.entry) <= 0))
+				{
+					if (paused.slots > maxRunning - running)
+					{
+						break;
+					}
+
+					suspended.remove(paused);
+					active.add(paused);
+					paused.startedIn += currentTimeMillis() - paused.suspendedIn;
+					paused.queue.running++;
+					running += paused.slots;
+					resumed.add(paused);
+					continue;
+				}
+
+				if (reservation != null && reservation.canStart())
+				{
+					Reservation started = reservation;
+					reservation = null;
+					grant(started.queue, started.entry, Math.min(started.slots, maxRunning), granted);
+					continue;
+				}
+
+				if (head == null)
+				{
+					break;
+				}
+
+				Entry<?> entry = null;
+				int slots = 0;
+
+				// the head comes first; the tasks behind it are only tried when it cannot start, as backfill
+				for (Entry<?> candidate : Iterables.concat(Collections.singleton(head), () -> next.behindHead(backfillDepth)))
+				{
+					int needed = Math.min(candidate.request.getCores(), maxRunning);
+
+					if (reservation != null && (candidate == reservation.entry || !reservation.admits(candidate, needed)))
+					{
+						continue;
+					}
+
+					if (needed > maxRunning - running && !(candidate == head && preempt(candidate, needed)))
+					{
+						if (needed > 1 && reservation == null)
+						{
+							reservation = new Reservation(next, candidate, needed);
+						}
+
+						if (running >= maxRunning)
+						{
+							// no task behind it fits either
+							break;
+						}
+
+						continue;
+					}
+
+					if (running > 0 && !memory.fits(candidate.request.getMemory()))
+					{
+						break;
+					}
+
+					entry = candidate;
+					slots = needed;
+					break;
+				}
+
+				if (entry == null)
+				{
+					heldBack.add(next);
+					continue;
+				}
+
+				if (reservation != null)
+				{
+					reservation.backfilled(entry, slots);
+				}
+
+				grant(next, entry, slots, granted);
+			}
+		}
+
+		resumed.forEach(entry -> preemption.resume(entry.request.getTaskId()));
+		granted.forEach(Entry::start);
+	}
+
+	/**
+	 * Takes the slots of a task of the given queue, which is started once out of the lock.
+	 */
+	private void grant(UserQueue queue, Entry<?> entry, int slots, List<Entry<?>> granted)
+	{
+		queue.remove(entry);
+		entry.queue = queue;
+		entry.slots = slots;
+		entry.startedIn = currentTimeMillis();
+		memory.started(entry.request.getMemory());
+		virtualTime = queue.pass;
+		queue.pass += 1.0 / queue.quota.getWeight();
+		queue.running++;
+		queue.started++;
+		running += slots;
+		active.add(entry);
+		granted.add(entry);
+	}
+
+	/**
+	 * Drops a task that was cancelled while it waited, and its reservation if it held one.
+	 */
+	private void cancelled(Entry<?> entry)
+	{
+		synchronized (this)
+		{
+			if (entry.queue != null)
+			{
+				// it has already been granted a slot, which it gives back without starting
+				return;
+			}
+
+			queueOf(entry.request.getUser()).remove(entry);
+
+			if (reservation != null && reservation.entry == entry)
+			{
+				reservation = null;
+			}
+		}
+
+		dispatch();
+	}
+
+	/**
+	 * Suspends running tasks of a lower priority than the given one until it has the slots it needs, starting with the
+	 * lowest priority. Among equals, the latest started tasks are suspended first, so that the tasks closer to their end
+	 * finish first. Nothing is suspended if the tasks of a lower priority do not hold enough slots.
+	 * @return <code>true</code> if the slots were freed
+	 */
+	private boolean preempt(Entry<?> waiting, int slots)
+	{
+		if (!preemption.isEnabled())
+		{
+			return false;
+		}
+
+		List<Entry<?>> candidates = active.stream()
+				.filter(entry -> entry.request.getTaskId() != null
+						&& entry.request.getPriority() < waiting.request.getPriority())
+				.collect(toList());
+
+		if (maxRunning - running + candidates.stream().mapToInt(entry -> entry.slots).sum() < slots)
+		{
+			return false;
+		}
+
+		Collections.reverse(candidates);
+		candidates.sort(Comparator.comparingInt(entry -> entry.request.getPriority()));
+
+		for (Entry<?> victim : candidates)
+		{
+			if (maxRunning - running >= slots)
+			{
+				break;
+			}
+
+			if (preemption.suspend(victim.request.getTaskId()))
+			{
+				active.remove(victim);
+				suspended.add(victim);
+				victim.suspendedIn = currentTimeMillis();
+				victim.queue.running--;
+				running -= victim.slots;
+			}
+		}
+
+		return maxRunning - running >= slots;
+	}
+
+	/**
+	 * @return the queue of the eligible user with the most urgent task of a higher priority or with a deadline or, if no
+	 *         eligible user has one, the eligible user with the lowest pass
+	 */
+	private UserQueue next(Set<UserQueue> heldBack)
+	{
+		UserQueue earliest = null;
+		UserQueue fairest = null;
+
+		for (UserQueue queue : queues.values())
+		{
+			if (!queue.isEligible() || heldBack.contains(queue))
+			{
+				continue;
+			}
+
+			if (!queue.urgent.isEmpty() && (earliest == null || URGENCY.compare(queue.urgent.peek(), earliest.urgent.peek()) < 0))
+			{
+				earliest = queue;
+			}
+
+			if (fairest == null || queue.pass < fairest.pass)
+			{
+				fairest = queue;
+			}
+		}
+
+		return earliest != null ? earliest : fairest;
+	}
+
+	private void release(Entry<?> entry)
+	{
+		synchronized (this)
+		{
+			// a suspended task may still end, for instance when it is cancelled
+			if (!suspended.remove(entry))
+			{
+				active.remove(entry);
+				entry.queue.running--;
+				running -= entry.slots;
+			}
+
+			completed++;
+		}
+
+		if (entry.request.getTaskId() != null)
+		{
+			preemption.finished(entry.request.getTaskId());
+		}
+
+		dispatch();
+	}
+
+	private final class UserQueue
+	{
+		final String user;
+		final UserQuota quota;
+		final Queue<Entry<?>> urgent = new PriorityQueue<>(URGENCY);
+		final Deque<Entry<?>> waiting = new ArrayDeque<>();
+		double pass;
+		int running;
+		long started;
+
+		UserQueue(String user, UserQuota quota)
+		{
+			this.user = user;
+			this.quota = requireNonNull(quota, () -> format("quota of user %s is null", user));
+		}
+
+		void add(Entry<?> entry)
+		{
+			if (size() == 0 && running == 0)
+			{
+				// an idle user rejoins at the current virtual time, without the credit of the time it was idle
+				pass = Math.max(pass, virtualTime);
+			}
+
+			(entry.request.hasDeadline() || entry.request.getPriority() > 0 ? urgent : waiting).add(entry);
+		}
+
+		Entry<?> peek()
+		{
+			return !urgent.isEmpty() ? urgent.peek() : waiting.peek();
+		}
+
+		void remove(Entry<?> entry)
+		{
+			if (!urgent.remove(entry))
+			{
+				waiting.remove(entry);
+			}
+		}
+
+		/**
+		 * @return at most {@code limit} of the tasks behind the head, in the order they are started
+		 */
+		Iterator<Entry<?>> behindHead(int limit)
+		{
+			Entry<?> head = peek();
+			return Stream.concat(urgent.stream().sorted(URGENCY), waiting.stream()).filter(entry -> entry != head).limit(limit)
+					.iterator();
+		}
+
+		int size()
+		{
+			return urgent.size() + waiting.size();
+		}
+
+		boolean isEligible()
+		{
+			return size() > 0 && running < quota.getMaxRunning();
+		}
+
+		UserQueueState state()
+		{
+			return new UserQueueState(user, quota, running, size(), urgent.size(), started);
+		}
+	}
+
+	/**
+	 * The slots kept for a task that needs more slots than are free. It lasts across dispatches until the task starts or is
+	 * cancelled, and the task starts as soon as enough slots are free, before any other waiting task. The running tasks are
+	 * expected to end at their start plus their {@link TaskRequest#getEstimatedRuntime() estimated runtime}, which gives
+	 * the shadow time: when enough slots will be free for the reserved task. A waiting task of any user, with or without a
+	 * deadline, can start before it only if it is expected to end before the shadow time, or if it only takes slots that
+	 * the reserved task will not need then. Tasks of a higher priority than the reserved one are not held back. When the
+	 * running tasks' runtimes are unknown, the other tasks may start while it has waited less than
+	 * {@code org.excalibur.scheduler.gang.backfill.ms}; after that, the slots freed are kept for it until it can start.
+	 */
+	private final class Reservation
+	{
+		final UserQueue queue;
+		final Entry<?> entry;
+		final int slots;
+		long now;
+		long shadow;
+		int extra;
+
+		Reservation(UserQueue queue, Entry<?> entry, int slots)
+		{
+			this.queue = queue;
+			this.entry = entry;
+			this.slots = slots;
+			entry.reservedIn = currentTimeMillis();
+			update();
+		}
+
+		/**
+		 * Computes the shadow time from the tasks running now.
+		 */
+		void update()
+		{
+			now = currentTimeMillis();
+			shadow = -1;
+			extra = 0;
+
+			List<Entry<?>> running = new ArrayList<>(active);
+			running.sort(Comparator.comparingLong(Entry::expectedEnd));
+
+			int free = maxRunning - FairShareScheduler.this.running;
+
+			for (Entry<?> task : running)
+			{
+				if (task.expectedEnd() == Long.MAX_VALUE)
+				{
+					break;
+				}
+
+				free += task.slots;
+
+				if (free >= slots)
+				{
+					shadow = Math.max(now, task.expectedEnd());
+					extra = free - slots;
+					break;
+				}
+			}
+		}
+
+		/**
+		 * @return <code>true</code> if the reserved task has all the slots it needs and its user may run one more task
+		 */
+		boolean canStart()
+		{
+			return Math.min(slots, maxRunning) <= maxRunning - running && queue.running < queue.quota.getMaxRunning()
+					&& (running == 0 || memory.fits(entry.request.getMemory()));
+		}
+
+		boolean admits(Entry<?> candidate, int slots)
+		{
+			if (candidate.request.getPriority() > entry.request.getPriority())
+			{
+				return true;
+			}
+
+			if (shadow < 0)
+			{
+				return now - entry.reservedIn < backfillWindow;
+			}
+
+			return endsBeforeShadow(candidate) || slots <= extra;
+		}
+
+		/**
+		 * Takes the slots a backfilled task holds past the shadow time from the ones the reserved task will not need.
+		 */
+		void backfilled(Entry<?> candidate, int slots)
+		{
+			if (shadow >= 0 && candidate.request.getPriority() <= entry.request.getPriority() && !endsBeforeShadow(candidate))
+			{
+				extra -= slots;
+			}
+		}
+
+		private boolean endsBeforeShadow(Entry<?> candidate)
+		{
+			long runtime = candidate.request.getEstimatedRuntime();
+			return runtime > 0 && now + runtime <= shadow;
+		}
+	}
+
+	private final class Entry<T>
+	{
+		final TaskRequest request;
+		final Callable<ListenableFuture<T>> start;
+		final SettableFuture<T> result = SettableFuture.create();
+		long sequence;
+		int slots;
+		long startedIn;
+		long suspendedIn;
+		long reservedIn;
+		UserQueue queue;
+
+		Entry(TaskRequest request, Callable<ListenableFuture<T>> start)
+		{
+			this.request = request;
+			this.start = start;
+		}
+
+		/**
+		 * @return when the running task is expected to end, or {@link Long#MAX_VALUE} if its runtime is unknown
+		 */
+		long expectedEnd()
+		{
+			long runtime = request.getEstimatedRuntime();
+			return runtime > 0 ? startedIn + runtime : Long.MAX_VALUE;
+		}
+
+		void start()
+		{
+			ListenableFuture<T> handle;
+
+			// a task that was cancelled while it waited gives its slot back without starting
+			if (result.isCancelled())
+			{
+				release(this);
+				return;
+			}
+
+			try
+			{
+				handle = requireNonNull(start.call(), "task's handle is null");
+			}
+			catch (Exception e)
+			{
+				LOG.error(format("Error on starting a task of user %s", queue.user), e);
+				result.setException(e);
+				release(this);
+				return;
+			}
+
+			Futures.addCallback(handle, new FutureCallback<T>()
+			{
+				@Override
+				public void onSuccess(T value)
+				{
+					result.set(value);
+				}
+
+				@Override
+				public void onFailure(Throwable t)
+				{
+					result.setException(t);
+				}
+			}, directExecutor());
+
+			result.addListener(() ->
+			{
+				if (result.isCancelled())
+				{
+					handle.cancel(true);
+				}
+			}, directExecutor());
+			handle.addListener(() -> release(this), directExecutor());
+		}
+	}
+}
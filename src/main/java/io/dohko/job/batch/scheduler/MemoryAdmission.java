@@ -0,0 +1,102 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import io.dohko.job.batch.monitor.HostMemory;
+
+import static java.util.Objects.requireNonNull;
+import static org.excalibur.core.util.SystemUtils2.getLongProperty;
+
+/**
+ * Holds back a task whose expected peak resident size does not fit in the memory available on the host, as reported by
+ * {@code /proc/meminfo}, minus {@code org.excalibur.scheduler.memory.headroom.mb}. A task that has just started has not
+ * reached its peak yet, so its expected size is also kept aside for {@code org.excalibur.scheduler.memory.reservation.ms}
+ * after it starts. It is enabled by the system property {@code org.excalibur.scheduler.memory.admission.enabled}; tasks
+ * without an expected size are never held back. It is used under the lock of its {@link FairShareScheduler}.
+ */
+@NotThreadSafe
+public class MemoryAdmission
+{
+	private final HostMemory memory;
+	private final boolean enabled;
+	private final long headroom;
+	private final long reservation;
+	private final Deque<long[]> reserved = new ArrayDeque<>();
+	private long reservedBytes;
+
+	public MemoryAdmission()
+	{
+		this(new HostMemory(), Boolean.getBoolean("org.excalibur.scheduler.memory.admission.enabled") && HostMemory.isSupported(),
+				getLongProperty("org.excalibur.scheduler.memory.headroom.mb", 256L) * 1024 * 1024,
+				getLongProperty("org.excalibur.scheduler.memory.reservation.ms", 30_000L));
+	}
+
+	public MemoryAdmission(HostMemory memory, boolean enabled, long headroom, long reservation)
+	{
+		this.memory = requireNonNull(memory, "memory is null");
+		this.enabled = enabled;
+		this.headroom = headroom;
+		this.reservation = reservation;
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * @param bytes the expected peak resident size of a task, or zero if it is unknown
+	 * @return <code>true</code> if the task can start without exceeding the available memory
+	 */
+	boolean fits(long bytes)
+	{
+		if (!enabled || bytes <= 0)
+		{
+			return true;
+		}
+
+		long available = memory.available();
+		return available < 0 || bytes <= available - headroom - reserved(System.currentTimeMillis());
+	}
+
+	/**
+	 * Keeps the expected size of a task that has just started aside, until it has had time to reach it.
+	 */
+	void started(long bytes)
+	{
+		if (enabled && bytes > 0)
+		{
+			reserved.add(new long[] { System.currentTimeMillis() + reservation, bytes });
+			reservedBytes += bytes;
+		}
+	}
+
+	private long reserved(long now)
+	{
+		while (!reserved.isEmpty() && reserved.peek()[0] <= now)
+		{
+			reservedBytes -= reserved.poll()[1];
+		}
+
+		return reservedBytes;
+	}
+}
@@ -0,0 +1,252 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+import static org.excalibur.core.util.SystemUtils2.getLongProperty;
+
+/**
+ * Bounds the number of tasks admitted and not yet finished to {@code org.excalibur.job.pending.tasks.max}. A job whose
+ * tasks do not fit is rejected with an estimate of when they would, based on the rate at which finished tasks free
+ * room. The rate is an exponentially decaying average over about {@code org.excalibur.job.pending.drain.window.ms}; while
+ * nothing has finished yet, {@code org.excalibur.job.pending.retry.after.s} is suggested.
+ * <p>
+ * A task may take the room of several, such as a sweep, which takes one for itself and one for each of its points. The
+ * room of a point is handed over to the point when it is created, with {@link #transfer(String, String)}.
+ */
+@ThreadSafe
+public class PendingTaskCapacity
+{
+	private static final long MAX_RETRY_AFTER = 3600;
+
+	private final int capacity;
+	private final double window;
+	private final long defaultRetryAfter;
+
+	/**
+	 * The room taken by each pending task.
+	 */
+	private final Map<String, Integer> pending = new HashMap<>();
+	private int size;
+
+	/**
+	 * Finished tasks per millisecond, as of {@link #lastDrain}.
+	 */
+	private double drainRate;
+	private long lastDrain;
+
+	public PendingTaskCapacity()
+	{
+		this(getIntegerProperty("org.excalibur.job.pending.tasks.max", 100_000),
+				getLongProperty("org.excalibur.job.pending.drain.window.ms", 60_000L),
+				getLongProperty("org.excalibur.job.pending.retry.after.s", 30L));
+	}
+
+	public PendingTaskCapacity(int capacity, long window, long defaultRetryAfter)
+	{
+		checkArgument(capacity > 0, "The capacity must be greater than zero");
+		checkArgument(window > 0, "The drain window must be greater than zero");
+
+		this.capacity = capacity;
+		this.window = window;
+		this.defaultRetryAfter = defaultRetryAfter;
+	}
+
+	/**
+	 * Admits the given tasks if all of them fit, each one taking the room of one task.
+	 * @throws QuotaExceededException with the estimated time for them to fit, if they do not
+	 * @throws SubmissionTooLargeException if they take more room than the whole capacity
+	 */
+	public void acquire(Iterable<String> taskIds)
+	{
+		acquire(roomOfOne(taskIds));
+	}
+
+	/**
+	 * Admits the given tasks if all of them fit.
+	 * @param tasks the room, in number of tasks, each task takes
+	 * @throws QuotaExceededException with the estimated time for them to fit, if they do not
+	 * @throws SubmissionTooLargeException if they take more room than the whole capacity, as they would never fit
+	 */
+	public synchronized void acquire(Map<String, Integer> tasks)
+	{
+		int added = 0;
+
+		for (Map.Entry<String, Integer> task : tasks.entrySet())
+		{
+			if (!pending.containsKey(task.getKey()))
+			{
+				added += task.getValue();
+			}
+		}
+
+		checkSize(added);
+
+		int excess = size + added - capacity;
+
+		if (excess > 0)
+		{
+			throw new QuotaExceededException(format("There is no room for %d more tasks: %d of %d are pending",
+					added, size, capacity), retryAfter(excess, System.currentTimeMillis()));
+		}
+
+		force(tasks);
+	}
+
+	/**
+	 * Checks that a submission taking the room of the given number of tasks could ever be admitted.
+	 * @throws SubmissionTooLargeException if it takes more room than the whole capacity
+	 */
+	public void checkSize(int tasks)
+	{
+		if (tasks > capacity)
+		{
+			throw new SubmissionTooLargeException(format(
+					"The submission has %d tasks, more than the %d that can be pending at once. Split it into smaller ones",
+					tasks, capacity));
+		}
+	}
+
+	/**
+	 * Admits the given tasks even past the capacity, such as the ones of jobs recovered after a restart.
+	 * @param tasks the room, in number of tasks, each task takes
+	 */
+	public synchronized void force(Map<String, Integer> tasks)
+	{
+		tasks.forEach((taskId, room) ->
+		{
+			if (pending.putIfAbsent(taskId, room) == null)
+			{
+				size += room;
+			}
+		});
+	}
+
+	/**
+	 * Hands one task's room of a pending task over to another, such as from a sweep to one of its points. The task keeps
+	 * the room for itself; if it has no room to spare, the other task is admitted past the capacity.
+	 */
+	public synchronized void transfer(String from, String to)
+	{
+		if (pending.containsKey(to))
+		{
+			return;
+		}
+
+		Integer room = pending.get(from);
+
+		if (room != null && room > 1)
+		{
+			pending.put(from, room - 1);
+			size--;
+		}
+
+		pending.put(to, 1);
+		size++;
+	}
+
+	/**
+	 * Frees the room of tasks that will not run, such as the ones of a submission that was rolled back.
+	 */
+	public synchronized void release(Iterable<String> taskIds)
+	{
+		for (String taskId : taskIds)
+		{
+			Integer room = pending.remove(taskId);
+
+			if (room != null)
+			{
+				size -= room;
+			}
+		}
+	}
+
+	/**
+	 * Frees the room of a task that has finished, failed or been cancelled.
+	 * @return {@code false} if the task was not pending
+	 */
+	public synchronized boolean finished(String taskId)
+	{
+		Integer room = pending.remove(taskId);
+
+		if (room == null)
+		{
+			return false;
+		}
+
+		size -= room;
+
+		long now = System.currentTimeMillis();
+		drainRate = drainRateAt(now) + room / window;
+		lastDrain = now;
+
+		return true;
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public synchronized int getPending()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the number of tasks finished per second, recently
+	 */
+	public synchronized double getDrainRate()
+	{
+		return drainRateAt(System.currentTimeMillis()) * 1000;
+	}
+
+	private static Map<String, Integer> roomOfOne(Iterable<String> taskIds)
+	{
+		Map<String, Integer> tasks = new LinkedHashMap<>();
+		taskIds.forEach(taskId -> tasks.put(taskId, 1));
+		return tasks;
+	}
+
+	private double drainRateAt(long now)
+	{
+		return drainRate * Math.exp(-(now - lastDrain) / window);
+	}
+
+	/**
+	 * @return the seconds it takes to finish the given number of tasks at the current drain rate
+	 */
+	private long retryAfter(int tasks, long now)
+	{
+		double rate = drainRateAt(now);
+
+		if (rate <= 0)
+		{
+			return defaultRetryAfter;
+		}
+
+		return Math.max(1, Math.min(MAX_RETRY_AFTER, (long) Math.ceil(tasks / rate / 1000)));
+	}
+}
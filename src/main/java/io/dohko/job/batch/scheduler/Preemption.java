@@ -0,0 +1,186 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.dohko.job.batch.monitor.ProcessGroups;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Suspends running tasks so that their slots can go to tasks of a higher priority, and resumes them afterwards. A task is
+ * suspended by sending {@code SIGSTOP} to its process group, so it keeps its memory and its progress; the tasks are
+ * started with {@code setsid} while preemption is enabled, and a task whose process does not lead its own group, such as
+ * one run by a shell worker, is never suspended. The time a task spends suspended still counts towards its wall time
+ * limit.
+ * <p>
+ * It is enabled by the system property {@code org.excalibur.scheduler.preemption.enabled}. Every time a suspended task is
+ * resumed or finishes, its {@link Suspension} is reported to the listener.
+ */
+@ThreadSafe
+public class Preemption
+{
+	private static final Logger LOG = LoggerFactory.getLogger(Preemption.class);
+
+	private final ProcessGroups groups;
+	private final boolean enabled;
+
+	private final Map<String, Long> processes = new HashMap<>();
+	private final Map<String, Long> suspendedSince = new HashMap<>();
+	private final Map<String, Long> suspendedTime = new HashMap<>();
+	private volatile Consumer<Suspension> listener = suspension -> {
+	};
+
+	public Preemption()
+	{
+		this(new ProcessGroups(), isEnabledByProperty());
+	}
+
+	public Preemption(ProcessGroups groups, boolean enabled)
+	{
+		this.groups = requireNonNull(groups, "groups is null");
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return <code>true</code> if preemption was enabled by {@code org.excalibur.scheduler.preemption.enabled}, and thus
+	 *         the tasks must be started in their own process group
+	 */
+	public static boolean isEnabledByProperty()
+	{
+		return Boolean.getBoolean("org.excalibur.scheduler.preemption.enabled");
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public Preemption setListener(Consumer<Suspension> listener)
+	{
+		this.listener = requireNonNull(listener, "listener is null");
+		return this;
+	}
+
+	/**
+	 * Records the process of a running task, which leads the task's process group.
+	 */
+	public synchronized void started(String taskId, long pid)
+	{
+		if (enabled && taskId != null)
+		{
+			processes.put(taskId, pid);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the task was suspended
+	 */
+	public boolean suspend(String taskId)
+	{
+		synchronized (this)
+		{
+			Long pid = taskId != null ? processes.get(taskId) : null;
+
+			if (pid == null || suspendedSince.containsKey(taskId) || !groups.stop(pid))
+			{
+				return false;
+			}
+
+			suspendedSince.put(taskId, currentTimeMillis());
+		}
+
+		LOG.info("Suspended task [{}] to run a task of a higher priority", taskId);
+
+		return true;
+	}
+
+	/**
+	 * Resumes a suspended task. A task whose process is gone is considered resumed.
+	 */
+	public void resume(String taskId)
+	{
+		Long pid;
+
+		synchronized (this)
+		{
+			pid = processes.get(taskId);
+		}
+
+		if (pid != null && !groups.resume(pid))
+		{
+			LOG.warn("Could not resume task [{}]", taskId);
+		}
+
+		resumed(taskId);
+	}
+
+	/**
+	 * @return the time in milliseconds the task has spent suspended so far
+	 */
+	public synchronized long suspendedTime(String taskId)
+	{
+		long time = suspendedTime.getOrDefault(taskId, 0L);
+		Long since = suspendedSince.get(taskId);
+
+		return since != null ? time + currentTimeMillis() - since : time;
+	}
+
+	/**
+	 * Forgets a task that has finished.
+	 */
+	public void finished(String taskId)
+	{
+		resumed(taskId);
+
+		synchronized (this)
+		{
+			processes.remove(taskId);
+			suspendedTime.remove(taskId);
+		}
+	}
+
+	private void resumed(String taskId)
+	{
+		Suspension suspension;
+
+		synchronized (this)
+		{
+			Long since = suspendedSince.remove(taskId);
+
+			if (since == null)
+			{
+				return;
+			}
+
+			suspension = new Suspension(taskId, since, currentTimeMillis());
+			suspendedTime.merge(taskId, suspension.getDuration(), Long::sum);
+		}
+
+		LOG.info("Resumed task [{}] after {} ms", taskId, suspension.getDuration());
+		listener.accept(suspension);
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import job.flow.ApplicationDirectives;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.System.getenv;
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+
+/**
+ * The CPU nice level and IO scheduling class a task's process is created with, applied by running its command through
+ * {@code nice} and {@code ionice}. An application declares them with the directives {@code nice}, {@code ionice} and
+ * {@code ionice.priority}. Otherwise they follow the application's {@link ApplicationDirectives#priority() priority}:
+ * a negative priority marks background work, which runs with the nice level
+ * {@code org.excalibur.task.background.nice} (10 by default) and the idle IO class, and a positive one marks interactive
+ * work, which gets a best-effort IO priority above the default. A task of priority zero runs as before.
+ * <p>
+ * A level that needs privileges the service does not have, such as a negative nice level or the realtime IO class, is
+ * ignored and the task runs with the default one.
+ */
+@Immutable
+public final class ProcessPriority
+{
+	public static final ProcessPriority DEFAULT = new ProcessPriority(null, null, null);
+
+	/**
+	 * The best-effort IO priority of processes that do not set one.
+	 */
+	private static final int DEFAULT_IO_PRIORITY = 4;
+
+	private static final boolean NICE = isExecutable("nice");
+	private static final boolean IONICE = isExecutable("ionice");
+
+	private final Integer nice;
+	private final Integer ioClass;
+	private final Integer ioPriority;
+
+	ProcessPriority(Integer nice, Integer ioClass, Integer ioPriority)
+	{
+		this.nice = nice;
+		this.ioClass = ioClass;
+		this.ioPriority = ioPriority;
+	}
+
+	public static ProcessPriority of(ApplicationDirectives directives)
+	{
+		int priority = directives.priority().orElse(0);
+		Integer nice = null, ioClass = null, ioPriority = null;
+
+		if (priority < 0)
+		{
+			nice = getIntegerProperty("org.excalibur.task.background.nice", 10);
+			ioClass = 3;
+		}
+		else if (priority > 0)
+		{
+			ioClass = 2;
+			ioPriority = Math.max(0, DEFAULT_IO_PRIORITY - priority);
+		}
+
+		Optional<Integer> declaredNice = directives.nice();
+		Optional<String> declaredClass = directives.ioClass();
+		Optional<Integer> declaredPriority = directives.ioPriority();
+
+		if (declaredNice.isPresent())
+		{
+			nice = declaredNice.get();
+			checkArgument(nice >= -20 && nice <= 19, "nice level %s is not between -20 and 19", nice);
+		}
+
+		if (declaredClass.isPresent())
+		{
+			ioClass = ioClassOf(declaredClass.get());
+			ioPriority = null;
+		}
+
+		if (declaredPriority.isPresent())
+		{
+			ioPriority = declaredPriority.get();
+			checkArgument(ioPriority >= 0 && ioPriority <= 7, "IO priority %s is not between 0 and 7", ioPriority);
+			ioClass = ioClass == null ? 2 : ioClass;
+		}
+
+		return nice == null && ioClass == null ? DEFAULT : new ProcessPriority(nice, ioClass, ioPriority);
+	}
+
+	private static int ioClassOf(String name)
+	{
+		switch (name)
+		{
+		case "realtime":
+		case "1":
+			return 1;
+		case "best-effort":
+		case "2":
+			return 2;
+		case "idle":
+		case "3":
+			return 3;
+		default:
+			throw new IllegalArgumentException(String.format("Unknown IO scheduling class %s", name));
+		}
+	}
+
+	public boolean isDefault()
+	{
+		return nice == null && ioClass == null;
+	}
+
+	/**
+	 * @return the command that runs a command with this priority, or an empty list if there is none or the host lacks
+	 *         {@code nice} and {@code ionice}
+	 */
+	public ImmutableList<String> launcher()
+	{
+		ImmutableList.Builder<String> launcher = ImmutableList.builder();
+
+		if (nice != null && NICE)
+		{
+			launcher.add("nice", "-n", nice.toString());
+		}
+
+		if (ioClass != null && IONICE)
+		{
+			// -t runs the command even when the class cannot be set
+			launcher.add("ionice", "-t", "-c", ioClass.toString());
+
+			if (ioPriority != null)
+			{
+				launcher.add("-n", ioPriority.toString());
+			}
+		}
+
+		return launcher.build();
+	}
+
+	private static boolean isExecutable(String command)
+	{
+		String path = getenv("PATH");
+
+		if (path != null)
+		{
+			for (String directory : path.split(File.pathSeparator))
+			{
+				if (Files.isExecutable(Paths.get(directory, command)))
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("nice", nice)
+				.add("io class", ioClass)
+				.add("io priority", ioPriority)
+				.omitNullValues()
+				.toString();
+	}
+}
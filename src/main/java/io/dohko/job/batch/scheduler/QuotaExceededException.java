@@ -0,0 +1,51 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import java.util.OptionalLong;
+
+/**
+ * Thrown when work is submitted while a quota or the scheduler's capacity is exhausted.
+ */
+public class QuotaExceededException extends IllegalStateException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long retryAfter;
+
+	public QuotaExceededException(String message)
+	{
+		this(message, -1);
+	}
+
+	/**
+	 * @param retryAfter the estimated number of seconds until the work would be accepted
+	 */
+	public QuotaExceededException(String message, long retryAfter)
+	{
+		super(message);
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return the estimated number of seconds until the work would be accepted, if there is one
+	 */
+	public OptionalLong getRetryAfter()
+	{
+		return retryAfter >= 0 ? OptionalLong.of(retryAfter) : OptionalLong.empty();
+	}
+}
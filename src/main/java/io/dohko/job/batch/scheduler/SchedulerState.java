@@ -0,0 +1,123 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A snapshot of the {@link FairShareScheduler}: its slots, its pending tasks and the queues of its users.
+ */
+@Immutable
+public class SchedulerState
+{
+	private final int maxRunning;
+	private final int running;
+	private final int suspended;
+	private final int maxPending;
+	private final int pending;
+	private final double drainRate;
+	private final ImmutableList<UserQueueState> queues;
+
+	public SchedulerState(int maxRunning, int running, int suspended, int maxPending, int pending, double drainRate,
+			List<UserQueueState> queues)
+	{
+		this.maxRunning = maxRunning;
+		this.running = running;
+		this.suspended = suspended;
+		this.maxPending = maxPending;
+		this.pending = pending;
+		this.drainRate = drainRate;
+		this.queues = ImmutableList.copyOf(queues);
+	}
+
+	/**
+	 * @return the number of tasks that can run at the same time
+	 */
+	public int getMaxRunning()
+	{
+		return maxRunning;
+	}
+
+	public int getRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * @return the number of tasks suspended to give their slots to tasks of a higher priority
+	 */
+	public int getSuspended()
+	{
+		return suspended;
+	}
+
+	/**
+	 * @return the number of tasks that can be admitted and not yet finished
+	 */
+	public int getMaxPending()
+	{
+		return maxPending;
+	}
+
+	/**
+	 * @return the number of tasks admitted and not yet finished
+	 */
+	public int getPending()
+	{
+		return pending;
+	}
+
+	/**
+	 * @return the number of tasks finished per second, recently
+	 */
+	public double getDrainRate()
+	{
+		return drainRate;
+	}
+
+	/**
+	 * @return the number of ready tasks waiting for a slot, over all users
+	 */
+	public int getQueued()
+	{
+		return queues.stream().mapToInt(UserQueueState::getQueued).sum();
+	}
+
+	public ImmutableList<UserQueueState> getQueues()
+	{
+		return queues;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("max running", maxRunning)
+				.add("running", running)
+				.add("suspended", suspended)
+				.add("max pending", maxPending)
+				.add("pending", pending)
+				.add("drain rate", drainRate)
+				.add("queues", queues)
+				.toString();
+	}
+}
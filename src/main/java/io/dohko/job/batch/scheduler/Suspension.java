@@ -0,0 +1,73 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * An interval during which a task was suspended to give its slot to a task of a higher priority. Times are in
+ * milliseconds since the epoch.
+ */
+@Immutable
+public final class Suspension
+{
+	private final String taskId;
+	private final long suspendedIn;
+	private final long resumedIn;
+
+	public Suspension(String taskId, long suspendedIn, long resumedIn)
+	{
+		this.taskId = taskId;
+		this.suspendedIn = suspendedIn;
+		this.resumedIn = resumedIn;
+	}
+
+	public String getTaskId()
+	{
+		return taskId;
+	}
+
+	public long getSuspendedIn()
+	{
+		return suspendedIn;
+	}
+
+	/**
+	 * @return when the task was resumed or, if it finished while suspended, when it finished
+	 */
+	public long getResumedIn()
+	{
+		return resumedIn;
+	}
+
+	public long getDuration()
+	{
+		return resumedIn - suspendedIn;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("task", taskId)
+				.add("suspended in", suspendedIn)
+				.add("resumed in", resumedIn)
+				.toString();
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import com.google.common.base.MoreObjects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * What the {@link FairShareScheduler} knows about a task it is asked to start.
+ */
+public class TaskRequest
+{
+	private final String user;
+	private long memory;
+	private long latestStart = Long.MAX_VALUE;
+	private int priority;
+	private int cores = 1;
+	private long estimatedRuntime;
+	private String taskId;
+
+	private TaskRequest(String user)
+	{
+		this.user = user;
+	}
+
+	/**
+	 * @param user the user the task belongs to
+	 */
+	public static TaskRequest of(String user)
+	{
+		return new TaskRequest(user);
+	}
+
+	public String getUser()
+	{
+		return user;
+	}
+
+	/**
+	 * @return the expected peak resident size of the task in bytes, or zero if it is unknown
+	 */
+	public long getMemory()
+	{
+		return memory;
+	}
+
+	public TaskRequest setMemory(long memory)
+	{
+		this.memory = memory;
+		return this;
+	}
+
+	/**
+	 * @return the time, in milliseconds since the epoch, after which the task can no longer meet its job's deadline: the
+	 *         deadline minus the estimated time of the longest chain of tasks that starts with it. It is
+	 *         {@link Long#MAX_VALUE} for a task without a deadline
+	 */
+	public long getLatestStart()
+	{
+		return latestStart;
+	}
+
+	public TaskRequest setLatestStart(long latestStart)
+	{
+		this.latestStart = latestStart;
+		return this;
+	}
+
+	public boolean hasDeadline()
+	{
+		return latestStart != Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return the priority of the task. Tasks of a higher priority start first and may suspend running tasks of a lower
+	 *         one. It is zero by default
+	 */
+	public int getPriority()
+	{
+		return priority;
+	}
+
+	public TaskRequest setPriority(int priority)
+	{
+		checkArgument(priority >= 0, "The priority of a task cannot be negative");
+		this.priority = priority;
+		return this;
+	}
+
+	/**
+	 * @return the number of cores the task needs at the same time. A task that needs more than one is only started when
+	 *         all of them are free
+	 */
+	public int getCores()
+	{
+		return cores;
+	}
+
+	public TaskRequest setCores(int cores)
+	{
+		checkArgument(cores > 0, "A task needs at least one core");
+		this.cores = cores;
+		return this;
+	}
+
+	/**
+	 * @return the expected runtime of the task in milliseconds, as observed in previous executions, or zero if it is
+	 *         unknown
+	 */
+	public long getEstimatedRuntime()
+	{
+		return estimatedRuntime;
+	}
+
+	public TaskRequest setEstimatedRuntime(long estimatedRuntime)
+	{
+		this.estimatedRuntime = estimatedRuntime;
+		return this;
+	}
+
+	/**
+	 * @return the id of the task, or {@code null} if the task cannot be suspended
+	 */
+	public String getTaskId()
+	{
+		return taskId;
+	}
+
+	public TaskRequest setTaskId(String taskId)
+	{
+		this.taskId = taskId;
+		return this;
+	}
+
+	/**
+	 * @return a request equal to this one but for the given task
+	 */
+	public TaskRequest forTask(String taskId)
+	{
+		TaskRequest request = new TaskRequest(user).setMemory(memory).setLatestStart(latestStart).setCores(cores)
+				.setEstimatedRuntime(estimatedRuntime);
+		request.priority = priority;
+
+		return request.setTaskId(taskId);
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("user", user)
+				.add("memory", memory)
+				.add("latest start", hasDeadline() ? latestStart : null)
+				.add("priority", priority)
+				.add("cores", cores)
+				.add("estimated runtime", estimatedRuntime)
+				.add("task", taskId)
+				.omitNullValues()
+				.toString();
+	}
+}
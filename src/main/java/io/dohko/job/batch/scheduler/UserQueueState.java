@@ -0,0 +1,100 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A snapshot of a user's queue in the {@link FairShareScheduler}.
+ */
+@Immutable
+public class UserQueueState
+{
+	private final String user;
+	private final UserQuota quota;
+	private final int running;
+	private final int queued;
+	private final int queuedWithDeadline;
+	private final long started;
+
+	public UserQueueState(String user, UserQuota quota, int running, int queued, int queuedWithDeadline, long started)
+	{
+		this.user = user;
+		this.quota = quota;
+		this.running = running;
+		this.queued = queued;
+		this.queuedWithDeadline = queuedWithDeadline;
+		this.started = started;
+	}
+
+	public String getUser()
+	{
+		return user;
+	}
+
+	public UserQuota getQuota()
+	{
+		return quota;
+	}
+
+	/**
+	 * @return the number of the user's tasks holding a slot
+	 */
+	public int getRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * @return the number of the user's ready tasks waiting for a slot
+	 */
+	public int getQueued()
+	{
+		return queued;
+	}
+
+	/**
+	 * @return the number of the user's queued tasks whose job has a deadline
+	 */
+	public int getQueuedWithDeadline()
+	{
+		return queuedWithDeadline;
+	}
+
+	/**
+	 * @return the number of the user's tasks started since the scheduler was created
+	 */
+	public long getStarted()
+	{
+		return started;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("user", user)
+				.add("quota", quota)
+				.add("running", running)
+				.add("queued", queued)
+				.add("queued with deadline", queuedWithDeadline)
+				.add("started", started)
+				.toString();
+	}
+}
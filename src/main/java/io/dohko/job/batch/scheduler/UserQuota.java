@@ -0,0 +1,97 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+
+/**
+ * The share and the limits of a user in the {@link FairShareScheduler}. The defaults are given by
+ * {@code org.excalibur.scheduler.user.weight}, {@code org.excalibur.scheduler.user.max.running} and
+ * {@code org.excalibur.scheduler.user.max.queued}, and can be overridden for one user with
+ * {@code org.excalibur.scheduler.user.<username>.weight} and so on.
+ */
+@Immutable
+public class UserQuota
+{
+	private static final String PREFIX = "org.excalibur.scheduler.user";
+
+	private final int weight;
+	private final int maxRunning;
+	private final int maxQueued;
+
+	public UserQuota(int weight, int maxRunning, int maxQueued)
+	{
+		checkArgument(weight > 0, "The weight of a user must be greater than zero");
+		checkArgument(maxRunning > 0, "The maximum number of running tasks of a user must be greater than zero");
+		checkArgument(maxQueued >= 0, "The maximum number of queued tasks of a user cannot be negative");
+
+		this.weight = weight;
+		this.maxRunning = maxRunning;
+		this.maxQueued = maxQueued;
+	}
+
+	/**
+	 * @return the quota configured for the given user
+	 */
+	public static UserQuota of(String user)
+	{
+		return new UserQuota(
+				property(user, "weight", 1),
+				property(user, "max.running", Integer.MAX_VALUE),
+				property(user, "max.queued", 100_000));
+	}
+
+	private static int property(String user, String name, int defaultValue)
+	{
+		return getIntegerProperty(format("%s.%s.%s", PREFIX, user, name),
+				getIntegerProperty(format("%s.%s", PREFIX, name), defaultValue));
+	}
+
+	/**
+	 * @return the user's share of the scheduler relative to the other users with tasks waiting
+	 */
+	public int getWeight()
+	{
+		return weight;
+	}
+
+	public int getMaxRunning()
+	{
+		return maxRunning;
+	}
+
+	public int getMaxQueued()
+	{
+		return maxQueued;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("weight", weight)
+				.add("max running", maxRunning)
+				.add("max queued", maxQueued)
+				.toString();
+	}
+}
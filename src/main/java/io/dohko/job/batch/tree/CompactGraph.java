@@ -0,0 +1,271 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.tree;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * A directed graph whose nodes are the integers {@code 0 .. size() - 1}, stored as primitive arrays in compressed sparse
+ * row (CSR) form: the children of node {@code n} are {@code children[childOffsets[n] .. childOffsets[n + 1])}, and
+ * likewise for its parents. A graph with n nodes and e edges takes {@code 8 (n + 1) + 8 e} bytes, so one million nodes
+ * with one parent each fit in 16 MB.
+ *
+ * <p>
+ * Unlike {@link TreeNode}, which keeps an object per node, a node may have several parents. Neighbours are visited with
+ * {@link #forEachChild(int, IntConsumer)} or a reusable {@link Cursor}, neither of which allocates.
+ * <p>
+ * It backs the execution plans, from which the launcher starts the steps of a job by their index, so a running job keeps
+ * a step and a command builder per task but no node object.
+ */
+@Immutable
+public final class CompactGraph
+{
+	private final int size;
+	private final int[] childOffsets;
+	private final int[] children;
+	private final int[] parentOffsets;
+	private final int[] parents;
+
+	private CompactGraph(int size, int[] childOffsets, int[] children, int[] parentOffsets, int[] parents)
+	{
+		this.size = size;
+		this.childOffsets = childOffsets;
+		this.children = children;
+		this.parentOffsets = parentOffsets;
+		this.parents = parents;
+	}
+
+	/**
+	 * @param size the number of nodes of the graph
+	 * @return a builder for a graph with the given number of nodes
+	 */
+	public static Builder builder(int size)
+	{
+		return new Builder(size);
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the number of edges
+	 */
+	public int edges()
+	{
+		return children.length;
+	}
+
+	public int childCount(int node)
+	{
+		return childOffsets[node + 1] - childOffsets[node];
+	}
+
+	public int child(int node, int index)
+	{
+		checkElementIndex(index, childCount(node));
+		return children[childOffsets[node] + index];
+	}
+
+	public int parentCount(int node)
+	{
+		return parentOffsets[node + 1] - parentOffsets[node];
+	}
+
+	/**
+	 * @return the parent at the given position. The parents of a node keep the order their edges were added in
+	 */
+	public int parent(int node, int index)
+	{
+		checkElementIndex(index, parentCount(node));
+		return parents[parentOffsets[node] + index];
+	}
+
+	public boolean isRoot(int node)
+	{
+		return parentCount(node) == 0;
+	}
+
+	public boolean isLeaf(int node)
+	{
+		return childCount(node) == 0;
+	}
+
+	public void forEachChild(int node, IntConsumer action)
+	{
+		for (int i = childOffsets[node], end = childOffsets[node + 1]; i < end; i++)
+		{
+			action.accept(children[i]);
+		}
+	}
+
+	public void forEachParent(int node, IntConsumer action)
+	{
+		for (int i = parentOffsets[node], end = parentOffsets[node + 1]; i < end; i++)
+		{
+			action.accept(parents[i]);
+		}
+	}
+
+	/**
+	 * Positions the given cursor over the children of a node.
+	 * @param node the node whose children to visit
+	 * @param cursor the cursor to reuse
+	 * @return the cursor
+	 */
+	public Cursor children(int node, Cursor cursor)
+	{
+		return cursor.reset(children, childOffsets[node], childOffsets[node + 1]);
+	}
+
+	/**
+	 * Positions the given cursor over the parents of a node.
+	 * @param node the node whose parents to visit
+	 * @param cursor the cursor to reuse
+	 * @return the cursor
+	 */
+	public Cursor parents(int node, Cursor cursor)
+	{
+		return cursor.reset(parents, parentOffsets[node], parentOffsets[node + 1]);
+	}
+
+	/**
+	 * @return the number of bytes taken by the arrays of this graph
+	 */
+	public long sizeInBytes()
+	{
+		return 4L * (childOffsets.length + children.length + parentOffsets.length + parents.length);
+	}
+
+	/**
+	 * A primitive iterator over the neighbours of a node. It can be repositioned with {@link CompactGraph#children(int, Cursor)}
+	 * or {@link CompactGraph#parents(int, Cursor)} to walk a whole graph without allocating.
+	 */
+	@NotThreadSafe
+	public static final class Cursor
+	{
+		private int[] values = new int[0];
+		private int position;
+		private int end;
+
+		Cursor reset(int[] values, int from, int to)
+		{
+			this.values = values;
+			this.position = from;
+			this.end = to;
+
+			return this;
+		}
+
+		public boolean hasNext()
+		{
+			return position < end;
+		}
+
+		public int next()
+		{
+			if (position >= end)
+			{
+				throw new NoSuchElementException();
+			}
+
+			return values[position++];
+		}
+	}
+
+	@NotThreadSafe
+	public static final class Builder
+	{
+		private final int size;
+		private int[] from = new int[16];
+		private int[] to = new int[16];
+		private int edges;
+
+		private Builder(int size)
+		{
+			checkArgument(size >= 0, "The size of the graph must be positive");
+			this.size = size;
+		}
+
+		/**
+		 * Adds an edge from a parent to a child.
+		 */
+		public Builder addEdge(int parent, int child)
+		{
+			checkElementIndex(parent, size);
+			checkElementIndex(child, size);
+
+			if (edges == from.length)
+			{
+				from = Arrays.copyOf(from, edges * 2);
+				to = Arrays.copyOf(to, edges * 2);
+			}
+
+			from[edges] = parent;
+			to[edges] = child;
+			edges++;
+
+			return this;
+		}
+
+		/**
+		 * Builds the graph with a counting sort of the edges, in O(n + e).
+		 */
+		public CompactGraph build()
+		{
+			int[] childOffsets = new int[size + 1];
+			int[] parentOffsets = new int[size + 1];
+
+			for (int e = 0; e < edges; e++)
+			{
+				childOffsets[from[e] + 1]++;
+				parentOffsets[to[e] + 1]++;
+			}
+
+			for (int n = 0; n < size; n++)
+			{
+				childOffsets[n + 1] += childOffsets[n];
+				parentOffsets[n + 1] += parentOffsets[n];
+			}
+
+			int[] children = new int[edges];
+			int[] parents = new int[edges];
+			int[] nextChild = Arrays.copyOf(childOffsets, size);
+			int[] nextParent = Arrays.copyOf(parentOffsets, size);
+
+			for (int e = 0; e < edges; e++)
+			{
+				children[nextChild[from[e]]++] = to[e];
+				parents[nextParent[to[e]]++] = from[e];
+			}
+
+			return new CompactGraph(size, childOffsets, children, parentOffsets, parents);
+		}
+	}
+}
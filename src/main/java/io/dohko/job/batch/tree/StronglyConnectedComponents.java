@@ -0,0 +1,138 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the cycles of a {@link CompactGraph} with an iterative version of Tarjan's strongly connected components
+ * algorithm, in O(n + e) and without recursion.
+ */
+public final class StronglyConnectedComponents
+{
+	private StronglyConnectedComponents()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns every strongly connected component that contains a cycle, that is, those with more than one node and the
+	 * nodes with an edge to themselves.
+	 * @param graph the graph to search
+	 * @return the nodes of each cycle, sorted by node id. It is empty when the graph is acyclic
+	 */
+	public static List<int[]> cycles(CompactGraph graph)
+	{
+		final int n = graph.size();
+		final int[] index = new int[n];
+		final int[] low = new int[n];
+		final boolean[] onStack = new boolean[n];
+		final int[] stack = new int[n];
+		final int[] callNode = new int[n];
+		final int[] callEdge = new int[n];
+		final List<int[]> cycles = new ArrayList<>();
+
+		Arrays.fill(index, -1);
+		int counter = 0;
+		int sp = 0;
+
+		for (int root = 0; root < n; root++)
+		{
+			if (index[root] >= 0)
+			{
+				continue;
+			}
+
+			int csp = 0;
+			index[root] = low[root] = counter++;
+			stack[sp++] = root;
+			onStack[root] = true;
+			callNode[csp] = root;
+			callEdge[csp++] = 0;
+
+			while (csp > 0)
+			{
+				int v = callNode[csp - 1];
+
+				if (callEdge[csp - 1] < graph.childCount(v))
+				{
+					int w = graph.child(v, callEdge[csp - 1]++);
+
+					if (index[w] < 0)
+					{
+						index[w] = low[w] = counter++;
+						stack[sp++] = w;
+						onStack[w] = true;
+						callNode[csp] = w;
+						callEdge[csp++] = 0;
+					}
+					else if (onStack[w])
+					{
+						low[v] = Math.min(low[v], index[w]);
+					}
+
+					continue;
+				}
+
+				csp--;
+
+				if (low[v] == index[v])
+				{
+					int from = sp;
+
+					do
+					{
+						onStack[stack[--from]] = false;
+					}
+					while (stack[from] != v);
+
+					if (sp - from > 1 || hasSelfLoop(graph, v))
+					{
+						int[] component = Arrays.copyOfRange(stack, from, sp);
+						Arrays.sort(component);
+						cycles.add(component);
+					}
+
+					sp = from;
+				}
+
+				if (csp > 0)
+				{
+					int u = callNode[csp - 1];
+					low[u] = Math.min(low[u], low[v]);
+				}
+			}
+		}
+
+		return cycles;
+	}
+
+	private static boolean hasSelfLoop(CompactGraph graph, int node)
+	{
+		for (int i = 0; i < graph.childCount(node); i++)
+		{
+			if (graph.child(node, i) == node)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -17,11 +17,16 @@
 package io.dohko.job.batch.tree;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class Tree<T> 
+public class Tree<T> implements Iterable<TreeNode<T>>
 {
     private TreeNode<T> root;
 
@@ -56,21 +61,9 @@ public class Tree<T>
     {
         int numberOfNodes = 0;
 
-		if (root != null) 
-        {
-            numberOfNodes = auxiliaryGetNumberOfNodes(root) + 1; //1 for the root!
-        }
-
-        return numberOfNodes;
-    }
-
-    private int auxiliaryGetNumberOfNodes(TreeNode<T> node) 
-    {
-        int numberOfNodes = node.getNumberOfChildren();
-
-        for (TreeNode<T> child : node.getChildren()) 
+        for (Iterator<TreeNode<T>> iter = iterator(); iter.hasNext(); iter.next())
         {
-            numberOfNodes += auxiliaryGetNumberOfNodes(child);
+            numberOfNodes++;
         }
 
         return numberOfNodes;
@@ -83,43 +76,50 @@ public class Tree<T>
 
     public TreeNode<T> find(T dataToFind) 
     {
-        TreeNode<T> returnNode = null;
-
-        if(root != null) 
+        for (TreeNode<T> node : this)
         {
-            returnNode = auxiliaryFind(root, dataToFind);
+            if (node.getData().equals(dataToFind))
+            {
+                return node;
+            }
         }
 
-        return returnNode;
+        return null;
     }
 
-    private TreeNode<T> auxiliaryFind(TreeNode<T> currentNode, T dataToFind) 
+    public boolean isEmpty() 
     {
-        TreeNode<T> returnNode = null;
-        int i = 0;
+        return root == null;
+    }
 
-		if (currentNode.getData().equals(dataToFind)) 
-        {
-            returnNode = currentNode;
-        }
+    /**
+     * Returns a lazy pre-order iterator over the nodes of this tree.
+     */
+    @Override
+    public Iterator<TreeNode<T>> iterator()
+    {
+        return iterator(TreeTraversalOrderType.PRE_ORDER);
+    }
 
-        else if(currentNode.hasChildren()) 
-        {
-            i = 0;
-            
-			while (returnNode == null && i < currentNode.getNumberOfChildren()) 
-			{
-                returnNode = auxiliaryFind(currentNode.getChildAt(i), dataToFind);
-                i++;
-            }
-        }
+    public TreeIterator<T> iterator(TreeTraversalOrderType traversalOrder)
+    {
+        return iterator(root, traversalOrder);
+    }
 
-        return returnNode;
+    public TreeIterator<T> iterator(TreeNode<T> node, TreeTraversalOrderType traversalOrder)
+    {
+        return new TreeIterator<>(node, traversalOrder);
     }
 
-    public boolean isEmpty() 
+    public Stream<TreeNode<T>> stream(TreeTraversalOrderType traversalOrder)
     {
-        return root == null;
+        return stream(root, traversalOrder);
+    }
+
+    public Stream<TreeNode<T>> stream(TreeNode<T> node, TreeTraversalOrderType traversalOrder)
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(node, traversalOrder),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
     }
 
     public List<TreeNode<T>> build(TreeTraversalOrderType traversalOrder) 
@@ -137,43 +137,11 @@ public class Tree<T>
     public List<TreeNode<T>> build(TreeNode<T> node, TreeTraversalOrderType traversalOrder) 
     {
         List<TreeNode<T>> traversalResult = new ArrayList<TreeNode<T>>();
-        
-		switch (traversalOrder) 
-		{
-		
-		case PRE_ORDER:
-			buildPreOrder(node, traversalResult);
-			break;
-		case POST_ORDER:
-			buildPostOrder(node, traversalResult);
-			break;
-		default:
-			throw new IllegalStateException();
-		}
+        iterator(node, traversalOrder).forEachRemaining(traversalResult::add);
 
         return traversalResult;
     }
 
-    private void buildPreOrder(TreeNode<T> node, List<TreeNode<T>> traversalResult) 
-    {
-        traversalResult.add(node);
-
-		for (TreeNode<T> child : node.getChildren()) 
-        {
-            buildPreOrder(child, traversalResult);
-        }
-    }
-
-    private void buildPostOrder(TreeNode<T> node, List<TreeNode<T>> traversalResult) 
-    {
-		for (TreeNode<T> child : node.getChildren()) 
-        {
-            buildPostOrder(child, traversalResult);
-        }
-
-        traversalResult.add(node);
-    }
-
     public Map<TreeNode<T>, Integer> buildWithDepth(TreeTraversalOrderType traversalOrder) 
     {
         Map<TreeNode<T>, Integer> returnMap = null;
@@ -189,39 +157,17 @@ public class Tree<T>
     public Map<TreeNode<T>, Integer> buildWithDepth(TreeNode<T> node, TreeTraversalOrderType traversalOrder) 
     {
         Map<TreeNode<T>, Integer> traversalResult = new LinkedHashMap<TreeNode<T>, Integer>();
+        TreeIterator<T> iter = iterator(node, traversalOrder);
 
-		if (traversalOrder == TreeTraversalOrderType.PRE_ORDER) 
-        {
-            buildPreOrderWithDepth(node, traversalResult, 0);
-        }
-		else if (traversalOrder == TreeTraversalOrderType.POST_ORDER) 
+        while (iter.hasNext())
         {
-            buildPostOrderWithDepth(node, traversalResult, 0);
+            TreeNode<T> next = iter.next();
+            traversalResult.put(next, iter.depth());
         }
 
         return traversalResult;
     }
 
-    private void buildPreOrderWithDepth(TreeNode<T> node, Map<TreeNode<T>, Integer> traversalResult, int depth) 
-    {
-        traversalResult.put(node, depth);
-
-		for (TreeNode<T> child : node.getChildren()) 
-		{
-            buildPreOrderWithDepth(child, traversalResult, depth + 1);
-        }
-    }
-
-    private void buildPostOrderWithDepth(TreeNode<T> node, Map<TreeNode<T>, Integer> traversalResult, int depth) 
-    {
-		for (TreeNode<T> child : node.getChildren()) 
-		{
-            buildPostOrderWithDepth(child, traversalResult, depth + 1);
-        }
-
-        traversalResult.put(node, depth);
-    }
-
     public String toString() 
     {
         /*
@@ -0,0 +1,148 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.tree;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Lazily walks a tree in pre-order or post-order with an explicit stack, so the depth of the tree is only bounded by the
+ * heap. The children of a node are read when the traversal reaches it. The stack is kept in parallel arrays indexed by
+ * depth, which only grow with the deepest path, so the traversal does not allocate per node.
+ */
+@NotThreadSafe
+public final class TreeIterator<T> implements Iterator<TreeNode<T>>
+{
+    private final TreeTraversalOrderType order;
+
+    private TreeNode<?>[] nodes = new TreeNode<?>[16];
+    private int[] nextChild = new int[16];
+    private boolean[] visited = new boolean[16];
+    private int top = -1;
+
+    private TreeNode<T> next;
+    private int nextDepth;
+    private int depth = -1;
+
+    public TreeIterator(TreeNode<T> root, TreeTraversalOrderType order)
+    {
+        this.order = requireNonNull(order);
+
+        if (root != null)
+        {
+            push(root);
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (next == null)
+        {
+            next = computeNext();
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public TreeNode<T> next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        TreeNode<T> node = next;
+        next = null;
+        depth = nextDepth;
+
+        return node;
+    }
+
+    /**
+     * @return the depth of the node last returned by {@link #next()}, where the first node has depth zero
+     */
+    public int depth()
+    {
+        return depth;
+    }
+
+    private TreeNode<T> computeNext()
+    {
+        while (top >= 0)
+        {
+            TreeNode<T> node = nodeAt(top);
+
+            if (!visited[top])
+            {
+                visited[top] = true;
+
+                if (order == TreeTraversalOrderType.PRE_ORDER)
+                {
+                    nextDepth = top;
+                    return node;
+                }
+            }
+
+            List<TreeNode<T>> children = node.childList();
+
+            if (nextChild[top] < children.size())
+            {
+                push(children.get(nextChild[top]++));
+            }
+            else
+            {
+                nodes[top] = null;
+                nextDepth = top--;
+
+                if (order == TreeTraversalOrderType.POST_ORDER)
+                {
+                    return node;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private void push(TreeNode<T> node)
+    {
+        if (++top == nodes.length)
+        {
+            nodes = Arrays.copyOf(nodes, top * 2);
+            nextChild = Arrays.copyOf(nextChild, top * 2);
+            visited = Arrays.copyOf(visited, top * 2);
+        }
+
+        nodes[top] = node;
+        nextChild[top] = 0;
+        visited[top] = false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TreeNode<T> nodeAt(int depth)
+    {
+        return (TreeNode<T>) nodes[depth];
+    }
+}
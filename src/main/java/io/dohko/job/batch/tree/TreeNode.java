@@ -57,14 +57,22 @@ public class TreeNode<T>
     	return getChildren();
     }
 
+    /**
+     * Returns the children without copying them. Only {@link Tree}'s traversals use it.
+     */
+    List<TreeNode<T>> childList()
+    {
+        return this.children;
+    }
+
     public int getNumberOfChildren() 
     {
-        return getChildren().size();
+        return children.size();
     }
 
     public boolean hasChildren() 
     {
-        return getNumberOfChildren() > 0;
+        return !children.isEmpty();
     }
 
     public void setChildren(List<TreeNode<T>> children) 
@@ -0,0 +1,142 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.worker;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import io.airlift.command.CommandResult;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.UUID.randomUUID;
+
+/**
+ * A long-lived {@code bash} process that runs commands sent through its standard input. Each command runs in a subshell
+ * of the worker, so changes to the environment, the working directory or shell options made by a command do not leak to
+ * the next one. A subshell is a plain {@code fork} of the worker and it is much cheaper than starting a new process from
+ * the JVM.
+ */
+@NotThreadSafe
+final class ShellWorker implements Closeable
+{
+	private final Process process;
+	private final Writer input;
+	private final BufferedReader output;
+	private int executions;
+
+	ShellWorker() throws IOException
+	{
+		this.process = new ProcessBuilder("bash", "--noprofile", "--norc").redirectErrorStream(true).start();
+		this.input = new OutputStreamWriter(process.getOutputStream(), UTF_8);
+		this.output = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8));
+	}
+
+	/**
+	 * Runs a script and waits for its completion.
+	 * @param id the id of the command
+	 * @param script the script to execute
+	 * @param environment the variables to export for the script only
+	 * @param onStart called with the pid of the subshell once the script starts
+	 * @param onLine called with each line of the script's output as it is read
+	 * @return the result of the script, with the standard error merged into its output
+	 * @throws IOException if the worker died
+	 */
+	CommandResult execute(String id, String script, Map<String, String> environment, LongConsumer onStart,
+			Consumer<String> onLine) throws IOException
+	{
+		executions++;
+
+		final String token = randomUUID().toString().replace("-", "");
+		final String pidMarker = "__dohko_pid_" + token + " ";
+		final String doneMarker = "__dohko_done_" + token + " ";
+		final long start = System.nanoTime();
+
+		StringBuilder exports = new StringBuilder();
+		environment.forEach((name, value) -> exports.append(format("export %s=%s; ", name, quote(value))));
+
+		// the script is passed through a quoted here-document, so it is not expanded before the eval
+		input.write(format("IFS= read -r -d '' __dohko_script <<'__dohko_eof_%s'\n", token));
+		input.write(script);
+		input.write(format("\n__dohko_eof_%s\n", token));
+		input.write(format("( echo \"%s$BASHPID\"; %s eval \"$__dohko_script\" ) </dev/null 2>&1; printf '\\n%s%%d\\n' $?\n",
+				pidMarker, exports, doneMarker));
+		input.flush();
+
+		Long pid = null;
+		StringBuilder result = new StringBuilder();
+		boolean first = true;
+		String line;
+
+		while ((line = output.readLine()) != null)
+		{
+			if (pid == null && line.startsWith(pidMarker))
+			{
+				pid = Long.valueOf(line.substring(pidMarker.length()).trim());
+				onStart.accept(pid);
+			}
+			else if (line.startsWith(doneMarker))
+			{
+				int exitCode = Integer.parseInt(line.substring(doneMarker.length()).trim());
+				return new CommandResult(id, pid, exitCode, result.toString(), (System.nanoTime() - start) / 1_000_000);
+			}
+			else
+			{
+				if (!first)
+				{
+					result.append('\n');
+				}
+
+				result.append(line);
+				first = false;
+				onLine.accept(line);
+			}
+		}
+
+		throw new IOException(format("the worker exited while running the command [%s]", id));
+	}
+
+	int executions()
+	{
+		return executions;
+	}
+
+	boolean isAlive()
+	{
+		return process.isAlive();
+	}
+
+	@Override
+	public void close()
+	{
+		process.destroyForcibly();
+	}
+
+	private static String quote(String value)
+	{
+		return "'" + value.replace("'", "'\\''") + "'";
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.worker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.airlift.command.CommandResult;
+
+import static org.excalibur.core.util.SystemUtils2.getIntegerProperty;
+
+/**
+ * A pool of pre-forked {@link ShellWorker}s that run short tasks without starting a new process tree from the JVM.
+ * <p>
+ * The pool is enabled by the system property {@code org.excalibur.worker.pool.enabled}. It keeps up to
+ * {@code org.excalibur.worker.pool.size} workers (by default the number of processors) and retires a worker after it has
+ * run {@code org.excalibur.worker.max.tasks} commands. Workers are started ahead of time and replaced as they retire.
+ */
+public class ShellWorkerPool implements Closeable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ShellWorkerPool.class);
+
+	private static final ShellWorkerPool DISABLED = new ShellWorkerPool(0, 0);
+
+	private final BlockingQueue<ShellWorker> idle = new LinkedBlockingQueue<>();
+	private final Semaphore permits;
+	private final int size;
+	private final int maxExecutions;
+	private volatile boolean closed;
+
+	ShellWorkerPool(int size, int maxExecutions)
+	{
+		this.size = size;
+		this.maxExecutions = maxExecutions;
+		this.permits = new Semaphore(size, true);
+	}
+
+	public static ShellWorkerPool create()
+	{
+		if (!Boolean.getBoolean("org.excalibur.worker.pool.enabled"))
+		{
+			return DISABLED;
+		}
+
+		ShellWorkerPool pool = new ShellWorkerPool(
+				getIntegerProperty("org.excalibur.worker.pool.size", Runtime.getRuntime().availableProcessors()),
+				getIntegerProperty("org.excalibur.worker.max.tasks", 1000));
+
+		pool.prestart();
+
+		return pool;
+	}
+
+	public boolean isEnabled()
+	{
+		return size > 0 && !closed;
+	}
+
+	/**
+	 * Runs a script on one of the workers, waiting for a worker to become available.
+	 * @see ShellWorker#execute(String, String, Map, LongConsumer, Consumer)
+	 */
+	public CommandResult execute(String id, String script, Map<String, String> environment, LongConsumer onStart)
+			throws IOException, InterruptedException
+	{
+		return execute(id, script, environment, onStart, line -> { });
+	}
+
+	/**
+	 * Runs a script on one of the workers, passing each line of its output to {@code onLine} as it is read.
+	 * @see ShellWorker#execute(String, String, Map, LongConsumer, Consumer)
+	 */
+	public CommandResult execute(String id, String script, Map<String, String> environment, LongConsumer onStart,
+			Consumer<String> onLine) throws IOException, InterruptedException
+	{
+		permits.acquire();
+
+		ShellWorker worker = null;
+
+		try
+		{
+			worker = acquire();
+			CommandResult result = worker.execute(id, script, environment, onStart, onLine);
+			release(worker);
+			worker = null;
+
+			return result;
+		}
+		finally
+		{
+			if (worker != null)
+			{
+				// the worker failed or the thread was interrupted while the command was running
+				worker.close();
+			}
+
+			permits.release();
+		}
+	}
+
+	private ShellWorker acquire() throws IOException
+	{
+		ShellWorker worker;
+
+		while ((worker = idle.poll()) != null && !worker.isAlive())
+		{
+			worker.close();
+		}
+
+		return worker != null ? worker : new ShellWorker();
+	}
+
+	private void release(ShellWorker worker)
+	{
+		if (closed || !worker.isAlive() || worker.executions() >= maxExecutions)
+		{
+			worker.close();
+			replenish();
+		}
+		else
+		{
+			idle.offer(worker);
+		}
+	}
+
+	private void prestart()
+	{
+		for (int i = 0; i < size; i++)
+		{
+			replenish();
+		}
+
+		LOG.info("Started [{}] shell workers", idle.size());
+	}
+
+	private void replenish()
+	{
+		if (closed || idle.size() >= size)
+		{
+			return;
+		}
+
+		try
+		{
+			idle.offer(new ShellWorker());
+		}
+		catch (IOException exception)
+		{
+			LOG.warn("Could not start a shell worker: {}", exception.getMessage());
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		closed = true;
+
+		ShellWorker worker;
+
+		while ((worker = idle.poll()) != null)
+		{
+			worker.close();
+		}
+	}
+}
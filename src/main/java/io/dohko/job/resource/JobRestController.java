@@ -16,8 +16,20 @@
  */
 package io.dohko.job.resource;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.excalibur.core.domain.User;
 import org.excalibur.core.execution.domain.Application;
@@ -27,22 +39,37 @@ import org.excalibur.core.execution.domain.TaskOutput;
 import org.excalibur.core.execution.domain.TaskStats;
 import org.excalibur.core.execution.domain.TaskStatus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 
+import io.dohko.job.batch.ApplicationDescriptorReader;
+import io.dohko.job.batch.JobDeadlineStatus;
 import io.dohko.job.batch.JobService;
+import io.dohko.job.batch.JobSubmissionResult;
+import io.dohko.job.batch.TaskSuspensions;
+import io.dohko.job.batch.scheduler.QuotaExceededException;
+import io.dohko.job.batch.scheduler.SubmissionTooLargeException;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 
 import static com.google.common.base.Preconditions.checkState;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
 @RestController
@@ -50,23 +77,220 @@ import static java.util.Objects.requireNonNull;
 @Api(value = "jobs", tags = "Job API")
 public class JobRestController 
 {
+	private static final String NDJSON = "application/x-ndjson";
+	private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+	private static final String RETRY_AFTER = "Retry-After";
+	private static final String DEADLINE = "deadline";
+	
 	private final JobService service;
+	private final ObjectMapper mapper;
 
 	@Autowired
-	public JobRestController(JobService service)
+	public JobRestController(JobService service, ObjectMapper mapper)
 	{
 		this.service = service;
+		this.mapper = mapper;
 	}
 		
 	@RequestMapping(method = RequestMethod.POST, produces = {"application/json"})
 	@ResponseStatus(HttpStatus.CREATED)
-	@ApiOperation(value = "Creates and schedules a new job based on a given job's description", response = JobStatus.class)
-	public @ResponseBody JobStatus create(@PathVariable("username") String user, @RequestBody ApplicationDescriptor job)
+	@ApiOperation(value = "Creates and schedules a new job based on a given job's description. A retried request with the same Idempotency-Key returns the job created by the first one. A job with a deadline, in milliseconds since the epoch or as an ISO-8601 instant, runs before the jobs without one", response = JobStatus.class)
+	public @ResponseBody JobStatus create(@PathVariable("username") String user, @RequestBody ApplicationDescriptor job,
+			@RequestHeader(value = IDEMPOTENCY_KEY, required = false) String submissionKey,
+			@RequestParam(value = DEADLINE, required = false) String deadline)
+	{
+		checkOwner(user, job);
+		JobStatus status = service.create(job, submissionKey, parseDeadline(deadline));
+		return status;
+	}
+	
+	@RequestMapping(value = "/stream", method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
+	@ResponseStatus(HttpStatus.CREATED)
+	@ApiOperation(value = "Creates and schedules a new job reading its description as a stream. The job's fields must come before its applications and blocks", response = JobStatus.class)
+	public @ResponseBody JobStatus createFromStream(@PathVariable("username") String user, InputStream body,
+			@RequestParam(value = DEADLINE, required = false) String deadline) throws IOException
+	{
+		try (ApplicationDescriptorReader reader = new ApplicationDescriptorReader(mapper, body))
+		{
+			ApplicationDescriptor job = reader.readHeader();
+			checkOwner(user, job);
+			
+			return service.create(job, reader, parseDeadline(deadline));
+		}
+	}
+	
+	@RequestMapping(value = "/bulk", method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
+	@ResponseStatus(HttpStatus.OK)
+	@ApiOperation(value = "Creates and schedules a list of jobs. Each job is created or rejected on its own", response = JobSubmissionResult.class, responseContainer = "List")
+	public @ResponseBody List<JobSubmissionResult> createAll(@PathVariable("username") String user, @RequestBody List<ApplicationDescriptor> jobs)
+	{
+		return service.create(jobs, job -> checkOwner(user, job));
+	}
+	
+	@RequestMapping(value = "/bulk", method = RequestMethod.POST, consumes = {NDJSON}, produces = {NDJSON})
+	@ResponseStatus(HttpStatus.OK)
+	@ApiOperation(value = "Creates and schedules the jobs of a newline-delimited JSON stream, one job per line. Each job is created or rejected on its own. The jobs are created in batches as their lines are read, and the result of each job is written back, one per line, as soon as its batch is stored", response = JobSubmissionResult.class, responseContainer = "List")
+	public void createAll(@PathVariable("username") String user, InputStream body, OutputStream response) throws IOException
+	{
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, UTF_8)))
+		{
+			NdjsonJobs jobs = new NdjsonJobs(reader);
+			
+			service.create(jobs, job -> checkOwner(user, job), results -> 
+			{
+				try
+				{
+					for (JobSubmissionResult result : results)
+					{
+						String error = jobs.malformed.remove(result.getIndex());
+						response.write(mapper.writeValueAsBytes(
+								error != null ? JobSubmissionResult.rejected(result.getIndex(), error) : result));
+						response.write('\n');
+					}
+					
+					response.flush();
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Reads the jobs of a newline-delimited JSON stream one line at a time, as they are pulled. A malformed line is returned
+	 * as a {@code null} job, and its error is kept until its result is written.
+	 */
+	private final class NdjsonJobs implements Iterator<ApplicationDescriptor>
+	{
+		final Map<Integer, String> malformed = new HashMap<>();
+		private final BufferedReader reader;
+		private String line;
+		private int index;
+		
+		NdjsonJobs(BufferedReader reader)
+		{
+			this.reader = reader;
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			try
+			{
+				while (line == null)
+				{
+					line = reader.readLine();
+					
+					if (line == null)
+					{
+						return false;
+					}
+					
+					if (line.trim().isEmpty())
+					{
+						line = null;
+					}
+				}
+				
+				return true;
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		@Override
+		public ApplicationDescriptor next()
+		{
+			if (!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			
+			String current = line;
+			line = null;
+			
+			try
+			{
+				return mapper.readValue(current, ApplicationDescriptor.class);
+			}
+			catch (JsonProcessingException e)
+			{
+				malformed.put(index, format("Malformed job description: %s", e.getOriginalMessage()));
+				return null;
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			finally
+			{
+				index++;
+			}
+		}
+	}
+	
+	/**
+	 * Replies to submissions that do not fit in the scheduler with {@code 429}, and with the estimated seconds until they
+	 * would in the {@code Retry-After} header.
+	 */
+	@ExceptionHandler(QuotaExceededException.class)
+	public ResponseEntity<String> quotaExceeded(QuotaExceededException e)
+	{
+		HttpHeaders headers = new HttpHeaders();
+		e.getRetryAfter().ifPresent(seconds -> headers.set(RETRY_AFTER, String.valueOf(seconds)));
+		
+		return new ResponseEntity<>(e.getMessage(), headers, HttpStatus.TOO_MANY_REQUESTS);
+	}
+	
+	/**
+	 * Replies to submissions with more tasks than the scheduler can ever hold with {@code 413}, without a
+	 * {@code Retry-After}, as retrying them cannot succeed.
+	 */
+	@ExceptionHandler(SubmissionTooLargeException.class)
+	public ResponseEntity<String> submissionTooLarge(SubmissionTooLargeException e)
+	{
+		return new ResponseEntity<>(e.getMessage(), HttpStatus.PAYLOAD_TOO_LARGE);
+	}
+	
+	/**
+	 * @return the deadline given in milliseconds since the epoch or as an ISO-8601 instant, or {@code null} if there is none
+	 */
+	private static Long parseDeadline(String deadline)
+	{
+		if (deadline == null || deadline.trim().isEmpty())
+		{
+			return null;
+		}
+		
+		try
+		{
+			return Long.valueOf(deadline.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			try
+			{
+				return Instant.parse(deadline.trim()).toEpochMilli();
+			}
+			catch (DateTimeParseException dtpe)
+			{
+				throw new IllegalArgumentException(format("Invalid deadline: %s", deadline), dtpe);
+			}
+		}
+	}
+	
+	private static void checkOwner(String user, ApplicationDescriptor job)
 	{
 		requireNonNull(job.getUser(), "job's username is undefined");
 		checkState(user.equals(job.getUser().getUsername()), "job's user and resource's user are different");
-		JobStatus status = service.create(job);
-		return status;
 	}
 	
 	@RequestMapping(value = "{jobId}", method = RequestMethod.GET, produces = { "application/json" })
@@ -83,6 +307,14 @@ public class JobRestController
 		return service.getJobTaskStatuses(jobId).or(new JobStatus().setId(jobId));
 	}
 	
+	@RequestMapping(value = "/{jobId}/deadline", method = RequestMethod.GET, produces = { "application/json" })
+	@ResponseStatus(HttpStatus.OK)
+	@ApiOperation(value = "Returns when a job with a deadline is expected to finish and whether it is at risk of missing it", response = JobDeadlineStatus.class)
+	public @ResponseBody JobDeadlineStatus getDeadlineStatus(@PathVariable("username") String user, @PathVariable("jobId") String jobId)
+	{
+		return service.getDeadlineStatus(jobId).orNull();
+	}
+	
 	@RequestMapping(value = "/{jobId}/tasks", method = RequestMethod.GET, produces = { "application/json" })
 	@ResponseStatus(HttpStatus.OK)
 	public @ResponseBody List<Application> jobTasklets(@PathVariable("username") String user, @PathVariable("jobId") String jobId)
@@ -104,6 +336,22 @@ public class JobRestController
     	return service.getTaskStats(taskId).or(new TaskStats(taskId, new ArrayList<>(), new ArrayList<>()));
     }
 	
+	@RequestMapping(value = "/{jobId}/task/{taskId}/suspensions",  method = RequestMethod.GET, produces = {"application/json"})
+	@ResponseStatus(HttpStatus.OK)
+	@ApiOperation(value = "Returns how long a task was suspended to run tasks of a higher priority. This time is not part of its run time", response = TaskSuspensions.class)
+	public @ResponseBody TaskSuspensions suspensions(@PathVariable("username") String user, @PathVariable("jobId") String jobId, @PathVariable("taskId") final String taskId)
+	{
+		return service.getTaskSuspensions(taskId);
+	}
+	
+	@RequestMapping(value = "/{jobId}/task/{taskId}/metadata",  method = RequestMethod.GET, produces = {"application/json"})
+	@ResponseStatus(HttpStatus.OK)
+	@ApiOperation(value = "Returns what was recorded about how a task was run, such as the cores and NUMA node it was pinned to or which of its attempts won")
+	public @ResponseBody Map<String, String> metadata(@PathVariable("username") String user, @PathVariable("jobId") String jobId, @PathVariable("taskId") final String taskId)
+	{
+		return service.getTaskMetadata(taskId);
+	}
+	
 	@RequestMapping(value = "/{jobId}/task/{taskId}/output",  method = RequestMethod.GET, produces = {"application/json"})
 	@ResponseStatus(HttpStatus.OK)
 	public @ResponseBody ImmutableList<TaskOutput> output(@PathVariable("username") String user, @PathVariable("jobId") final String jobId, @PathVariable("taskId") final String taskId)
@@ -0,0 +1,62 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.resource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.dohko.job.batch.JobService;
+import io.dohko.job.batch.scheduler.SchedulerState;
+import io.dohko.job.batch.scheduler.UserQueueState;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+
+@RestController
+@RequestMapping(value = "/scheduler")
+@Api(value = "scheduler", tags = "Scheduler API")
+public class SchedulerRestController 
+{
+	private final JobService service;
+
+	@Autowired
+	public SchedulerRestController(JobService service)
+	{
+		this.service = service;
+	}
+	
+	@RequestMapping(method = RequestMethod.GET, produces = {"application/json"})
+	@ResponseStatus(HttpStatus.OK)
+	@ApiOperation(value = "Returns the running tasks and the queue of each user", response = SchedulerState.class)
+	public @ResponseBody SchedulerState state()
+	{
+		return service.getSchedulerState();
+	}
+	
+	@RequestMapping(value = "/queues/{username}", method = RequestMethod.GET, produces = {"application/json"})
+	@ResponseStatus(HttpStatus.OK)
+	@ApiOperation(value = "Returns the quota, the running tasks and the queued tasks of a user", response = UserQueueState.class)
+	public @ResponseBody UserQueueState queue(@PathVariable("username") String user)
+	{
+		return service.getSchedulerQueue(user);
+	}
+}
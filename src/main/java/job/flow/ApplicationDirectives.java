@@ -0,0 +1,286 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package job.flow;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Scheduling directives declared at the beginning of an application's command line, one or more lines in the form:
+ * 
+ * <pre>
+ * #dohko cpus=2 memory=512M
+ * </pre>
+ * 
+ * Each line holds whitespace separated {@code key=value} pairs; a key without a value is a flag. The directive lines are
+ * removed from the command line that is executed.
+ */
+@Immutable
+public final class ApplicationDirectives
+{
+	public static final String PREFIX = "#dohko";
+
+	public static final ApplicationDirectives EMPTY = new ApplicationDirectives(Collections.emptyMap(), null);
+
+	private static final Splitter LINES = Splitter.on('\n');
+	private static final Splitter TOKENS = Splitter.on(' ').trimResults().omitEmptyStrings();
+
+	private final Map<String, String> values;
+	private final String commandLine;
+
+	private ApplicationDirectives(Map<String, String> values, String commandLine)
+	{
+		this.values = Collections.unmodifiableMap(values);
+		this.commandLine = commandLine;
+	}
+
+	public static ApplicationDirectives parse(String commandLine)
+	{
+		if (isNullOrEmpty(commandLine) || !commandLine.trim().startsWith(PREFIX))
+		{
+			return new ApplicationDirectives(Collections.emptyMap(), commandLine);
+		}
+
+		Map<String, String> values = new LinkedHashMap<>();
+		StringBuilder command = new StringBuilder();
+		boolean header = true;
+
+		for (String line : LINES.split(commandLine))
+		{
+			String trimmed = line.trim();
+
+			if (header && trimmed.startsWith(PREFIX))
+			{
+				for (String token : TOKENS.split(trimmed.substring(PREFIX.length()).replace('\t', ' ')))
+				{
+					int separator = token.indexOf('=');
+
+					if (separator < 0)
+					{
+						values.put(token.toLowerCase(), Boolean.TRUE.toString());
+					}
+					else
+					{
+						values.put(token.substring(0, separator).toLowerCase(), token.substring(separator + 1));
+					}
+				}
+			}
+			else
+			{
+				header = false;
+
+				if (command.length() > 0)
+				{
+					command.append('\n');
+				}
+
+				command.append(line);
+			}
+		}
+
+		return new ApplicationDirectives(values, command.toString());
+	}
+
+	/**
+	 * @return the command line without the directives
+	 */
+	public String commandLine()
+	{
+		return commandLine;
+	}
+
+	public boolean isEmpty()
+	{
+		return values.isEmpty();
+	}
+
+	public Map<String, String> values()
+	{
+		return values;
+	}
+
+	public Optional<String> get(String key)
+	{
+		return Optional.ofNullable(values.get(key));
+	}
+
+	public boolean isSet(String flag)
+	{
+		return Boolean.parseBoolean(values.get(flag));
+	}
+
+	public Optional<Double> getDouble(String key)
+	{
+		return get(key).map(Double::valueOf);
+	}
+
+	public Optional<Integer> getInteger(String key)
+	{
+		return get(key).map(Integer::valueOf);
+	}
+
+	/**
+	 * Returns the value of a size directive in bytes. The value may have one of the suffixes K, M, G or T (powers of 1024).
+	 */
+	public Optional<Long> getBytes(String key)
+	{
+		return get(key).map(ApplicationDirectives::parseBytes);
+	}
+
+	/**
+	 * @return the number of CPUs declared by the application, possibly fractional
+	 */
+	public Optional<Double> cpus()
+	{
+		return getDouble("cpus");
+	}
+
+	/**
+	 * @return <code>true</code> if the application must have all its cores at the same time, as MPI-style applications
+	 */
+	public boolean isGang()
+	{
+		return isSet("gang");
+	}
+
+	/**
+	 * @return the number of cores the application needs at the same time: the {@code cores} directive or, failing that,
+	 *         its CPUs rounded up
+	 */
+	public Optional<Integer> cores()
+	{
+		Optional<Integer> cores = getInteger("cores");
+		return cores.isPresent() ? cores : cpus().map(cpus -> (int) Math.ceil(cpus));
+	}
+
+	/**
+	 * @return the priority declared by the application. Applications of a higher priority start first and may suspend
+	 *         running applications of a lower one
+	 */
+	public Optional<Integer> priority()
+	{
+		return getInteger("priority");
+	}
+
+	/**
+	 * @return the CPU nice level declared by the application, from -20 (the most favourable) to 19
+	 */
+	public Optional<Integer> nice()
+	{
+		return getInteger("nice");
+	}
+
+	/**
+	 * @return the IO scheduling class declared by the application: {@code idle}, {@code best-effort} or {@code realtime}
+	 */
+	public Optional<String> ioClass()
+	{
+		return get("ionice").map(String::toLowerCase);
+	}
+
+	/**
+	 * @return the priority within its IO scheduling class declared by the application, from 0 (the highest) to 7
+	 */
+	public Optional<Integer> ioPriority()
+	{
+		return getInteger("ionice.priority");
+	}
+
+	/**
+	 * @return the memory declared by the application in bytes
+	 */
+	public Optional<Long> memory()
+	{
+		return getBytes("memory");
+	}
+
+	/**
+	 * @return these directives without the ones whose key starts with the given prefix
+	 */
+	public ApplicationDirectives without(String prefix)
+	{
+		Map<String, String> kept = new LinkedHashMap<>(values);
+		kept.keySet().removeIf(key -> key.startsWith(prefix));
+
+		return new ApplicationDirectives(kept, commandLine);
+	}
+
+	/**
+	 * @return the command line with the directives written back as a directive line, so that {@link #parse(String)}
+	 *         returns these directives again
+	 */
+	public String toCommandLine()
+	{
+		if (values.isEmpty())
+		{
+			return commandLine;
+		}
+
+		StringBuilder line = new StringBuilder(PREFIX);
+		values.forEach((key, value) -> line.append(' ').append(key).append('=').append(value));
+
+		return line.append('\n').append(Strings.nullToEmpty(commandLine)).toString();
+	}
+
+	static long parseBytes(String value)
+	{
+		String size = value.trim().toUpperCase();
+
+		if (size.endsWith("B"))
+		{
+			size = size.substring(0, size.length() - 1);
+		}
+
+		long unit = 1;
+
+		switch (size.isEmpty() ? ' ' : size.charAt(size.length() - 1))
+		{
+		case 'T':
+			unit <<= 10;
+		case 'G':
+			unit <<= 10;
+		case 'M':
+			unit <<= 10;
+		case 'K':
+			unit <<= 10;
+			size = size.substring(0, size.length() - 1);
+			break;
+		default:
+			break;
+		}
+
+		return (long) (Double.parseDouble(size.trim()) * unit);
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("directives", values)
+				.toString();
+	}
+}
@@ -16,20 +16,34 @@
  */
 package job.flow;
 
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
+import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 
 import io.airlift.command.Command;
 import io.airlift.command.CommandBuilder;
 import io.airlift.command.CommandFailedException;
 import io.airlift.command.CommandResult;
+import io.dohko.job.batch.monitor.ProcSampler;
+import io.dohko.job.batch.worker.ShellWorkerPool;
 
 public class Step 
 {
@@ -37,6 +51,15 @@ public class Step
 	private final String name;
 	private final CommandBuilder action;
 	private final List<Command> tasklets = new ArrayList<>();
+	private final Map<String, String> environment = new LinkedHashMap<>();
+	private ApplicationDirectives directives = ApplicationDirectives.EMPTY;
+	private Sweep sweep;
+	private IntFunction<Step> points;
+	private IntFunction<Step> attempts;
+	private String owner;
+	private Long deadline;
+	private long criticalPath;
+	private ImmutableList<String> commands;
 	
 	public Step(String id, String name, CommandBuilder action)
 	{
@@ -87,6 +110,138 @@ public class Step
 		return action;
 	}
 	
+	/**
+	 * @return the directives declared by the step's application
+	 */
+	public ApplicationDirectives directives()
+	{
+		return directives;
+	}
+	
+	public Step setDirectives(ApplicationDirectives directives)
+	{
+		this.directives = directives != null ? directives : ApplicationDirectives.EMPTY;
+		return this;
+	}
+	
+	/**
+	 * Makes this step stand for the points of a sweep. The step itself is not executed; instead, each point is
+	 * materialized with the given function when it is about to run.
+	 * @param sweep the parameter space of the step
+	 * @param points returns the step of the point with the given index
+	 */
+	public Step setSweep(Sweep sweep, IntFunction<Step> points)
+	{
+		this.sweep = requireNonNull(sweep, "sweep is null");
+		this.points = requireNonNull(points, "points is null");
+		return this;
+	}
+	
+	/**
+	 * @return the user the step runs for, or {@code null} if it was not set
+	 */
+	public String owner()
+	{
+		return owner;
+	}
+	
+	public Step setOwner(String owner)
+	{
+		this.owner = owner;
+		return this;
+	}
+	
+	/**
+	 * @return the time, in milliseconds since the epoch, by which the step's job should finish
+	 */
+	public Optional<Long> deadline()
+	{
+		return Optional.ofNullable(deadline);
+	}
+	
+	public Step setDeadline(Long deadline)
+	{
+		this.deadline = deadline;
+		return this;
+	}
+	
+	/**
+	 * @return the estimated time in milliseconds of the longest chain of steps that starts with this one
+	 */
+	public long criticalPath()
+	{
+		return criticalPath;
+	}
+	
+	public Step setCriticalPath(long criticalPath)
+	{
+		this.criticalPath = criticalPath;
+		return this;
+	}
+	
+	public Optional<Sweep> sweep()
+	{
+		return Optional.ofNullable(sweep);
+	}
+	
+	/**
+	 * @return the step of one point of this step's sweep. It runs for the same user and by the same deadline as this step
+	 */
+	public Step point(int index)
+	{
+		checkState(sweep != null, "Step %s is not a sweep", name);
+		return points.apply(index).setOwner(owner).setDeadline(deadline).setCriticalPath(criticalPath);
+	}
+	
+	/**
+	 * Runs the step's command through the given launcher, such as {@code taskset -c 0-3}. The launcher goes after a leading
+	 * {@code setsid} and replaces the one set before, if any; an empty launcher restores the original command. A step with
+	 * a launcher is not run on a shell worker.
+	 */
+	public Step setLauncher(List<String> launcher)
+	{
+		if (commands == null)
+		{
+			commands = ImmutableList.copyOf(action.build().getCommand());
+		}
+		
+		int start = !commands.isEmpty() && "setsid".equals(commands.get(0)) ? 1 : 0;
+		List<String> arguments = new ArrayList<>(commands.subList(0, start));
+		arguments.addAll(launcher);
+		arguments.addAll(commands.subList(start, commands.size()));
+		action.setCommands(arguments.toArray(new String[arguments.size()]));
+		
+		return this;
+	}
+	
+	/**
+	 * Lets this step be run more than once at the same time, such as when it straggles.
+	 * @param attempts returns the step of the attempt with the given number, starting at 2. Each attempt is a task of its own
+	 */
+	public Step setAttempts(IntFunction<Step> attempts)
+	{
+		this.attempts = attempts;
+		return this;
+	}
+	
+	/**
+	 * @return the step of another attempt at this step, if it can be run more than once. It runs for the same user and by
+	 *         the same deadline as this step
+	 */
+	public Optional<Step> attempt(int number)
+	{
+		return attempts == null ? Optional.empty()
+				: Optional.of(attempts.apply(number).setOwner(owner).setDeadline(deadline).setCriticalPath(criticalPath));
+	}
+	
+	public Step addEnvironmentVariable(String name, String value)
+	{
+		action.addEnviromentVariable(name, value);
+		environment.put(name, value);
+		
+		return this;
+	}
+	
 	public Step addTaskLets(Command ... commands) 
 	{
 		if (commands != null)
@@ -108,7 +263,163 @@ public class Step
 	public CommandResult execute(Executor executor) throws CommandFailedException 
 	{
 		Command command = action.build();
+		executeTaskLets(executor);
+
+		return command.execute(executor);
+	}
+	
+	/**
+	 * Executes this step on one of the given workers when its action is a {@code bash -c} script, instead of starting a new
+	 * process. Otherwise, or if the pool is disabled, it starts the step's process itself when the {@link ProcSampler}
+	 * can sample it, so that no monitor runs for the process, and behaves as {@link #execute(Executor)} if it cannot.
+	 * @param onStart called with the pid of the process running the step, when it runs on a worker or is started by itself
+	 */
+	public CommandResult execute(Executor executor, ShellWorkerPool workers, LongConsumer onStart) throws CommandFailedException
+	{
+		Command command = action.build();
+		Optional<String> script = script(command);
+		
+		if (workers == null || !workers.isEnabled() || !script.isPresent())
+		{
+			return ProcSampler.isSupported() ? executeProcess(command, executor, onStart) : execute(executor);
+		}
 		
+		executeTaskLets(executor);
+		
+		try
+		{
+			CommandResult result = workers.execute(id, script.get(), environment, onStart);
+			
+			if (result.getExitCode() != 0)
+			{
+				throw new CommandFailedException(command, result.getExitCode(), null, result.getCommandOutput());
+			}
+			
+			return result;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CommandFailedException(command, -1, e, "");
+		}
+		catch (IOException e)
+		{
+			throw new CommandFailedException(command, -1, e, "");
+		}
+	}
+	
+	/**
+	 * Runs the step's command as a child process, with its standard error merged into its output, without the command's
+	 * per-process monitor; the process is sampled by the {@link ProcSampler} from the pid given to {@code onStart}.
+	 */
+	private CommandResult executeProcess(Command command, Executor executor, LongConsumer onStart) throws CommandFailedException
+	{
+		executeTaskLets(executor);
+		
+		ProcessBuilder builder = new ProcessBuilder(command.getCommand()).redirectErrorStream(true);
+		builder.environment().putAll(environment);
+		
+		final long start = System.nanoTime();
+		Process process = null;
+		
+		try
+		{
+			process = builder.start();
+			process.getOutputStream().close();
+			OptionalLong pid = pidOf(process);
+			pid.ifPresent(onStart);
+			
+			String output = new String(ByteStreams.toByteArray(process.getInputStream()), UTF_8);
+			int exitCode = process.waitFor();
+			CommandResult result = new CommandResult(id, pid.isPresent() ? pid.getAsLong() : null, exitCode, output,
+					(System.nanoTime() - start) / 1_000_000);
+			
+			if (exitCode != 0)
+			{
+				throw new CommandFailedException(command, exitCode, null, output);
+			}
+			
+			return result;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CommandFailedException(command, -1, e, "");
+		}
+		catch (IOException e)
+		{
+			throw new CommandFailedException(command, -1, e, "");
+		}
+		finally
+		{
+			if (process != null)
+			{
+				process.destroy();
+			}
+		}
+	}
+	
+	/**
+	 * @return the pid of the given process: {@code Process.pid()} where it exists, or the {@code pid} field of the JDK 8
+	 *         implementation
+	 */
+	private static OptionalLong pidOf(Process process)
+	{
+		try
+		{
+			return OptionalLong.of((Long) Process.class.getMethod("pid").invoke(process));
+		}
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			try
+			{
+				Field pid = process.getClass().getDeclaredField("pid");
+				pid.setAccessible(true);
+				
+				return OptionalLong.of(pid.getInt(process));
+			}
+			catch (ReflectiveOperationException | RuntimeException ignored)
+			{
+				return OptionalLong.empty();
+			}
+		}
+	}
+	
+	/**
+	 * @return the script of this step if its action is a {@code bash -c} command, possibly started by {@code setsid}
+	 */
+	public Optional<String> script()
+	{
+		return script(action.build());
+	}
+	
+	private static Optional<String> script(Command command)
+	{
+		List<String> arguments = command.getCommand();
+		
+		if (arguments.size() == 4 && "setsid".equals(arguments.get(0)))
+		{
+			arguments = arguments.subList(1, arguments.size());
+		}
+		
+		if (arguments.size() == 3 && "bash".equals(arguments.get(0)) && "-c".equals(arguments.get(1)))
+		{
+			return Optional.of(arguments.get(2));
+		}
+		
+		return Optional.empty();
+	}
+	
+	/**
+	 * @return the environment variables defined for the step's action
+	 */
+	public ImmutableMap<String, String> environment()
+	{
+		return ImmutableMap.copyOf(environment);
+	}
+	
+	private void executeTaskLets(Executor executor)
+	{
 		try 
 		{
 			for (Command task : tasklets) 
@@ -120,8 +431,6 @@ public class Step
 		{
 			e.printStackTrace();
 		}
-
-		return command.execute(executor);
 	}
 	
 	@Override
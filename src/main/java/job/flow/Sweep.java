@@ -0,0 +1,210 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package job.flow;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static java.lang.String.format;
+
+/**
+ * The parameter space of an application that runs once per point, declared with {@code param.<name>} directives:
+ * 
+ * <pre>
+ * #dohko param.seed=1..1000 param.alpha=0.1,0.5,0.9
+ * ./simulate --seed {{seed}} --alpha {{alpha}} --out run-{{index}}
+ * </pre>
+ * 
+ * A value is either an integer range {@code first..last}, optionally followed by {@code :step}, or a comma separated list.
+ * The points are the cartesian product of the parameters, numbered from zero with the last parameter varying fastest.
+ * Points are computed from their index, so the space is never enumerated. As with every directive, parameter names are
+ * lower-cased, so the placeholders must be written in lower case.
+ */
+@Immutable
+public final class Sweep
+{
+	public static final String PARAMETER_PREFIX = "param.";
+
+	private static final Pattern RANGE = Pattern.compile("(-?\\d+)\\.\\.(-?\\d+)(?::(\\d+))?");
+	private static final Splitter VALUES = Splitter.on(',').trimResults().omitEmptyStrings();
+
+	private final ImmutableList<Parameter> parameters;
+	private final int size;
+
+	private Sweep(List<Parameter> parameters)
+	{
+		this.parameters = ImmutableList.copyOf(parameters);
+
+		long size = 1;
+
+		for (Parameter parameter : parameters)
+		{
+			size *= parameter.size;
+			checkArgument(size <= Integer.MAX_VALUE, "A sweep cannot have more than %s points", Integer.MAX_VALUE);
+		}
+
+		this.size = (int) size;
+	}
+
+	/**
+	 * @return the sweep declared by the given directives, if they declare any parameter
+	 */
+	public static Optional<Sweep> of(ApplicationDirectives directives)
+	{
+		List<Parameter> parameters = new ArrayList<>();
+
+		directives.values().forEach((key, value) ->
+		{
+			if (key.startsWith(PARAMETER_PREFIX))
+			{
+				parameters.add(Parameter.parse(key.substring(PARAMETER_PREFIX.length()), value));
+			}
+		});
+
+		return parameters.isEmpty() ? Optional.empty() : Optional.of(new Sweep(parameters));
+	}
+
+	/**
+	 * @return the number of points
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the value of each parameter at the given point
+	 */
+	public Map<String, String> point(int index)
+	{
+		checkElementIndex(index, size);
+
+		String[] values = new String[parameters.size()];
+		int rest = index;
+
+		for (int i = values.length - 1; i >= 0; i--)
+		{
+			Parameter parameter = parameters.get(i);
+			values[i] = parameter.value(rest % parameter.size);
+			rest /= parameter.size;
+		}
+
+		Map<String, String> point = new LinkedHashMap<>();
+
+		for (int i = 0; i < values.length; i++)
+		{
+			point.put(parameters.get(i).name, values[i]);
+		}
+
+		return point;
+	}
+
+	/**
+	 * Replaces {@code {{name}}} with the value of each parameter at the given point, and {@code {{index}}} with the index of
+	 * the point.
+	 */
+	public String apply(String template, int index)
+	{
+		String result = template.replace("{{index}}", Integer.toString(index));
+
+		for (Map.Entry<String, String> value : point(index).entrySet())
+		{
+			result = result.replace("{{" + value.getKey() + "}}", value.getValue());
+		}
+
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("parameters", parameters)
+				.add("size", size)
+				.toString();
+	}
+
+	@Immutable
+	private static final class Parameter
+	{
+		final String name;
+		final int size;
+		final long first;
+		final long step;
+		final ImmutableList<String> values;
+
+		private Parameter(String name, int size, long first, long step, List<String> values)
+		{
+			this.name = name;
+			this.size = size;
+			this.first = first;
+			this.step = step;
+			this.values = values != null ? ImmutableList.copyOf(values) : null;
+		}
+
+		static Parameter parse(String name, String value)
+		{
+			checkArgument(!name.isEmpty(), "Sweep parameter without name");
+
+			Matcher range = RANGE.matcher(value.trim());
+
+			if (range.matches())
+			{
+				long first = Long.parseLong(range.group(1));
+				long last = Long.parseLong(range.group(2));
+				long step = range.group(3) != null ? Long.parseLong(range.group(3)) : 1;
+
+				checkArgument(step > 0, "The step of sweep parameter %s must be positive", name);
+				checkArgument(last >= first, "Sweep parameter %s has an empty range %s", name, value);
+
+				long size = (last - first) / step + 1;
+				checkArgument(size <= Integer.MAX_VALUE, "Sweep parameter %s has too many values", name);
+
+				return new Parameter(name, (int) size, first, step, null);
+			}
+
+			List<String> values = VALUES.splitToList(value);
+			checkArgument(!values.isEmpty(), "Sweep parameter %s has no values", name);
+
+			return new Parameter(name, values.size(), 0, 0, values);
+		}
+
+		String value(int index)
+		{
+			return values != null ? values.get(index) : Long.toString(first + step * index);
+		}
+
+		@Override
+		public String toString()
+		{
+			return values != null ? format("%s=%s", name, values) : format("%s=%d..%d:%d", name, first, first + step * (size - 1), step);
+		}
+	}
+}
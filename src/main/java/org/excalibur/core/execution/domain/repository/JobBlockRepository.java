@@ -0,0 +1,37 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.excalibur.core.execution.domain.repository;
+
+import java.io.Closeable;
+import java.util.List;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+
+import io.dohko.jdbi.stereotype.Repository;
+
+@Repository
+public interface JobBlockRepository extends Closeable 
+{
+	@SqlBatch("INSERT INTO job_block (job_id, block_id, definition) VALUES (:jobId, :blockId, :definition)")
+	void insert(@Bind("jobId") Iterable<String> jobIds, @Bind("blockId") Iterable<String> blockIds,
+			@Bind("definition") Iterable<String> definitions);
+	
+	@SqlQuery("SELECT definition FROM job_block WHERE job_id = :jobId ORDER BY id")
+	List<String> findDefinitionsOfJob(@Bind("jobId") String jobId);
+}
@@ -0,0 +1,49 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.excalibur.core.execution.domain.repository;
+
+import java.io.Closeable;
+import java.util.List;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+import io.dohko.jdbi.stereotype.Repository;
+
+@Repository
+public interface JobDeadlineRepository extends Closeable 
+{
+	@SqlUpdate("INSERT INTO job_deadline (job_id, deadline) VALUES (:jobId, :deadline)")
+	void insert(@Bind("jobId") String jobId, @Bind("deadline") long deadline);
+	
+	@SqlBatch("INSERT INTO job_deadline (job_id, deadline) VALUES (:jobId, :deadline)")
+	void insert(@Bind("jobId") Iterable<String> jobIds, @Bind("deadline") Iterable<Long> deadlines);
+	
+	@SqlQuery("SELECT deadline FROM job_deadline WHERE job_id = :jobId")
+	Long findDeadline(@Bind("jobId") String jobId);
+	
+	@SqlBatch("INSERT INTO job_deadline_task (task_id, job_id) VALUES (:taskId, :jobId)")
+	void insertTasks(@Bind("taskId") Iterable<String> taskIds, @Bind("jobId") Iterable<String> jobIds);
+	
+	@SqlUpdate("DELETE FROM job_deadline_task WHERE task_id = :taskId")
+	void taskFinished(@Bind("taskId") String taskId);
+	
+	@SqlQuery("SELECT task_id FROM job_deadline_task WHERE job_id = :jobId")
+	List<String> findUnfinishedTasks(@Bind("jobId") String jobId);
+}
@@ -0,0 +1,60 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.excalibur.core.execution.domain.repository;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.excalibur.core.execution.domain.repository.JobOutboxRepository.JobOutboxEntryMapper;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import io.dohko.jdbi.stereotype.Repository;
+import io.dohko.job.batch.outbox.JobOutboxEntry;
+
+@Repository
+@RegisterMapper(JobOutboxEntryMapper.class)
+public interface JobOutboxRepository extends Closeable 
+{
+	@SqlBatch("INSERT INTO job_outbox (job_id, created_in) VALUES (:jobId, :createdIn)")
+	void insert(@Bind("jobId") Iterable<String> jobIds, @Bind("createdIn") long createdIn);
+	
+	@SqlQuery("SELECT id, job_id, created_in, attempts FROM job_outbox WHERE dispatched_in IS NULL AND next_attempt_in <= :now ORDER BY id LIMIT :limit")
+	List<JobOutboxEntry> findPending(@Bind("limit") int limit, @Bind("now") long now);
+	
+	@SqlUpdate("UPDATE job_outbox SET attempts = attempts + 1, next_attempt_in = :nextAttemptIn WHERE id = :id")
+	void retryLater(@Bind("id") long id, @Bind("nextAttemptIn") long nextAttemptIn);
+	
+	@SqlBatch("UPDATE job_outbox SET dispatched_in = :dispatchedIn WHERE id = :id")
+	void markDispatched(@Bind("id") Iterable<Long> ids, @Bind("dispatchedIn") long dispatchedIn);
+	
+	public class JobOutboxEntryMapper implements ResultSetMapper<JobOutboxEntry> 
+	{
+		@Override
+		public JobOutboxEntry map(int index, ResultSet r, StatementContext ctx) throws SQLException 
+		{
+			return new JobOutboxEntry(r.getLong("id"), r.getString("job_id"), r.getLong("created_in"), r.getInt("attempts"));
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.excalibur.core.execution.domain.repository;
+
+import java.io.Closeable;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+import io.dohko.jdbi.stereotype.Repository;
+
+@Repository
+public interface JobSubmissionKeyRepository extends Closeable 
+{
+	@SqlUpdate("INSERT INTO job_submission_key (username, submission_key, job_id, created_in) VALUES (:username, :key, :jobId, :createdIn)")
+	void insert(@Bind("username") String username, @Bind("key") String key, @Bind("jobId") String jobId, @Bind("createdIn") long createdIn);
+	
+	@SqlQuery("SELECT job_id FROM job_submission_key WHERE username = :username AND submission_key = :key")
+	String findJobId(@Bind("username") String username, @Bind("key") String key);
+}
@@ -0,0 +1,39 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.excalibur.core.execution.domain.repository;
+
+import java.io.Closeable;
+import java.util.List;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+import io.dohko.jdbi.stereotype.Repository;
+
+@Repository
+public interface TaskMetadataRepository extends Closeable 
+{
+	@SqlUpdate("INSERT INTO task_metadata (task_id, name, value) VALUES (:taskId, :name, :value) ON DUPLICATE KEY UPDATE value = :value")
+	void insert(@Bind("taskId") String taskId, @Bind("name") String name, @Bind("value") String value);
+	
+	@SqlQuery("SELECT value FROM task_metadata WHERE task_id = :taskId AND name = :name")
+	String find(@Bind("taskId") String taskId, @Bind("name") String name);
+	
+	@SqlQuery("SELECT name FROM task_metadata WHERE task_id = :taskId ORDER BY name")
+	List<String> findNames(@Bind("taskId") String taskId);
+}
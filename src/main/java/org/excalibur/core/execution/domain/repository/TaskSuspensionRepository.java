@@ -0,0 +1,38 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package org.excalibur.core.execution.domain.repository;
+
+import java.io.Closeable;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+import io.dohko.jdbi.stereotype.Repository;
+
+@Repository
+public interface TaskSuspensionRepository extends Closeable 
+{
+	@SqlUpdate("INSERT INTO task_suspension (task_id, suspended_in, resumed_in) VALUES (:taskId, :suspendedIn, :resumedIn)")
+	void insert(@Bind("taskId") String taskId, @Bind("suspendedIn") long suspendedIn, @Bind("resumedIn") long resumedIn);
+	
+	@SqlQuery("SELECT COUNT(*) FROM task_suspension WHERE task_id = :taskId")
+	int countSuspensionsOfTask(@Bind("taskId") String taskId);
+	
+	@SqlQuery("SELECT COALESCE(SUM(resumed_in - suspended_in), 0) FROM task_suspension WHERE task_id = :taskId")
+	long getSuspendedTimeOfTask(@Bind("taskId") String taskId);
+}
@@ -0,0 +1,80 @@
+--
+--     Copyright (C) 2013-2017  the original author or authors.
+--
+--     This program is free software: you can redistribute it and/or modify
+--     it under the terms of the GNU General Public License as published by
+--     the Free Software Foundation, either version 3 of the License,
+--     any later version.
+--
+--     This program is distributed in the hope that it will be useful,
+--     but WITHOUT ANY WARRANTY; without even the implied warranty of
+--     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+--     GNU General Public License for more details.
+--
+--     You should have received a copy of the GNU General Public License
+--     along with this program.  If not, see <http://www.gnu.org/licenses/>
+--
+
+-- The tables of the job service. This script runs on every start, unless org.excalibur.database.job.schema.initialize
+-- is false, so every statement must be idempotent. Where the service's database user cannot create tables, apply this
+-- script as a migration before deploying.
+
+-- jobs committed but not yet handed to the launcher
+CREATE TABLE IF NOT EXISTS job_outbox (
+  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  job_id VARCHAR(255) NOT NULL,
+  created_in BIGINT NOT NULL,
+  dispatched_in BIGINT NULL,
+  attempts INT NOT NULL DEFAULT 0,
+  next_attempt_in BIGINT NOT NULL DEFAULT 0,
+  INDEX job_outbox_pending_idx (dispatched_in, id)
+);
+
+-- the definitions of the blocks of the jobs, in JSON, so that the jobs of the outbox can be launched after a restart
+CREATE TABLE IF NOT EXISTS job_block (
+  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  job_id VARCHAR(255) NOT NULL,
+  block_id VARCHAR(255) NOT NULL,
+  definition MEDIUMTEXT NOT NULL,
+  INDEX job_block_job_idx (job_id)
+);
+
+-- keys of the submissions already turned into jobs, so that retried requests do not create them again
+CREATE TABLE IF NOT EXISTS job_submission_key (
+  username VARCHAR(255) NOT NULL,
+  submission_key VARCHAR(255) NOT NULL,
+  job_id VARCHAR(255) NOT NULL,
+  created_in BIGINT NOT NULL,
+  CONSTRAINT job_submission_key_uk UNIQUE (username, submission_key)
+);
+
+-- the time, in milliseconds since the epoch, by which a job should finish
+CREATE TABLE IF NOT EXISTS job_deadline (
+  job_id VARCHAR(255) NOT NULL PRIMARY KEY,
+  deadline BIGINT NOT NULL
+);
+
+-- the planned tasks of the jobs with a deadline that have not finished yet. The points of a sweep are not listed: they
+-- are accounted in the estimate of their sweep
+CREATE TABLE IF NOT EXISTS job_deadline_task (
+  task_id VARCHAR(255) NOT NULL PRIMARY KEY,
+  job_id VARCHAR(255) NOT NULL,
+  INDEX job_deadline_task_job_idx (job_id)
+);
+
+-- the intervals during which a task was suspended for tasks of a higher priority
+CREATE TABLE IF NOT EXISTS task_suspension (
+  id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  task_id VARCHAR(255) NOT NULL,
+  suspended_in BIGINT NOT NULL,
+  resumed_in BIGINT NOT NULL,
+  INDEX task_suspension_task_idx (task_id)
+);
+
+-- the facts recorded about how a task was run, such as the cores it was pinned to
+CREATE TABLE IF NOT EXISTS task_metadata (
+  task_id VARCHAR(255) NOT NULL,
+  name VARCHAR(64) NOT NULL,
+  value VARCHAR(1024) NOT NULL,
+  PRIMARY KEY (task_id, name)
+);
@@ -0,0 +1,124 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchedStepExecutorTest
+{
+	private static final String MARKER = "__dohko_batch_test";
+
+	private final List<String> completions = new ArrayList<>();
+	private long now;
+
+	private BatchedStepExecutor.Demultiplexer demultiplexer;
+
+	@Before
+	public void setUp()
+	{
+		demultiplexer = new BatchedStepExecutor.Demultiplexer(MARKER, 3,
+				(index, exitCode, output, time) -> completions.add(index + ":" + exitCode + ":" + output + ":" + time),
+				() -> now);
+	}
+
+	@Test
+	public void completesEachStepAtItsEndMarker()
+	{
+		demultiplexer.accept("");
+		demultiplexer.accept(MARKER + " 0 begin 1000.000000");
+		demultiplexer.accept("first");
+		demultiplexer.accept("second");
+		demultiplexer.accept(MARKER + " 0 end 0 1000.250000");
+
+		assertEquals(1, completions.size());
+		assertEquals("0:0:first\nsecond:250", completions.get(0));
+
+		demultiplexer.accept(MARKER + " 1 begin 1001.000000");
+		demultiplexer.accept(MARKER + " 1 end 3 1001.500000");
+
+		assertEquals("1:3::500", completions.get(1));
+	}
+
+	@Test
+	public void ignoresTheOutputBetweenSteps()
+	{
+		demultiplexer.accept("noise");
+		demultiplexer.accept(MARKER + " 0 begin 1000.0");
+		demultiplexer.accept(MARKER + " 0 end 0 1000.1");
+		demultiplexer.accept("more noise");
+		demultiplexer.accept(MARKER + " 1 begin 1000.1");
+		demultiplexer.accept("output");
+		demultiplexer.accept(MARKER + " 1 end 0 1000.2");
+
+		assertEquals("0:0::100", completions.get(0));
+		assertEquals("1:0:output:100", completions.get(1));
+	}
+
+	@Test
+	public void readsTimesWithADecimalComma()
+	{
+		demultiplexer.accept(MARKER + " 0 begin 1000,000000");
+		demultiplexer.accept(MARKER + " 0 end 0 1000,040000");
+
+		assertEquals("0:0::40", completions.get(0));
+	}
+
+	@Test
+	public void timesStepsWithTheClockWhenBashPrintsNoTimes()
+	{
+		now = 5_000;
+		demultiplexer.accept(MARKER + " 0 begin ");
+		now = 5_700;
+		demultiplexer.accept(MARKER + " 0 end 0 ");
+
+		assertEquals("0:0::700", completions.get(0));
+	}
+
+	@Test
+	public void takesAtLeastOneMillisecond()
+	{
+		demultiplexer.accept(MARKER + " 0 begin ");
+		demultiplexer.accept(MARKER + " 0 end 0 ");
+		demultiplexer.accept(MARKER + " 1 begin 1000.0001");
+		demultiplexer.accept(MARKER + " 1 end 0 1000.0002");
+
+		assertEquals("0:0::1", completions.get(0));
+		assertEquals("1:0::1", completions.get(1));
+	}
+
+	@Test
+	public void failsTheStepsWhoseEndWasNotRead()
+	{
+		demultiplexer.accept(MARKER + " 0 begin 1000.0");
+		demultiplexer.accept(MARKER + " 0 end 0 1000.5");
+		demultiplexer.accept(MARKER + " 1 begin 1000.5");
+		demultiplexer.accept("partial");
+		demultiplexer.completeRemaining(900);
+
+		assertEquals(3, completions.size());
+		assertEquals("1:-1:partial:900", completions.get(1));
+		assertEquals("2:-1::900", completions.get(2));
+		assertTrue(completions.get(0).startsWith("0:0:"));
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.plan;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import io.dohko.job.batch.tree.Tree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExecutionPlanCompilerTest
+{
+	@Test
+	public void computesLevelsAndTopologicalOrder()
+	{
+		ExecutionPlan<Item> plan = compile(item("d", "b", "c"), item("b", "a"), item("a"), item("c", "a"));
+
+		assertTrue(plan.isValid());
+		assertEquals(0, plan.level(2));
+		assertEquals(1, plan.level(1));
+		assertEquals(1, plan.level(3));
+		assertEquals(2, plan.level(0));
+		assertArrayEquals(new int[] { 2, 1, 3, 0 }, plan.topologicalOrder());
+		assertArrayEquals(new int[] { 2 }, plan.roots());
+	}
+
+	@Test
+	public void resolvesParentsIgnoringCase()
+	{
+		ExecutionPlan<Item> plan = compile(item("Extract"), item("load", "EXTRACT"));
+
+		assertTrue(plan.isValid());
+		assertEquals(0, plan.primaryParent(1));
+		assertEquals(-1, plan.primaryParent(0));
+	}
+
+	@Test
+	public void reportsUnknownParents()
+	{
+		ExecutionPlan<Item> plan = compile(item("a"), item("b", "x"), item("c", "a", "y"));
+
+		assertFalse(plan.isValid());
+		assertEquals(ImmutableList.of("Unknown parent x of b", "Unknown parent y of c"), plan.errors());
+	}
+
+	@Test
+	public void reportsOnlyTheItemsOfACycle()
+	{
+		ExecutionPlan<Item> plan = compile(item("a"), item("b", "a", "d"), item("c", "b"), item("d", "c"),
+				item("e", "d"));
+
+		assertFalse(plan.isValid());
+		assertEquals(ImmutableList.of("Cyclic dependency among [b, c, d]"), plan.errors());
+	}
+
+	@Test
+	public void reportsSelfDependencies()
+	{
+		ExecutionPlan<Item> plan = compile(item("a", "a"));
+
+		assertEquals(ImmutableList.of("Cyclic dependency among [a]"), plan.errors());
+	}
+
+	@Test
+	public void checkValidThrowsAllTheErrors()
+	{
+		try
+		{
+			compile(item("a", "b"), item("b", "a"), item("c", "z")).checkValid();
+			fail();
+		}
+		catch (InvalidExecutionPlanException expected)
+		{
+			assertEquals(2, expected.getErrors().size());
+		}
+	}
+
+	@Test
+	public void attachesEachItemToItsFirstParent()
+	{
+		ExecutionPlan<Item> plan = compile(item("a"), item("b"), item("c", "b", "a"), item("d", "a", "a"));
+
+		List<Tree<String>> trees = plan.toTrees(i -> plan.get(i).name);
+
+		assertEquals(2, trees.size());
+		assertEquals("[a, d]", names(trees.get(0)));
+		assertEquals("[b, c]", names(trees.get(1)));
+	}
+
+	@Test
+	public void visitsEachTreeChildOnce()
+	{
+		ExecutionPlan<Item> plan = compile(item("a"), item("b", "a", "a"), item("c", "b", "a"));
+		StringBuilder children = new StringBuilder();
+
+		plan.forEachTreeChild(0, children::append);
+		children.append('|');
+		plan.forEachTreeChild(1, children::append);
+
+		assertEquals("1|2", children.toString());
+	}
+
+	@Test
+	public void mapsItemsKeepingTheDependencies()
+	{
+		ExecutionPlan<Item> plan = compile(item("a"), item("b", "a"));
+		ExecutionPlan<String> names = plan.map(i -> plan.get(i).name.toUpperCase());
+
+		assertEquals(ImmutableList.of("A", "B"), names.items());
+		assertEquals(0, names.primaryParent(1));
+		assertEquals(1, names.level(1));
+	}
+
+	private static ExecutionPlan<Item> compile(Item... items)
+	{
+		return ExecutionPlanCompiler.compile(Arrays.asList(items), item -> item.name, item -> item.parents);
+	}
+
+	private static String names(Tree<String> tree)
+	{
+		StringBuilder names = new StringBuilder();
+		tree.forEach(node -> names.append(names.length() == 0 ? "[" : ", ").append(node.getData()));
+
+		return names.append(']').toString();
+	}
+
+	private static Item item(String name, String... parents)
+	{
+		return new Item(name, Arrays.asList(parents));
+	}
+
+	private static final class Item
+	{
+		final String name;
+		final List<String> parents;
+
+		Item(String name, List<String> parents)
+		{
+			this.name = name;
+			this.parents = parents;
+		}
+	}
+}
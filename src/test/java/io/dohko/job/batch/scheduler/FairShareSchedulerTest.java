@@ -0,0 +1,332 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import io.dohko.job.batch.monitor.HostMemory;
+import io.dohko.job.batch.monitor.ProcessGroups;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FairShareSchedulerTest
+{
+	private final List<String> started = new ArrayList<>();
+	private final Map<String, SettableFuture<String>> running = new HashMap<>();
+
+	private FairShareScheduler scheduler;
+
+	@Test
+	public void sharesTheSlotsInProportionToTheWeights()
+	{
+		scheduler = newScheduler(1, user -> new UserQuota("b".equals(user) ? 2 : 1, Integer.MAX_VALUE, 100));
+		submit("x", "blocker");
+
+		for (int i = 0; i < 6; i++)
+		{
+			submit("a", "a" + i);
+			submit("b", "b" + i);
+		}
+
+		for (int i = 0; i < 9; i++)
+		{
+			finish(started.get(started.size() - 1));
+		}
+
+		List<String> shared = started.subList(1, 10);
+
+		assertEquals(3, shared.stream().filter(task -> task.startsWith("a")).count());
+		assertEquals(6, shared.stream().filter(task -> task.startsWith("b")).count());
+	}
+
+	@Test
+	public void startsTheTasksOfAUserInOrder()
+	{
+		scheduler = newScheduler(1, UserQuota::of);
+		submit("a", "a0");
+		submit("a", "a1");
+		submit("a", "a2");
+
+		finish("a0");
+		finish("a1");
+
+		assertEquals(ImmutableList.of("a0", "a1", "a2"), started);
+	}
+
+	@Test
+	public void doesNotGiveCreditToAnIdleUser()
+	{
+		scheduler = newScheduler(1, UserQuota::of);
+		submit("a", "a0");
+
+		for (int i = 1; i < 5; i++)
+		{
+			submit("a", "a" + i);
+			finish("a" + (i - 1));
+		}
+
+		// b was idle while a ran alone, so it does not take all the slots when it comes back
+		submit("b", "b0");
+		submit("b", "b1");
+		submit("a", "a5");
+		finish("a4");
+		finish(started.get(started.size() - 1));
+		finish(started.get(started.size() - 1));
+
+		assertEquals(ImmutableList.of("b0", "a5", "b1"), started.subList(5, 8));
+	}
+
+	@Test
+	public void skipsAUserAtItsQuotaWithoutHoldingBackTheOthers()
+	{
+		scheduler = newScheduler(3, user -> new UserQuota(1, "a".equals(user) ? 1 : Integer.MAX_VALUE, 100));
+		submit("a", "a0");
+		submit("a", "a1");
+		submit("b", "b0");
+
+		assertEquals(ImmutableList.of("a0", "b0"), started);
+		assertEquals(2, scheduler.getRunning());
+		assertEquals(1, scheduler.getQueued());
+
+		finish("a0");
+
+		assertEquals(ImmutableList.of("a0", "b0", "a1"), started);
+	}
+
+	@Test
+	public void rejectsWorkOfAUserWhoseQueueIsFull()
+	{
+		scheduler = newScheduler(1, user -> new UserQuota(1, Integer.MAX_VALUE, 1));
+		submit("a", "a0");
+		scheduler.checkAdmission("a");
+		submit("a", "a1");
+
+		try
+		{
+			scheduler.checkAdmission("a");
+			fail();
+		}
+		catch (QuotaExceededException expected)
+		{
+		}
+
+		scheduler.checkAdmission("b");
+	}
+
+	@Test
+	public void startsTasksWithADeadlineFirst()
+	{
+		scheduler = newScheduler(1, UserQuota::of);
+		submit("a", "a0");
+		submit("a", "a1");
+		submit(TaskRequest.of("b").setLatestStart(System.currentTimeMillis() + 60_000), "late");
+		submit(TaskRequest.of("b").setLatestStart(System.currentTimeMillis() + 1_000), "early");
+
+		finish("a0");
+		finish("early");
+		finish("late");
+
+		assertEquals(ImmutableList.of("a0", "early", "late", "a1"), started);
+	}
+
+	@Test
+	public void doesNotStartACancelledTask()
+	{
+		scheduler = newScheduler(1, UserQuota::of);
+		submit("a", "a0");
+		ListenableFuture<String> cancelled = submit("a", "a1");
+		submit("a", "a2");
+
+		cancelled.cancel(true);
+		finish("a0");
+
+		assertEquals(ImmutableList.of("a0", "a2"), started);
+		assertEquals(0, scheduler.getQueued());
+	}
+
+	@Test
+	public void keepsTheSlotsFreedForATaskThatNeedsSeveral()
+	{
+		scheduler = newScheduler(2, UserQuota::of);
+		submit(TaskRequest.of("a").setEstimatedRuntime(600_000), "a0");
+		submit(TaskRequest.of("a").setEstimatedRuntime(600_000), "a1");
+		submit(TaskRequest.of("mpi").setCores(2), "gang");
+		submit(TaskRequest.of("b").setLatestStart(System.currentTimeMillis() + 1_000), "urgent");
+
+		finish("a0");
+
+		// the urgent task would hold the freed slot past the time the gang can start
+		assertEquals(ImmutableList.of("a0", "a1"), started);
+		assertEquals(1, scheduler.getRunning());
+
+		finish("a1");
+
+		assertEquals(ImmutableList.of("a0", "a1", "gang"), started);
+		assertEquals(2, scheduler.getRunning());
+
+		finish("gang");
+
+		assertEquals(ImmutableList.of("a0", "a1", "gang", "urgent"), started);
+	}
+
+	@Test
+	public void letsTasksOfAHigherPriorityPassTheReservation()
+	{
+		scheduler = newScheduler(2, UserQuota::of);
+		submit(TaskRequest.of("a").setEstimatedRuntime(600_000), "a0");
+		submit(TaskRequest.of("a").setEstimatedRuntime(600_000), "a1");
+		submit(TaskRequest.of("mpi").setCores(2), "gang");
+		submit(TaskRequest.of("b").setPriority(1), "important");
+
+		finish("a0");
+
+		assertEquals(ImmutableList.of("a0", "a1", "important"), started);
+	}
+
+	@Test
+	public void dropsTheReservationOfACancelledTask()
+	{
+		scheduler = newScheduler(2, UserQuota::of);
+		submit(TaskRequest.of("a").setEstimatedRuntime(600_000), "a0");
+		submit(TaskRequest.of("a").setEstimatedRuntime(600_000), "a1");
+		ListenableFuture<String> gang = submit(TaskRequest.of("mpi").setCores(2), "gang");
+		submit("c", "c0");
+
+		gang.cancel(true);
+		finish("a0");
+
+		assertEquals(ImmutableList.of("a0", "a1", "c0"), started);
+		assertEquals(0, scheduler.getQueued());
+	}
+
+	@Test
+	public void startsATaskThatNeedsMoreCoresThanTheSlotsWithAllOfThem()
+	{
+		scheduler = newScheduler(2, UserQuota::of);
+		submit(TaskRequest.of("mpi").setCores(8), "gang");
+
+		assertEquals(ImmutableList.of("gang"), started);
+		assertEquals(2, scheduler.getRunning());
+	}
+
+	@Test
+	public void backfillsTasksThatEndBeforeTheReservedTaskCanStart()
+	{
+		scheduler = newScheduler(2, UserQuota::of);
+		submit(TaskRequest.of("a").setEstimatedRuntime(600_000), "a0");
+		submit(TaskRequest.of("a").setEstimatedRuntime(600_000), "a1");
+		submit(TaskRequest.of("mpi").setCores(2), "gang");
+		submit(TaskRequest.of("c").setEstimatedRuntime(3_600_000), "long");
+		submit(TaskRequest.of("c").setEstimatedRuntime(1_000), "short");
+		submit("c", "unknown");
+
+		finish("a0");
+
+		assertEquals(ImmutableList.of("a0", "a1", "short"), started);
+
+		finish("short");
+		finish("a1");
+
+		assertEquals(ImmutableList.of("a0", "a1", "short", "gang"), started);
+	}
+
+	@Test
+	public void backfillsTasksIntoTheSlotsTheReservedTaskWillNotNeed()
+	{
+		scheduler = newScheduler(4, UserQuota::of);
+		submit(TaskRequest.of("a").setCores(3).setEstimatedRuntime(600_000), "wide");
+		submit(TaskRequest.of("mpi").setCores(2), "gang");
+
+		// when the wide task ends, four slots are free and the gang only needs two of them
+		submit(TaskRequest.of("c").setEstimatedRuntime(3_600_000), "long");
+
+		assertEquals(ImmutableList.of("wide", "long"), started);
+
+		finish("wide");
+
+		assertEquals(ImmutableList.of("wide", "long", "gang"), started);
+		assertEquals(3, scheduler.getRunning());
+	}
+
+	@Test
+	public void triesOnlyTheConfiguredNumberOfTasksBehindTheHead()
+	{
+		System.setProperty("org.excalibur.scheduler.backfill.depth", "1");
+
+		try
+		{
+			scheduler = newScheduler(2, UserQuota::of);
+		}
+		finally
+		{
+			System.clearProperty("org.excalibur.scheduler.backfill.depth");
+		}
+
+		submit(TaskRequest.of("a").setEstimatedRuntime(600_000), "a0");
+		submit(TaskRequest.of("a").setEstimatedRuntime(600_000), "a1");
+		submit(TaskRequest.of("mpi").setCores(2), "gang");
+		submit(TaskRequest.of("c").setEstimatedRuntime(3_600_000), "long0");
+		submit(TaskRequest.of("c").setEstimatedRuntime(3_600_000), "long1");
+		submit(TaskRequest.of("c").setEstimatedRuntime(1_000), "short");
+
+		finish("a0");
+
+		assertEquals(ImmutableList.of("a0", "a1"), started);
+	}
+
+	private FairShareScheduler newScheduler(int maxRunning, Function<String, UserQuota> quotas)
+	{
+		return new FairShareScheduler(maxRunning, quotas, new PendingTaskCapacity(),
+				new MemoryAdmission(new HostMemory(), false, 0, 0), new Preemption(new ProcessGroups(), false));
+	}
+
+	private ListenableFuture<String> submit(String user, String task)
+	{
+		return submit(TaskRequest.of(user), task);
+	}
+
+	/**
+	 * Submits a task that runs until {@link #finish(String)} is called with its name.
+	 */
+	private ListenableFuture<String> submit(TaskRequest request, String task)
+	{
+		return scheduler.submit(request, () ->
+		{
+			SettableFuture<String> result = SettableFuture.create();
+			started.add(task);
+			running.put(task, result);
+
+			return result;
+		});
+	}
+
+	private void finish(String task)
+	{
+		running.remove(task).set(task);
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.scheduler;
+
+import java.util.OptionalLong;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PendingTaskCapacityTest
+{
+	private final PendingTaskCapacity capacity = new PendingTaskCapacity(3, 10_000, 30);
+
+	@Test
+	public void admitsTasksUpToTheCapacity()
+	{
+		capacity.acquire(ImmutableList.of("a", "b"));
+		capacity.acquire(ImmutableList.of("c"));
+
+		assertEquals(3, capacity.getPending());
+	}
+
+	@Test
+	public void countsATaskOnce()
+	{
+		capacity.acquire(ImmutableList.of("a", "b"));
+		capacity.acquire(ImmutableList.of("a", "c"));
+
+		assertEquals(3, capacity.getPending());
+	}
+
+	@Test
+	public void suggestsTheDefaultRetryWhileNothingHasFinished()
+	{
+		capacity.acquire(ImmutableList.of("a", "b"));
+
+		assertEquals(OptionalLong.of(30), rejection(ImmutableList.of("c", "d")).getRetryAfter());
+		assertEquals(2, capacity.getPending());
+	}
+
+	@Test
+	public void estimatesTheRetryFromTheDrainRate()
+	{
+		capacity.acquire(ImmutableList.of("a", "b", "c"));
+		assertTrue(capacity.finished("a"));
+		assertTrue(capacity.finished("b"));
+		assertTrue(capacity.finished("c"));
+		capacity.acquire(ImmutableList.of("d", "e", "f"));
+
+		// three tasks finished over a window of 10 s free 0.3 tasks per second, so one more fits in about 3.3 s
+		assertEquals(OptionalLong.of(4), rejection(ImmutableList.of("g")).getRetryAfter());
+		assertEquals(0.3, capacity.getDrainRate(), 0.01);
+	}
+
+	@Test
+	public void rejectsSubmissionsLargerThanTheCapacity()
+	{
+		try
+		{
+			capacity.acquire(ImmutableList.of("a", "b", "c", "d"));
+			fail();
+		}
+		catch (SubmissionTooLargeException expected)
+		{
+		}
+
+		try
+		{
+			capacity.acquire(ImmutableMap.of("sweep", 4));
+			fail();
+		}
+		catch (SubmissionTooLargeException expected)
+		{
+		}
+
+		assertEquals(0, capacity.getPending());
+	}
+
+	@Test(expected = SubmissionTooLargeException.class)
+	public void checksTheSizeOfASubmission()
+	{
+		capacity.checkSize(3);
+		capacity.checkSize(4);
+	}
+
+	@Test
+	public void hasTheRoomOfASweepHandedOverToItsPoints()
+	{
+		capacity.acquire(ImmutableMap.of("sweep", 3));
+		capacity.transfer("sweep", "point-0");
+		capacity.transfer("sweep", "point-1");
+		capacity.transfer("sweep", "point-1");
+
+		assertEquals(3, capacity.getPending());
+
+		capacity.finished("point-0");
+		capacity.finished("point-1");
+
+		assertEquals(1, capacity.getPending());
+		assertTrue(capacity.finished("sweep"));
+		assertEquals(0, capacity.getPending());
+	}
+
+	@Test
+	public void admitsPointsPastTheCapacityWhenTheSweepHasNoRoomToSpare()
+	{
+		capacity.acquire(ImmutableMap.of("sweep", 1, "a", 1, "b", 1));
+		capacity.transfer("sweep", "point-0");
+
+		assertEquals(4, capacity.getPending());
+	}
+
+	@Test
+	public void forcesRecoveredTasksPastTheCapacity()
+	{
+		capacity.force(ImmutableMap.of("a", 2, "b", 2));
+
+		assertEquals(4, capacity.getPending());
+		rejection(ImmutableList.of("c"));
+	}
+
+	@Test
+	public void releasesTheRoomOfTasksThatWillNotRun()
+	{
+		capacity.acquire(ImmutableList.of("a", "b", "c"));
+		capacity.release(ImmutableList.of("a", "b", "x"));
+
+		assertEquals(1, capacity.getPending());
+		assertFalse(capacity.finished("a"));
+		assertEquals(0.0, capacity.getDrainRate(), 0);
+	}
+
+	private QuotaExceededException rejection(Iterable<String> tasks)
+	{
+		try
+		{
+			capacity.acquire(tasks);
+		}
+		catch (QuotaExceededException expected)
+		{
+			return expected;
+		}
+
+		throw new AssertionError("the tasks were admitted");
+	}
+}
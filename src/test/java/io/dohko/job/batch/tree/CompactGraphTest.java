@@ -0,0 +1,102 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.tree;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompactGraphTest
+{
+	@Test
+	public void keepsTheChildrenAndParentsOfEachNode()
+	{
+		CompactGraph graph = CompactGraph.builder(4).addEdge(0, 2).addEdge(1, 2).addEdge(0, 1).addEdge(2, 3).build();
+
+		assertEquals(4, graph.size());
+		assertEquals(4, graph.edges());
+		assertEquals("2 1", children(graph, 0));
+		assertEquals("2", children(graph, 1));
+		assertEquals(2, graph.parentCount(2));
+		assertEquals(0, graph.parent(2, 0));
+		assertEquals(1, graph.parent(2, 1));
+		assertTrue(graph.isRoot(0));
+		assertFalse(graph.isRoot(1));
+		assertTrue(graph.isLeaf(3));
+	}
+
+	@Test
+	public void keepsTheOrderTheParentsWereAddedIn()
+	{
+		CompactGraph graph = CompactGraph.builder(3).addEdge(2, 0).addEdge(1, 0).build();
+
+		assertEquals(2, graph.parent(0, 0));
+		assertEquals(1, graph.parent(0, 1));
+	}
+
+	@Test
+	public void reusesACursorAcrossNodes()
+	{
+		CompactGraph graph = CompactGraph.builder(3).addEdge(0, 1).addEdge(0, 2).addEdge(1, 2).build();
+		CompactGraph.Cursor cursor = new CompactGraph.Cursor();
+		StringBuilder visited = new StringBuilder();
+
+		for (int node = 0; node < graph.size(); node++)
+		{
+			for (graph.parents(node, cursor); cursor.hasNext();)
+			{
+				visited.append(cursor.next()).append("->").append(node).append(' ');
+			}
+		}
+
+		assertEquals("0->1 0->2 1->2 ", visited.toString());
+	}
+
+	@Test
+	public void growsPastTheInitialEdgeCapacity()
+	{
+		int size = 100;
+		CompactGraph.Builder builder = CompactGraph.builder(size);
+
+		for (int i = 1; i < size; i++)
+		{
+			builder.addEdge(i - 1, i);
+		}
+
+		CompactGraph graph = builder.build();
+
+		assertEquals(size - 1, graph.edges());
+		assertEquals(98, graph.parent(99, 0));
+		assertEquals(4L * (101 + 99 + 101 + 99), graph.sizeInBytes());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void rejectsEdgesToUnknownNodes()
+	{
+		CompactGraph.builder(2).addEdge(0, 2);
+	}
+
+	private static String children(CompactGraph graph, int node)
+	{
+		StringBuilder children = new StringBuilder();
+		graph.forEachChild(node, child -> children.append(children.length() == 0 ? "" : " ").append(child));
+
+		return children.toString();
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.tree;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static java.util.Comparator.comparingInt;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StronglyConnectedComponentsTest
+{
+	@Test
+	public void findsNoCycleInADag()
+	{
+		CompactGraph graph = CompactGraph.builder(4).addEdge(0, 1).addEdge(0, 2).addEdge(1, 3).addEdge(2, 3).build();
+
+		assertTrue(StronglyConnectedComponents.cycles(graph).isEmpty());
+	}
+
+	@Test
+	public void findsEachCycleSortedByNode()
+	{
+		CompactGraph graph = CompactGraph.builder(7)
+				.addEdge(0, 1).addEdge(1, 2).addEdge(2, 0)
+				.addEdge(2, 3)
+				.addEdge(4, 6).addEdge(6, 5).addEdge(5, 4)
+				.build();
+
+		assertEquals("[[0, 1, 2], [4, 5, 6]]", cycles(graph));
+	}
+
+	@Test
+	public void findsSelfLoops()
+	{
+		CompactGraph graph = CompactGraph.builder(3).addEdge(0, 1).addEdge(1, 1).addEdge(1, 2).build();
+
+		assertEquals("[[1]]", cycles(graph));
+	}
+
+	@Test
+	public void findsCyclesLongerThanTheCallStack()
+	{
+		int size = 200_000;
+		CompactGraph.Builder builder = CompactGraph.builder(size);
+
+		for (int i = 0; i < size; i++)
+		{
+			builder.addEdge(i, (i + 1) % size);
+		}
+
+		List<int[]> cycles = StronglyConnectedComponents.cycles(builder.build());
+
+		assertEquals(1, cycles.size());
+		assertEquals(size, cycles.get(0).length);
+	}
+
+	private static String cycles(CompactGraph graph)
+	{
+		return StronglyConnectedComponents.cycles(graph).stream()
+				.sorted(comparingInt(cycle -> cycle[0]))
+				.map(Arrays::toString)
+				.collect(toList())
+				.toString();
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ *     Copyright (C) 2013-2017  the original author or authors.
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License,
+ *     any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+package io.dohko.job.batch.tree;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static io.dohko.job.batch.tree.TreeTraversalOrderType.POST_ORDER;
+import static io.dohko.job.batch.tree.TreeTraversalOrderType.PRE_ORDER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TreeIteratorTest
+{
+	private TreeNode<String> root;
+
+	@Before
+	public void setUp()
+	{
+		root = new TreeNode<>("a");
+		TreeNode<String> b = new TreeNode<>("b");
+
+		root.addChild(b).addChild(new TreeNode<>("e"));
+		b.addChild(new TreeNode<>("c")).addChild(new TreeNode<>("d"));
+	}
+
+	@Test
+	public void walksInPreOrderWithDepths()
+	{
+		assertEquals("a0 b1 c2 d2 e1", walk(new TreeIterator<>(root, PRE_ORDER)));
+	}
+
+	@Test
+	public void walksInPostOrderWithDepths()
+	{
+		assertEquals("c2 d2 b1 e1 a0", walk(new TreeIterator<>(root, POST_ORDER)));
+	}
+
+	@Test
+	public void walksAnEmptyTree()
+	{
+		assertFalse(new TreeIterator<String>(null, PRE_ORDER).hasNext());
+	}
+
+	@Test
+	public void walksChainsDeeperThanTheCallStack()
+	{
+		int size = 200_000;
+		TreeNode<Integer> first = new TreeNode<>(0);
+		TreeNode<Integer> last = first;
+
+		for (int i = 1; i < size; i++)
+		{
+			TreeNode<Integer> node = new TreeNode<>(i);
+			last.addChild(node);
+			last = node;
+		}
+
+		TreeIterator<Integer> nodes = new TreeIterator<>(first, POST_ORDER);
+
+		assertEquals(Integer.valueOf(size - 1), nodes.next().getData());
+		assertEquals(size - 1, nodes.depth());
+
+		int count = 1;
+
+		for (; nodes.hasNext(); nodes.next())
+		{
+			count++;
+		}
+
+		assertEquals(size, count);
+		assertEquals(0, nodes.depth());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void failsPastTheLastNode()
+	{
+		TreeIterator<String> nodes = new TreeIterator<>(new TreeNode<>("a"), PRE_ORDER);
+
+		nodes.next();
+		nodes.next();
+	}
+
+	private static String walk(TreeIterator<String> nodes)
+	{
+		StringBuilder walk = new StringBuilder();
+
+		while (nodes.hasNext())
+		{
+			String data = nodes.next().getData();
+			walk.append(walk.length() == 0 ? "" : " ").append(data).append(nodes.depth());
+		}
+
+		return walk.toString();
+	}
+}